@@ -19,22 +19,33 @@
 package com.saggitt.omega.allapps
 
 import com.android.launcher3.model.data.AppInfo
-import com.saggitt.omega.data.models.AppTracker
+import com.saggitt.omega.data.AppTrackerRepository
 
-class AppUsageComparator(private val mApps: List<AppTracker>) : Comparator<AppInfo> {
-    override fun compare(app1: AppInfo, app2: AppInfo): Int {
-        var item1 = 0
-        var item2 = 0
-        for (i in mApps.indices) {
-            if (mApps[i].packageName == app1.componentName.packageName)
-                item1 = mApps[i].count
-            if (mApps[i].packageName == app2.componentName.packageName)
-                item2 = mApps[i].count
-        }
-        return when {
-            item1 < item2 -> 1
-            item2 < item1 -> -1
-            else -> 0
+/**
+ * Sorts apps by launch count, or by launch frequency decayed over time when [decayed] is set,
+ * most used first. The usage of [apps] is copied from [repository] once, so that launches
+ * recorded while sorting cannot change the order half way.
+ */
+class AppUsageComparator(
+    repository: AppTrackerRepository,
+    decayed: Boolean,
+    apps: Collection<AppInfo>,
+) : Comparator<AppInfo> {
+    private val usage = HashMap<String, Double>(apps.size)
+
+    init {
+        val now = System.currentTimeMillis()
+        apps.forEach {
+            val packageName = it.componentName.packageName
+            if (packageName !in usage) {
+                usage[packageName] = if (decayed) repository.getScore(packageName, now)
+                else repository.getLaunchCount(packageName).toDouble()
+            }
         }
     }
-}
\ No newline at end of file
+
+    override fun compare(app1: AppInfo, app2: AppInfo): Int =
+        getUsage(app2).compareTo(getUsage(app1))
+
+    private fun getUsage(app: AppInfo) = usage[app.componentName.packageName] ?: 0.0
+}
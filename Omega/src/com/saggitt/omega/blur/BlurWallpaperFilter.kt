@@ -37,13 +37,19 @@ package com.saggitt.omega.blur
 
 import android.content.Context
 import android.graphics.Bitmap
+import android.util.Log
 import com.hoko.blur.HokoBlur
-import com.hoko.blur.task.AsyncBlurTask
 import com.saggitt.omega.preferences.NeoPrefs
 
+/**
+ * Blurs wallpapers which have already been downsampled by
+ * [BlurWallpaperProvider.DOWN_SAMPLE_FACTOR]. The blur runs synchronously on the calling thread,
+ * on the GPU when possible and on the CPU otherwise.
+ */
 class BlurWallpaperFilter(private val context: Context) : WallpaperFilter {
 
-    private var blurRadius = 25
+    var blurRadius = 25
+        private set
 
     override fun applyPrefs(prefs: NeoPrefs) {
         blurRadius = (prefs.profileBlurRadius.getValue() / BlurWallpaperProvider.DOWN_SAMPLE_FACTOR)
@@ -53,23 +59,33 @@ class BlurWallpaperFilter(private val context: Context) : WallpaperFilter {
 
     override fun apply(wallpaper: Bitmap): WallpaperFilter.ApplyTask {
         return WallpaperFilter.ApplyTask.create { emitter ->
-            HokoBlur.with(context)
-                .scheme(HokoBlur.SCHEME_OPENGL)
-                .mode(HokoBlur.MODE_STACK)
-                .radius(blurRadius)
-                .sampleFactor(BlurWallpaperProvider.DOWN_SAMPLE_FACTOR.toFloat())
-                .forceCopy(false)
-                .needUpscale(true)
-                .processor()
-                .asyncBlur(wallpaper, object : AsyncBlurTask.Callback {
-                    override fun onBlurSuccess(bitmap: Bitmap) {
-                        emitter.onSuccess(bitmap)
-                    }
-
-                    override fun onBlurFailed(error: Throwable?) {
-                        emitter.onError(error!!)
-                    }
-                })
+            try {
+                val result = try {
+                    blur(wallpaper, HokoBlur.SCHEME_OPENGL)
+                } catch (e: Exception) {
+                    Log.w(TAG, "GPU blur failed, falling back to CPU", e)
+                    blur(wallpaper, HokoBlur.SCHEME_JAVA)
+                }
+                emitter.onSuccess(result)
+            } catch (e: Throwable) {
+                emitter.onError(e)
+            }
         }
     }
-}
\ No newline at end of file
+
+    private fun blur(wallpaper: Bitmap, scheme: Int): Bitmap {
+        return HokoBlur.with(context)
+            .scheme(scheme)
+            .mode(HokoBlur.MODE_STACK)
+            .radius(blurRadius)
+            .sampleFactor(1f)
+            .forceCopy(true)
+            .needUpscale(false)
+            .processor()
+            .blur(wallpaper)
+    }
+
+    companion object {
+        private const val TAG = "BlurWallpaperFilter"
+    }
+}
@@ -22,19 +22,21 @@ import android.annotation.SuppressLint
 import android.app.WallpaperManager
 import android.content.Context
 import android.graphics.Bitmap
+import android.graphics.BitmapFactory
 import android.graphics.Canvas
 import android.graphics.ColorMatrix
 import android.graphics.ColorMatrixColorFilter
 import android.graphics.Paint
-import android.graphics.Path
 import android.os.Build
 import android.util.DisplayMetrics
 import android.util.Log
 import android.view.WindowManager
 import android.widget.Toast
+import androidx.annotation.WorkerThread
 import com.android.launcher3.R
 import com.android.launcher3.Utilities
-import com.android.launcher3.util.Executors.MAIN_EXECUTOR
+import com.android.launcher3.util.Executors.createAndStartNewLooper
+import com.android.launcher3.util.LooperExecutor
 import com.saggitt.omega.NeoApp
 import com.saggitt.omega.theme.AccentColorOption
 import com.saggitt.omega.util.SingletonHolder
@@ -45,7 +47,16 @@ import com.saggitt.omega.util.prefs
 import com.saggitt.omega.util.runOnMainThread
 import com.saggitt.omega.util.safeForEach
 import com.saggitt.omega.util.useApplicationContext
+import java.util.concurrent.atomic.AtomicInteger
 
+/**
+ * Provides the blurred wallpaper drawn behind blurred surfaces.
+ *
+ * The wallpaper is decoded directly at [DOWN_SAMPLE_FACTOR] times smaller than the screen, and
+ * vibrancy is applied while drawing it into that buffer, so the blur and everything kept in
+ * memory stay at the reduced size. [ShaderBlurDrawable] scales it back up when drawing. The
+ * result is cached on disk by [WallpaperBlurCache], all the work happens on a background thread.
+ */
 class BlurWallpaperProvider(val context: Context) {
 
     private val prefs by lazy { context.prefs }
@@ -68,23 +79,17 @@ class BlurWallpaperProvider(val context: Context) {
         }
     private var mOffset: Float = 0.6f
 
-    private val mVibrancyPaint = Paint(Paint.FILTER_BITMAP_FLAG or Paint.ANTI_ALIAS_FLAG)
-    private val mColorPaint = Paint(Paint.ANTI_ALIAS_FLAG)
-
-    private val mPath = Path()
+    private val mVibrancyPaint = Paint(Paint.FILTER_BITMAP_FLAG or Paint.ANTI_ALIAS_FLAG).apply {
+        colorFilter = ColorMatrixColorFilter(ColorMatrix().apply { setSaturation(SATURATION) })
+    }
 
     private var mWallpaperWidth: Int = 0
-    private var mDisplayHeight: Int = 0
     var wallpaperYOffset: Float = 0f
         private set
-    private val sCanvas = Canvas()
-
-    private val mUpdateRunnable = Runnable { updateWallpaper() }
 
     private val wallpaperFilter = BlurWallpaperFilter(context)
-    private var applyTask: WallpaperFilter.ApplyTask? = null
-
-    private var updatePending = false
+    private val blurCache = WallpaperBlurCache(context)
+    private val updateId = AtomicInteger()
 
     init {
         isEnabled = getEnabledStatus()
@@ -96,147 +101,172 @@ class BlurWallpaperProvider(val context: Context) {
     private fun getEnabledStatus() =
         mWallpaperManager.wallpaperInfo == null && prefs.profileBlurEnable.getValue()
 
+    @WorkerThread
     @SuppressLint("MissingPermission")
-    private fun updateWallpaper() {
-        if (applyTask != null) {
-            updatePending = true
-            return
-        }
+    private fun updateWallpaper(id: Int) {
+        // Only the latest of several queued updates needs to run
+        if (id != updateId.get()) return
+
         if (NeoApp.minSDK(Build.VERSION_CODES.O_MR1) && !context.hasStoragePermission) {
             prefs.profileBlurEnable.setValue(false)
             return
         }
         val enabled = getEnabledStatus()
-        if (enabled != isEnabled) {
-            isEnabled = enabled
-            runOnMainThread {
+        runOnMainThread {
+            if (enabled != isEnabled) {
+                isEnabled = enabled
                 mListeners.safeForEach(Listener::onEnabledChanged)
             }
+            if (!enabled) {
+                wallpaper = null
+                placeholder = null
+            }
         }
-
-        if (!isEnabled) {
-            wallpaper = null
-            placeholder = null
-            return
-        }
+        if (!enabled) return
 
         wallpaperFilter.applyPrefs(prefs)
 
-        var wallpaper = try {
-            Utilities.drawableToBitmap(mWallpaperManager.drawable, true) as Bitmap
-        } catch (e: Exception) {
+        val metrics = DisplayMetrics()
+        val wm = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
+        wm.defaultDisplay?.getRealMetrics(metrics)
+        val key = WallpaperBlurCache.Key(
+            mWallpaperManager.getWallpaperId(WallpaperManager.FLAG_SYSTEM),
+            metrics.widthPixels, metrics.heightPixels,
+            wallpaperFilter.blurRadius, SATURATION
+        )
+
+        val blurred = blurCache.get(key) ?: try {
+            blurWallpaper(metrics)?.also { blurCache.put(key, it) }
+        } catch (e: Throwable) {
+            Log.e(TAG, "Unable to blur wallpaper", e)
             prefs.profileBlurEnable.setValue(false)
             runOnMainThread {
-                val msg = "${context.getString(R.string.failed)}: ${e.message}"
+                val msg = if (e is OutOfMemoryError) context.getString(R.string.failed)
+                else "${context.getString(R.string.failed)}: ${e.message}"
                 Toast.makeText(context, msg, Toast.LENGTH_LONG).show()
                 notifyWallpaperChanged()
             }
             return
-        }
-        wallpaper = scaleToScreenSize(wallpaper)
-        val wallpaperHeight = wallpaper.height
-        wallpaperYOffset = if (wallpaperHeight > mDisplayHeight) {
-            (wallpaperHeight - mDisplayHeight) * 0.5f
-        } else {
-            0f
-        }
-
-        mWallpaperWidth = wallpaper.width
-
-        placeholder = createPlaceholder(wallpaper.width, wallpaper.height)
-        wallpaper = applyVibrancy(wallpaper)
-        Log.d("BWP", "starting blur")
-
-        applyTask = wallpaperFilter.apply(wallpaper).setCallback { result, error ->
-            if (error == null) {
-                this@BlurWallpaperProvider.wallpaper = result
-                Log.d("BWP", "blur done")
-                runOnMainThread(::notifyWallpaperChanged)
-                wallpaper.recycle()
-            } else {
-                if (error is OutOfMemoryError) {
-                    prefs.profileBlurEnable.setValue(false)
-                    runOnMainThread {
-                        Toast.makeText(context, R.string.failed, Toast.LENGTH_LONG).show()
-                        notifyWallpaperChanged()
-                    }
-                }
-                wallpaper.recycle()
+        } ?: return
+        val placeholder = createPlaceholder()
+
+        runOnMainThread {
+            if (id != updateId.get()) {
+                blurred.recycle()
+                placeholder.recycle()
+                return@runOnMainThread
             }
-            applyTask = null
-            if (updatePending) {
-                updatePending = false
-                updateWallpaper()
+            mDisplayMetrics.setTo(metrics)
+            mWallpaperWidth = blurred.width * DOWN_SAMPLE_FACTOR
+            val wallpaperHeight = blurred.height * DOWN_SAMPLE_FACTOR
+            wallpaperYOffset = if (wallpaperHeight > metrics.heightPixels) {
+                (wallpaperHeight - metrics.heightPixels) * 0.5f
+            } else {
+                0f
             }
+            this.placeholder = placeholder
+            this.wallpaper = blurred
+            notifyWallpaperChanged()
         }
     }
 
-    private fun notifyWallpaperChanged() {
-        mListeners.forEach(Listener::onWallpaperChanged)
-    }
-
-    private fun scaleToScreenSize(bitmap: Bitmap): Bitmap {
-        val wm = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
-        val display = wm.defaultDisplay
-        display?.getRealMetrics(mDisplayMetrics)
-
-        val width = mDisplayMetrics.widthPixels
-        val height = mDisplayMetrics.heightPixels
-        mDisplayHeight = height
-
-        val widthFactor = width.toFloat() / bitmap.width
-        val heightFactor = height.toFloat() / bitmap.height
+    /**
+     * Returns the wallpaper scaled to cover the screen, downsampled by [DOWN_SAMPLE_FACTOR],
+     * with vibrancy applied and blurred.
+     */
+    @WorkerThread
+    private fun blurWallpaper(metrics: DisplayMetrics): Bitmap? {
+        val source = decodeWallpaper(
+            metrics.widthPixels / DOWN_SAMPLE_FACTOR,
+            metrics.heightPixels / DOWN_SAMPLE_FACTOR
+        ) ?: return null
+
+        // Same scaling as the system uses to cover the screen, applied to the reduced size
+        val (width, height) = WallpaperScaling.blurredSize(
+            metrics.widthPixels, metrics.heightPixels,
+            source.width, source.height, DOWN_SAMPLE_FACTOR
+        )
 
-        val upscaleFactor = widthFactor.coerceAtLeast(heightFactor)
-        if (upscaleFactor <= 0) {
-            return bitmap
+        val small = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(small)
+        canvas.scale(width.toFloat() / source.width, height.toFloat() / source.height)
+        canvas.drawBitmap(source, 0f, 0f, mVibrancyPaint)
+        source.recycle()
+
+        var result: Bitmap? = null
+        var error: Throwable? = null
+        wallpaperFilter.apply(small).setCallback { bitmap, throwable ->
+            result = bitmap
+            error = throwable
         }
+        if (result !== small) small.recycle()
+        error?.let { throw it }
+        return result
+    }
 
-        val scaledWidth = width.coerceAtLeast((bitmap.width * upscaleFactor).ceilToInt())
-        val scaledHeight = height.coerceAtLeast((bitmap.height * upscaleFactor).ceilToInt())
-        return Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, false)
+    /**
+     * Decodes the system wallpaper, subsampled as much as possible while staying at least
+     * [minWidth] x [minHeight].
+     */
+    @WorkerThread
+    @SuppressLint("MissingPermission")
+    private fun decodeWallpaper(minWidth: Int, minHeight: Int): Bitmap? {
+        val pfd = mWallpaperManager.getWallpaperFile(WallpaperManager.FLAG_SYSTEM)
+            ?: return drawWallpaper(minWidth, minHeight)
+        return pfd.use {
+            val options = BitmapFactory.Options()
+            options.inJustDecodeBounds = true
+            BitmapFactory.decodeFileDescriptor(it.fileDescriptor, null, options)
+            if (options.outWidth <= 0 || options.outHeight <= 0) return@use null
+
+            options.inJustDecodeBounds = false
+            options.inSampleSize = WallpaperScaling.sampleSize(
+                options.outWidth, options.outHeight, minWidth, minHeight
+            )
+            BitmapFactory.decodeFileDescriptor(it.fileDescriptor, null, options)
+        }
     }
 
-    private fun createPlaceholder(width: Int, height: Int): Bitmap {
+    /**
+     * Draws the wallpaper drawable at the smallest size still covering [minWidth] x [minHeight],
+     * for when the wallpaper file cannot be read directly.
+     */
+    @WorkerThread
+    @SuppressLint("MissingPermission")
+    private fun drawWallpaper(minWidth: Int, minHeight: Int): Bitmap? {
+        val drawable = mWallpaperManager.drawable ?: return null
+        val intrinsicWidth = drawable.intrinsicWidth
+        val intrinsicHeight = drawable.intrinsicHeight
+        if (intrinsicWidth <= 0 || intrinsicHeight <= 0) return null
+
+        val scale = WallpaperScaling.coverScale(
+            intrinsicWidth, intrinsicHeight, minWidth, minHeight
+        )
+        val width = (intrinsicWidth * scale).ceilToInt().coerceAtLeast(1)
+        val height = (intrinsicHeight * scale).ceilToInt().coerceAtLeast(1)
         val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-        sCanvas.setBitmap(bitmap)
-
-        mPath.moveTo(0f, 0f)
-        mPath.lineTo(0f, height.toFloat())
-        mPath.lineTo(width.toFloat(), height.toFloat())
-        mPath.lineTo(width.toFloat(), 0f)
-        mColorPaint.xfermode = null
-        mColorPaint.color = tintColor
-        sCanvas.drawPath(mPath, mColorPaint)
-
+        drawable.setBounds(0, 0, width, height)
+        drawable.draw(Canvas(bitmap))
         return bitmap
     }
 
-    private val tintColor =
-        AccentColorOption.fromString(prefs.profileAccentColor.getValue()).accentColor
-    fun updateAsync() {
-        MAIN_EXECUTOR.execute(mUpdateRunnable)
+    private fun notifyWallpaperChanged() {
+        mListeners.forEach(Listener::onWallpaperChanged)
     }
 
-    private fun applyVibrancy(wallpaper: Bitmap): Bitmap {
-        val width = wallpaper.width
-        val height = wallpaper.height
-
-        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
-        val canvas = Canvas()
-        canvas.setBitmap(bitmap)
-
-        val colorMatrix = ColorMatrix()
-        colorMatrix.setSaturation(1.25f)
-        val filter = ColorMatrixColorFilter(colorMatrix)
-        mVibrancyPaint.colorFilter = filter
-        canvas.drawBitmap(wallpaper, 0f, 0f, mVibrancyPaint)
-
-        wallpaper.recycle()
-
+    private fun createPlaceholder(): Bitmap {
+        val bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888)
+        bitmap.eraseColor(
+            AccentColorOption.fromString(prefs.profileAccentColor.getValue()).accentColor
+        )
         return bitmap
     }
 
+    fun updateAsync() {
+        val id = updateId.incrementAndGet()
+        BLUR_EXECUTOR.execute { updateWallpaper(id) }
+    }
+
     fun addListener(listener: Listener) {
         mListeners.add(listener)
         listener.onOffsetChanged(mOffset)
@@ -289,7 +319,11 @@ class BlurWallpaperProvider(val context: Context) {
 
     companion object :
         SingletonHolder<BlurWallpaperProvider, Context>(ensureOnMainThread(useApplicationContext(::BlurWallpaperProvider))) {
+        private const val TAG = "BlurWallpaperProvider"
         const val DOWN_SAMPLE_FACTOR = 8
+        private const val SATURATION = 1.25f
+
+        private val BLUR_EXECUTOR = LooperExecutor(createAndStartNewLooper("BlurWallpaper"))
 
         var isEnabled: Boolean = false
         private var sEnabledFlag: Int = 0
@@ -26,12 +26,20 @@ class ShaderBlurDrawable internal constructor(
 
     private var blurAlpha = 255
     private val blurPaint = Paint(Paint.FILTER_BITMAP_FLAG or Paint.ANTI_ALIAS_FLAG)
+    private val shaderMatrix = Matrix().apply {
+        val scale = BlurWallpaperProvider.DOWN_SAMPLE_FACTOR.toFloat()
+        setScale(scale, scale)
+    }
     private var blurBitmap: Bitmap? = null
         set(value) {
             if (field != value) {
                 field = value
-                blurPaint.shader =
-                    value?.let { BitmapShader(it, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP) }
+                blurPaint.shader = value?.let {
+                    // The blurred wallpaper is kept downsampled, scale it back to screen size
+                    BitmapShader(it, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP).apply {
+                        setLocalMatrix(shaderMatrix)
+                    }
+                }
             }
         }
     private var blurOffset = 0f
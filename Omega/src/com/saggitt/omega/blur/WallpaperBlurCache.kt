@@ -0,0 +1,98 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.blur
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Log
+import androidx.annotation.WorkerThread
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Keeps the last blurred wallpaper on disk, so it does not need to be computed again after a
+ * process restart. Only a single entry is kept, any other entry is deleted on [put].
+ */
+class WallpaperBlurCache(private val dir: File) {
+
+    constructor(context: Context) : this(File(context.cacheDir, DIR_NAME))
+
+    /**
+     * Identifies a blurred wallpaper. A [wallpaperId] below 0 means the wallpaper cannot be
+     * identified, and such keys are never cached.
+     */
+    data class Key(
+        val wallpaperId: Int,
+        val displayWidth: Int,
+        val displayHeight: Int,
+        val blurRadius: Int,
+        val saturation: Float,
+    ) {
+        val isCacheable get() = wallpaperId >= 0
+
+        val fileName
+            get() = "$wallpaperId-${displayWidth}x$displayHeight-$blurRadius-$saturation.png"
+    }
+
+    /**
+     * Returns the cached blurred wallpaper for [key], or null if there is none.
+     */
+    @WorkerThread
+    fun get(key: Key): Bitmap? {
+        val file = getFile(key) ?: return null
+        return BitmapFactory.decodeFile(file.path)
+    }
+
+    /**
+     * Returns the file holding the cached blurred wallpaper for [key], or null if there is none.
+     */
+    @WorkerThread
+    internal fun getFile(key: Key): File? {
+        if (!key.isCacheable) return null
+        return File(dir, key.fileName).takeIf { it.exists() }
+    }
+
+    /**
+     * Stores [bitmap] as the blurred wallpaper for [key], replacing any other entry.
+     */
+    @WorkerThread
+    fun put(key: Key, bitmap: Bitmap) {
+        if (!key.isCacheable) return
+        if (!dir.exists() && !dir.mkdirs()) return
+        dir.listFiles()?.forEach { it.delete() }
+        val file = File(dir, key.fileName)
+        val tmpFile = File(dir, "${key.fileName}.tmp")
+        try {
+            FileOutputStream(tmpFile).use { bitmap.compress(Bitmap.CompressFormat.PNG, 100, it) }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete()
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to cache blurred wallpaper", e)
+            tmpFile.delete()
+        }
+    }
+
+    companion object {
+        private const val TAG = "WallpaperBlurCache"
+        private const val DIR_NAME = "blur"
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.blur
+
+import kotlin.math.ceil
+
+/**
+ * Size computations used by [BlurWallpaperProvider] to keep the wallpaper at the reduced size
+ * from decoding until blurring.
+ */
+internal object WallpaperScaling {
+
+    /**
+     * Returns the largest power of two sample size that keeps a [width] x [height] image at least
+     * [minWidth] x [minHeight].
+     */
+    fun sampleSize(width: Int, height: Int, minWidth: Int, minHeight: Int): Int {
+        var sampleSize = 1
+        while (width / (sampleSize * 2) >= minWidth && height / (sampleSize * 2) >= minHeight) {
+            sampleSize *= 2
+        }
+        return sampleSize
+    }
+
+    /**
+     * Returns the scale bringing a [width] x [height] image down to the smallest size still
+     * covering [minWidth] x [minHeight]. Images which are already smaller are never upscaled.
+     */
+    fun coverScale(width: Int, height: Int, minWidth: Int, minHeight: Int): Float {
+        val scale = (minWidth.toFloat() / width).coerceAtLeast(minHeight.toFloat() / height)
+        return scale.coerceAtMost(1f)
+    }
+
+    /**
+     * Returns the size of the blurred wallpaper: the source scaled to cover the display the same
+     * way the system does, reduced by [downSampleFactor].
+     */
+    fun blurredSize(
+        displayWidth: Int,
+        displayHeight: Int,
+        sourceWidth: Int,
+        sourceHeight: Int,
+        downSampleFactor: Int,
+    ): Pair<Int, Int> {
+        val upscaleFactor = (displayWidth.toFloat() / sourceWidth)
+            .coerceAtLeast(displayHeight.toFloat() / sourceHeight)
+        val scaledWidth = displayWidth.coerceAtLeast(ceil(sourceWidth * upscaleFactor).toInt())
+        val scaledHeight = displayHeight.coerceAtLeast(ceil(sourceHeight * upscaleFactor).toInt())
+        val width = ceil(scaledWidth.toFloat() / downSampleFactor).toInt().coerceAtLeast(1)
+        val height = ceil(scaledHeight.toFloat() / downSampleFactor).toInt().coerceAtLeast(1)
+        return width to height
+    }
+}
@@ -21,7 +21,7 @@ package com.saggitt.omega.compose.pages
 import SearchTextField
 import android.content.Intent
 import android.content.pm.LauncherApps
-import android.graphics.drawable.Drawable
+import android.graphics.Bitmap
 import android.os.Process
 import androidx.activity.compose.LocalOnBackPressedDispatcherOwner
 import androidx.activity.compose.rememberLauncherForActivityResult
@@ -59,12 +59,16 @@ import com.saggitt.omega.data.models.IconPickerItem
 import com.saggitt.omega.iconpack.CustomIconPack
 import com.saggitt.omega.iconpack.IconPack
 import com.saggitt.omega.iconpack.IconPackProvider
-import com.saggitt.omega.iconpack.filter
+import com.saggitt.omega.iconpack.IconPickerCatalog
+import com.saggitt.omega.iconpack.IconPickerCategory
+import com.saggitt.omega.iconpack.IconPickerPage
 import com.saggitt.omega.util.getIcon
 import com.saulhdev.neolauncher.icons.drawableToBitmap
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /*
 * List Icons from a given IconPack
@@ -176,16 +180,21 @@ fun IconPickerGrid(
     modifier: Modifier = Modifier,
 ) {
     var loadFailed by remember { mutableStateOf(false) }
-    val categoriesFlow = remember {
-        iconPack.getAllIcons()
+    val catalog = remember(iconPack) { IconPickerCatalog(iconPack) }
+    // The pack is read once, typing only filters the pages loaded so far
+    val pages = remember(catalog) { mutableStateListOf<IconPickerPage>() }
+    LaunchedEffect(catalog) {
+        catalog.getPages()
             .catch { loadFailed = true }
+            .collect { pages.add(it) }
     }
-    val categories by categoriesFlow.collectAsState(emptyList())
-    val filteredCategories by remember {
-        derivedStateOf {
-            categories
-                .map { it.filter(searchQuery) }
-                .filter { it.items.isNotEmpty() }
+    var filteredCategories by remember { mutableStateOf(emptyList<IconPickerCategory>()) }
+    LaunchedEffect(catalog, searchQuery) {
+        snapshotFlow { pages.size }.collectLatest { count ->
+            val loaded = pages.subList(0, count).toList()
+            filteredCategories = withContext(Dispatchers.Default) {
+                IconPickerCatalog.filter(loaded, searchQuery)
+            }
         }
     }
 
@@ -219,7 +228,7 @@ fun IconPickerGrid(
                     numColumns = numColumns,
                 ) { _, item ->
                     IconPreview(
-                        iconPack = iconPack,
+                        catalog = catalog,
                         iconItem = item,
                         onClick = {
                             onClickItem(item)
@@ -240,13 +249,14 @@ fun IconPickerGrid(
 
 @Composable
 fun IconPreview(
-    iconPack: IconPack,
+    catalog: IconPickerCatalog,
     iconItem: IconPickerItem,
     onClick: () -> Unit,
 ) {
-    val drawable by produceState<Drawable?>(initialValue = null, iconPack, iconItem) {
+    val size = with(LocalDensity.current) { THUMBNAIL_SIZE.roundToPx() }
+    val thumbnail by produceState<Bitmap?>(initialValue = null, catalog, iconItem) {
         launch(Dispatchers.IO) {
-            value = iconPack.getIcon(iconItem.toIconEntry(), 0)
+            value = catalog.getThumbnail(iconItem, size)
         }
     }
     Box(
@@ -256,13 +266,15 @@ fun IconPreview(
             .padding(8.dp),
     ) {
         Image(
-            bitmap = drawableToBitmap(drawable ?: LocalContext.current.getIcon()).asImageBitmap(),
+            bitmap = (thumbnail ?: drawableToBitmap(LocalContext.current.getIcon())).asImageBitmap(),
             contentDescription = iconItem.drawableName,
             modifier = Modifier.aspectRatio(1f),
         )
     }
 }
 
+private val THUMBNAIL_SIZE = 48.dp
+
 fun NavGraphBuilder.iconPickerGraph(route: String) {
     preferenceGraph(route, {
         IconListPage(iconPackName = "")
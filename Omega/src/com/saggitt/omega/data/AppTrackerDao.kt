@@ -37,8 +37,11 @@ interface AppTrackerDao {
     @Query("SELECT count FROM apptracker WHERE packageName = :packageName")
     fun getAppCount(packageName: String): Int
 
-    @Query("SELECT EXISTS(SELECT * FROM apptracker WHERE packageName = :packageName)")
-    fun appExist(packageName: String): Boolean
+    @Query("INSERT OR IGNORE INTO apptracker (packageName, count, lastLaunched, score) VALUES (:packageName, 0, 0, 0)")
+    fun insertIfMissing(packageName: String)
+
+    @Query("UPDATE apptracker SET count = count + :launches, lastLaunched = :lastLaunched, score = :score WHERE packageName = :packageName")
+    fun increment(packageName: String, launches: Int, lastLaunched: Long, score: Double)
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(appTracker: AppTracker)
@@ -25,46 +25,108 @@ import com.saggitt.omega.data.models.AppTracker
 import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.plus
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.pow
 
+/**
+ * Keeps app launch statistics in memory, loaded once from [NeoLauncherDb]. Launches update the
+ * in-memory statistics right away and are written back to the database in batches.
+ */
 class AppTrackerRepository(context: Context) {
     private val scope = CoroutineScope(Dispatchers.IO) + CoroutineName("AppTrackerRepository")
-    private val dao = NeoLauncherDb.INSTANCE.get(context).appTrackerDao()
+    private val db = NeoLauncherDb.INSTANCE.get(context)
+    private val dao = db.appTrackerDao()
 
-    var appCountList: List<AppTracker> = listOf()
+    private val usage = ConcurrentHashMap<String, AppUsage>()
 
-    init {
-        scope.launch {
-            appCountList = dao.getAppCount()
+    // Launches per package not yet written to the database, guarded by itself
+    private val pendingLaunches = HashMap<String, Int>()
+    private var flushScheduled = false
+
+    // Writes wait for the stored statistics to be loaded, so that they are added on top of them
+    private val loadJob = scope.launch {
+        dao.getAppCount().forEach { tracker ->
+            // Launches recorded before the load completed are added on top
+            usage.merge(tracker.packageName, AppUsage(tracker)) { launched, stored ->
+                AppUsage(
+                    launched.count + stored.count,
+                    launched.lastLaunched,
+                    launched.score + stored.scoreAt(launched.lastLaunched)
+                )
+            }
         }
     }
 
-    fun getAppsCount(): List<AppTracker> {
+    fun getLaunchCount(packageName: String): Int = usage[packageName]?.count ?: 0
+
+    /**
+     * Returns the launch frequency of [packageName] at [now], where each launch counts for
+     * half as much after [SCORE_HALF_LIFE_MS].
+     */
+    fun getScore(packageName: String, now: Long): Double =
+        usage[packageName]?.scoreAt(now) ?: 0.0
+
+    fun updateAppCount(packageName: String) {
+        val now = System.currentTimeMillis()
+        usage.compute(packageName) { _, current ->
+            if (current == null) AppUsage(1, now, 1.0)
+            else AppUsage(current.count + 1, now, current.scoreAt(now) + 1)
+        }
+        synchronized(pendingLaunches) {
+            pendingLaunches[packageName] = (pendingLaunches[packageName] ?: 0) + 1
+            if (flushScheduled) return
+            flushScheduled = true
+        }
         scope.launch {
-            appCountList = dao.getAppCount()
+            delay(WRITE_DELAY_MS)
+            loadJob.join()
+            flushLaunches()
         }
-        return appCountList
     }
 
-    fun updateAppCount(packageName: String) {
+    fun deleteAppCount(packageName: String) {
+        usage.remove(packageName)
+        synchronized(pendingLaunches) { pendingLaunches.remove(packageName) }
         scope.launch {
-            //Check if the app is already in the database
-            if (dao.appExist(packageName)) {
-                //If it is, update the count
-                val currentCount = dao.getAppCount(packageName)
-                dao.update(AppTracker(packageName, currentCount + 1))
-            } else {
-                dao.insert(AppTracker(packageName, 1))
+            loadJob.join()
+            usage.remove(packageName)
+            dao.deleteAppCount(packageName)
+        }
+    }
+
+    private fun flushLaunches() {
+        val launches: Map<String, Int>
+        synchronized(pendingLaunches) {
+            launches = HashMap(pendingLaunches)
+            pendingLaunches.clear()
+            flushScheduled = false
+        }
+        db.runInTransaction {
+            launches.forEach { (packageName, count) ->
+                val appUsage = usage[packageName] ?: return@forEach
+                dao.insertIfMissing(packageName)
+                dao.increment(packageName, count, appUsage.lastLaunched, appUsage.score)
             }
         }
     }
 
-    fun deleteAppCount(packageName: String) {
-        scope.launch { dao.deleteAppCount(packageName) }
+    private class AppUsage(val count: Int, val lastLaunched: Long, val score: Double) {
+
+        constructor(tracker: AppTracker) : this(tracker.count, tracker.lastLaunched, tracker.score)
+
+        fun scoreAt(time: Long): Double {
+            val elapsed = (time - lastLaunched).coerceAtLeast(0)
+            return score * 0.5.pow(elapsed.toDouble() / SCORE_HALF_LIFE_MS)
+        }
     }
 
     companion object {
         val INSTANCE = MainThreadInitializedObject(::AppTrackerRepository)
+
+        private const val WRITE_DELAY_MS = 2000L
+        private const val SCORE_HALF_LIFE_MS = 7 * 24 * 60 * 60 * 1000L
     }
-}
\ No newline at end of file
+}
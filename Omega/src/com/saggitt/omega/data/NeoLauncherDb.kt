@@ -38,13 +38,17 @@ import com.saggitt.omega.data.models.SearchProvider
         GestureItemInfo::class,
         SearchProvider::class,
     ],
-    version = 5,
+    version = 6,
     exportSchema = true,
     autoMigrations = [
         AutoMigration(
             from = 4,
             to = 5,
         ),
+        AutoMigration(
+            from = 5,
+            to = 6,
+        ),
     ]
 )
 @TypeConverters(Converters::class)
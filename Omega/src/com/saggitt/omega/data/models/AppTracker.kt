@@ -18,6 +18,7 @@
 
 package com.saggitt.omega.data.models
 
+import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.PrimaryKey
 
@@ -25,4 +26,8 @@ import androidx.room.PrimaryKey
 data class AppTracker(
     @PrimaryKey val packageName: String,
     val count: Int,
+    @ColumnInfo(defaultValue = "0")
+    val lastLaunched: Long = 0,
+    @ColumnInfo(defaultValue = "0")
+    val score: Double = 0.0,
 )
@@ -21,7 +21,6 @@ import android.content.Context
 import com.saggitt.omega.flowerpot.parser.FlowerpotReader
 import com.saggitt.omega.flowerpot.rules.Rule
 import com.saggitt.omega.util.SingletonHolder
-import com.saggitt.omega.util.ensureOnMainThread
 import com.saggitt.omega.util.toTitleCase
 import com.saggitt.omega.util.useApplicationContext
 import java.io.InputStream
@@ -46,21 +45,30 @@ class Flowerpot(
         else
             beautifyName(name)
     }
+    private var rulesLoaded = false
     private var loaded = false
     val rules: MutableSet<Rule> = mutableSetOf()
     val size get() = rules.size
     lateinit var apps: FlowerpotApps
 
+    @Synchronized
     fun ensureLoaded() {
         if (!loaded) {
-            load()
+            ensureRulesLoaded()
+            apps = FlowerpotApps(FlowerpotClassifier.getInstance(context), this)
             loaded = true
         }
     }
 
-    private fun load() {
-        loader(this)
-        apps = FlowerpotApps(context, this)
+    /**
+     * Load the rules of this pot without matching any apps against them
+     */
+    @Synchronized
+    fun ensureRulesLoaded() {
+        if (!rulesLoaded) {
+            loader(this)
+            rulesLoaded = true
+        }
     }
 
     /**
@@ -151,7 +159,7 @@ class Flowerpot(
         fun getAllPots() = pots.values
 
         companion object :
-            SingletonHolder<Manager, Context>(ensureOnMainThread(useApplicationContext(::Manager))) {
+            SingletonHolder<Manager, Context>(useApplicationContext(::Manager)) {
 
             @JvmStatic
             override fun getInstance(arg: Context): Manager {
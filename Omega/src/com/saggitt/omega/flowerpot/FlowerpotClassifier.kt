@@ -0,0 +1,247 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.flowerpot
+
+import android.content.Context
+import android.content.Intent
+import android.content.pm.LauncherActivityInfo
+import android.content.pm.LauncherApps
+import android.os.UserHandle
+import android.util.Log
+import com.android.launcher3.pm.UserCache
+import com.android.launcher3.util.ComponentKey
+import com.android.launcher3.util.Executors.MODEL_EXECUTOR
+import com.saggitt.omega.flowerpot.rules.CodeRule
+import com.saggitt.omega.flowerpot.rules.Rule
+import com.saggitt.omega.util.SingletonHolder
+import com.saggitt.omega.util.useApplicationContext
+import java.util.concurrent.FutureTask
+
+/**
+ * Classifies installed apps against the rules of all pots at once.
+ *
+ * Each pot gets one bit of a [Long] category mask. The rules of all pots are merged up front,
+ * so every package name, intent and code rule is evaluated once per package no matter how many
+ * pots use it, and package events only reclassify the changed package.
+ */
+class FlowerpotClassifier private constructor(private val context: Context) :
+    LauncherApps.Callback() {
+
+    private val launcherApps = context.getSystemService(LauncherApps::class.java)
+    private val pots = Flowerpot.Manager.getInstance(context).getAllPots().toList()
+
+    private val packageRules = HashMap<String, Long>()
+    private val intentActionRules = HashMap<String, Long>()
+    private val intentCategoryRules = HashMap<String, Long>()
+    private val codeRules = HashMap<List<String>, CompiledCodeRule>()
+
+    // Guarded by this
+    private val categoryMasks = HashMap<ComponentKey, Long>()
+
+    // Incremented every time categoryMasks changes, guarded by this
+    private var version = 0
+
+    // Loads the rules and classifies all the apps. Started on the model thread, a caller needing
+    // the result earlier runs it on its own thread, or waits for the thread already running it.
+    private val initialClassification = FutureTask {
+        pots.take(Long.SIZE_BITS).forEachIndexed { index, pot ->
+            pot.ensureRulesLoaded()
+            compileRules(pot.rules, 1L shl index)
+        }
+        classifyAll()
+    }
+
+    init {
+        if (pots.size > Long.SIZE_BITS) {
+            Log.w(TAG, "Only the first ${Long.SIZE_BITS} of ${pots.size} pots are classified")
+        }
+        MODEL_EXECUTOR.execute(initialClassification)
+        // Package events are handled on the model thread, after the initial classification
+        launcherApps.registerCallback(this, MODEL_EXECUTOR.handler)
+    }
+
+    private fun awaitClassification() {
+        initialClassification.run()
+        initialClassification.get()
+    }
+
+    /**
+     * Returns the bit of [pot] in category masks, or 0 if the pot is not classified.
+     */
+    fun getPotMask(pot: Flowerpot): Long {
+        val index = pots.indexOf(pot)
+        return if (index in 0 until Long.SIZE_BITS) 1L shl index else 0L
+    }
+
+    /**
+     * Returns a number which changes every time the classification of an app changes.
+     */
+    fun getVersion(): Int {
+        awaitClassification()
+        return synchronized(this) { version }
+    }
+
+    /**
+     * Returns all the apps belonging to at least one of the pots in [potMask].
+     */
+    fun getMatches(potMask: Long): Set<ComponentKey> {
+        awaitClassification()
+        return synchronized(this) {
+            categoryMasks.filterValues { it and potMask != 0L }.keys.toHashSet()
+        }
+    }
+
+    private fun compileRules(rules: Set<Rule>, bit: Long) {
+        rules.forEach { rule ->
+            when (rule) {
+                is Rule.Package -> packageRules.addBit(rule.filter, bit)
+                is Rule.IntentAction -> intentActionRules.addBit(rule.action, bit)
+                is Rule.IntentCategory -> intentCategoryRules.addBit(rule.category, bit)
+                is Rule.CodeRule -> codeRules.getOrPut(listOf(rule.rule, *rule.args)) {
+                    CompiledCodeRule(CodeRule.get(rule.rule, *rule.args))
+                }.let { it.mask = it.mask or bit }
+                else -> Unit
+            }
+        }
+    }
+
+    private fun classifyAll() {
+        val intentMatches = queryIntentMatches(null)
+        val activities = UserCache.INSTANCE.get(context).userProfiles
+            .map { launcherApps.getActivityList(null, it) }
+        synchronized(this) {
+            categoryMasks.clear()
+            activities.forEach { classifyActivities(it, intentMatches) }
+            version++
+        }
+    }
+
+    private fun classifyPackage(packageName: String, user: UserHandle) {
+        awaitClassification()
+        val intentMatches = queryIntentMatches(packageName)
+        val activities = launcherApps.getActivityList(packageName, user)
+        synchronized(this) {
+            removePackage(packageName, user)
+            classifyActivities(activities, intentMatches)
+            version++
+        }
+    }
+
+    private fun classifyActivities(
+        activities: List<LauncherActivityInfo>,
+        intentMatches: Map<String, Long>,
+    ) {
+        val packageMasks = HashMap<String, Long>()
+        activities.forEach { info ->
+            val packageName = info.componentName.packageName
+            val mask = packageMasks.getOrPut(packageName) {
+                var mask = (packageRules[packageName] ?: 0L) or (intentMatches[packageName] ?: 0L)
+                codeRules.values.forEach { (rule, ruleMask) ->
+                    if (mask and ruleMask != ruleMask && rule.matches(info.applicationInfo)) {
+                        mask = mask or ruleMask
+                    }
+                }
+                mask
+            }
+            if (mask != 0L) {
+                categoryMasks[ComponentKey(info.componentName, info.user)] = mask
+            }
+        }
+    }
+
+    private fun removePackage(packageName: String, user: UserHandle) {
+        categoryMasks.keys.removeAll { it.componentName.packageName == packageName && it.user == user }
+    }
+
+    /**
+     * Returns the pots matched through intent rules by each package, limited to [packageName]
+     * when set.
+     */
+    private fun queryIntentMatches(packageName: String?): Map<String, Long> {
+        val matches = HashMap<String, Long>()
+        fun query(intent: Intent, mask: Long) {
+            if (packageName != null) intent.setPackage(packageName)
+            context.packageManager.queryIntentActivities(intent, 0).forEach {
+                matches.addBit(it.activityInfo.packageName, mask)
+            }
+        }
+        intentCategoryRules.forEach { (category, mask) ->
+            query(Intent(Intent.ACTION_MAIN).addCategory(category), mask)
+        }
+        intentActionRules.forEach { (action, mask) -> query(Intent(action), mask) }
+        return matches
+    }
+
+    override fun onPackageAdded(packageName: String, user: UserHandle) {
+        classifyPackage(packageName, user)
+    }
+
+    override fun onPackageChanged(packageName: String, user: UserHandle) {
+        classifyPackage(packageName, user)
+    }
+
+    override fun onPackageRemoved(packageName: String, user: UserHandle) {
+        awaitClassification()
+        synchronized(this) {
+            removePackage(packageName, user)
+            version++
+        }
+    }
+
+    override fun onPackagesAvailable(
+        packageNames: Array<out String>,
+        user: UserHandle,
+        replacing: Boolean
+    ) {
+        packageNames.forEach { onPackageAdded(it, user) }
+    }
+
+    override fun onPackagesUnavailable(
+        packageNames: Array<out String>,
+        user: UserHandle,
+        replacing: Boolean
+    ) {
+        packageNames.forEach { onPackageRemoved(it, user) }
+    }
+
+    override fun onPackagesSuspended(packageNames: Array<out String>, user: UserHandle) {
+        packageNames.forEach { onPackageRemoved(it, user) }
+    }
+
+    override fun onPackagesUnsuspended(packageNames: Array<out String>, user: UserHandle) {
+        packageNames.forEach { onPackageAdded(it, user) }
+    }
+
+    private data class CompiledCodeRule(val rule: CodeRule, var mask: Long = 0L)
+
+    private fun <K> HashMap<K, Long>.addBit(key: K, bit: Long) {
+        this[key] = (this[key] ?: 0L) or bit
+    }
+
+    companion object : SingletonHolder<FlowerpotClassifier, Context>(
+        useApplicationContext(::FlowerpotClassifier)
+    ) {
+        private const val TAG = "FlowerpotClassifier"
+
+        @JvmStatic
+        override fun getInstance(arg: Context): FlowerpotClassifier {
+            return super.getInstance(arg)
+        }
+    }
+}
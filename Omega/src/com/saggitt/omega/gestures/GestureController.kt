@@ -19,7 +19,6 @@ package com.saggitt.omega.gestures
 
 import android.content.Context
 import android.graphics.PointF
-import android.util.Log
 import android.view.GestureDetector
 import android.view.MotionEvent
 import com.android.launcher3.util.TouchController
@@ -39,12 +38,12 @@ import com.saggitt.omega.gestures.handlers.OpenWidgetsGestureHandler
 import com.saggitt.omega.gestures.handlers.PressBackGestureHandler
 import com.saggitt.omega.gestures.handlers.SleepGestureHandler
 import com.saggitt.omega.gestures.handlers.StartGlobalSearchGestureHandler
-import org.json.JSONException
-import org.json.JSONObject
+import com.saggitt.omega.preferences.GesturePref
 
 class GestureController(val launcher: NeoLauncher) : TouchController {
 
     private val blankGestureHandler = BlankGestureHandler(launcher, null)
+    private val gestureRegistry = GestureRegistry(launcher, blankGestureHandler)
     private val doubleTapGesture by lazy { DoubleTapGesture(this) }
     private val pressHomeGesture by lazy { PressHomeGesture(this) }
     private val pressBackGesture by lazy { PressBackGesture(this) }
@@ -96,58 +95,19 @@ class GestureController(val launcher: NeoLauncher) : TouchController {
     }
 
 
-    fun createGestureHandler(jsonString: String) =
-        createGestureHandler(launcher, jsonString, blankGestureHandler)
+    /**
+     * Returns the handler currently set in {@param pref}
+     */
+    fun getGestureHandler(pref: GesturePref) = gestureRegistry.getHandler(pref)
 
     companion object {
-        private const val TAG = "GestureController"
-        private val LEGACY_SLEEP_HANDLERS = listOf(
-            "com.saggitt.omega.gestures.handlers.SleepGestureHandlerDeviceAdmin",
-            "com.saggitt.omega.gestures.handlers.SleepGestureHandlerAccessibility"
-        )
-
         fun createGestureHandler(
             context: Context,
             jsonString: String?,
             fallback: GestureHandler
-        ): GestureHandler {
-            if (!jsonString.isNullOrEmpty()) {
-                val config: JSONObject? = try {
-                    JSONObject(jsonString ?: "{ }")
-                } catch (e: JSONException) {
-                    null
-                }
-                var className = config?.getString("class") ?: jsonString
-                if (className in LEGACY_SLEEP_HANDLERS) {
-                    className = SleepGestureHandler::class.java.name
-                }
-                val configValue =
-                    if (config?.has("config") == true) config.getJSONObject("config") else null
-                try {
-                    val handler = Class.forName(className)
-                        .getConstructor(Context::class.java, JSONObject::class.java)
-                        .newInstance(context, configValue) as GestureHandler
-                    if (handler.isAvailable) return handler
-                } catch (t: Throwable) {
-                    Log.e(TAG, "can't create gesture handler", t)
-                }
-            }
-            return fallback
-        }
+        ) = GestureRegistry.createHandler(context, jsonString, fallback)
 
-        fun getClassName(jsonString: String): String {
-            val config: JSONObject? = try {
-                JSONObject(jsonString)
-            } catch (e: JSONException) {
-                null
-            }
-            val className = config?.getString("class") ?: jsonString
-            return if (className in LEGACY_SLEEP_HANDLERS) {
-                SleepGestureHandler::class.java.name
-            } else {
-                className
-            }
-        }
+        fun getClassName(jsonString: String) = GestureRegistry.getClassName(jsonString)
 
         fun getGestureHandlers(context: Context, isSwipeUp: Boolean, hasBlank: Boolean) =
             mutableListOf(
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.gestures
+
+import android.content.Context
+import android.util.Log
+import com.saggitt.omega.gestures.handlers.NotificationsOpenGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenDashGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenDrawerGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenOverlayGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenOverviewGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenSettingsGestureHandler
+import com.saggitt.omega.gestures.handlers.OpenWidgetsGestureHandler
+import com.saggitt.omega.gestures.handlers.PressBackGestureHandler
+import com.saggitt.omega.gestures.handlers.SleepGestureHandler
+import com.saggitt.omega.gestures.handlers.StartAppGestureHandler
+import com.saggitt.omega.gestures.handlers.StartGlobalSearchGestureHandler
+import com.saggitt.omega.preferences.GesturePref
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * Keeps the gesture handler of each gesture preference, so that handling a gesture does not parse
+ * the stored value. A handler is only created again when the value of its preference changes,
+ * while its availability is checked on every lookup since it can change at any time.
+ */
+class GestureRegistry(private val context: Context, private val fallback: GestureHandler) {
+
+    private val slots = HashMap<GesturePref, Slot>()
+
+    fun getHandler(pref: GesturePref): GestureHandler {
+        val value = pref.getValue()
+        val slot = slots.getOrPut(pref) { Slot() }
+        if (!slot.created || slot.value != value) {
+            slot.value = value
+            slot.handler = instantiateHandler(context, value)
+            slot.created = true
+        }
+        return slot.handler?.takeIf { it.isAvailable } ?: fallback
+    }
+
+    private class Slot {
+        var value: String? = null
+        var handler: GestureHandler? = null
+        var created = false
+    }
+
+    companion object {
+        private const val TAG = "GestureRegistry"
+
+        private val LEGACY_SLEEP_HANDLERS = listOf(
+            "com.saggitt.omega.gestures.handlers.SleepGestureHandlerDeviceAdmin",
+            "com.saggitt.omega.gestures.handlers.SleepGestureHandlerAccessibility"
+        )
+
+        /**
+         * Factories of the handlers which can be stored in a preference, by the class name written
+         * by [GestureHandler.toString].
+         */
+        private val FACTORIES: Map<String, (Context, JSONObject?) -> GestureHandler> = mapOf(
+            BlankGestureHandler::class.java.name to ::BlankGestureHandler,
+            PressBackGestureHandler::class.java.name to ::PressBackGestureHandler,
+            SleepGestureHandler::class.java.name to ::SleepGestureHandler,
+            OpenDashGestureHandler::class.java.name to ::OpenDashGestureHandler,
+            OpenDrawerGestureHandler::class.java.name to ::OpenDrawerGestureHandler,
+            OpenWidgetsGestureHandler::class.java.name to ::OpenWidgetsGestureHandler,
+            NotificationsOpenGestureHandler::class.java.name to ::NotificationsOpenGestureHandler,
+            OpenOverlayGestureHandler::class.java.name to ::OpenOverlayGestureHandler,
+            OpenOverviewGestureHandler::class.java.name to ::OpenOverviewGestureHandler,
+            StartGlobalSearchGestureHandler::class.java.name to ::StartGlobalSearchGestureHandler,
+            OpenSettingsGestureHandler::class.java.name to ::OpenSettingsGestureHandler,
+            StartAppGestureHandler::class.java.name to ::StartAppGestureHandler,
+        )
+
+        fun createHandler(
+            context: Context,
+            jsonString: String?,
+            fallback: GestureHandler
+        ): GestureHandler =
+            instantiateHandler(context, jsonString)?.takeIf { it.isAvailable } ?: fallback
+
+        /**
+         * Creates the handler stored in [jsonString] without checking whether it is available,
+         * or returns null if there is no such handler.
+         */
+        private fun instantiateHandler(context: Context, jsonString: String?): GestureHandler? {
+            if (jsonString.isNullOrEmpty()) return null
+            val config = parseConfig(jsonString)
+            val className = getClassName(config, jsonString)
+            val factory = FACTORIES[className]
+            if (factory == null) {
+                Log.e(TAG, "unknown gesture handler $className")
+                return null
+            }
+            val configValue =
+                if (config?.has("config") == true) config.getJSONObject("config") else null
+            return try {
+                factory(context, configValue)
+            } catch (t: Throwable) {
+                Log.e(TAG, "can't create gesture handler", t)
+                null
+            }
+        }
+
+        fun getClassName(jsonString: String): String =
+            getClassName(parseConfig(jsonString), jsonString)
+
+        private fun getClassName(config: JSONObject?, jsonString: String): String {
+            val className = config?.optString("class")?.takeIf { it.isNotEmpty() } ?: jsonString
+            return if (className in LEGACY_SLEEP_HANDLERS) {
+                SleepGestureHandler::class.java.name
+            } else {
+                className
+            }
+        }
+
+        private fun parseConfig(jsonString: String): JSONObject? = try {
+            JSONObject(jsonString)
+        } catch (e: JSONException) {
+            null
+        }
+    }
+}
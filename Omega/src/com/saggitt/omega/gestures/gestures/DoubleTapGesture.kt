@@ -25,7 +25,7 @@ import com.saggitt.omega.gestures.GestureController
 
 class DoubleTapGesture(controller: GestureController) : Gesture(controller) {
 
-    private val handler by controller.launcher.prefs.gestureDoubleTap
+    private val handlerPref = controller.launcher.prefs.gestureDoubleTap
     override val isEnabled = true
 
     private val squaredTouchSlop = Utilities.squaredTouchSlop(controller.launcher)
@@ -56,7 +56,7 @@ class DoubleTapGesture(controller: GestureController) : Gesture(controller) {
 
                 MotionEvent.ACTION_UP -> {
                     if (squaredHypot(e.x - downX, e.y - downY) < squaredTouchSlop) {
-                        controller.createGestureHandler(handler).onGestureTrigger(controller)
+                        controller.getGestureHandler(handlerPref).onGestureTrigger(controller)
                         return true
                     }
                 }
@@ -21,11 +21,11 @@ import com.saggitt.omega.gestures.GestureController
 
 class LongPressGesture(controller: GestureController) : Gesture(controller) {
 
-    private val handler by controller.launcher.prefs.gestureLongPress
+    private val handlerPref = controller.launcher.prefs.gestureLongPress
     override val isEnabled = true
 
     override fun onEvent(): Boolean {
-        controller.createGestureHandler(handler).onGestureTrigger(controller)
+        controller.getGestureHandler(handlerPref).onGestureTrigger(controller)
         return true
     }
 }
@@ -21,11 +21,11 @@ import com.saggitt.omega.gestures.GestureController
 
 class PressBackGesture(controller: GestureController) : Gesture(controller) {
 
-    val handler by controller.launcher.prefs.gestureBackPress
+    private val handlerPref = controller.launcher.prefs.gestureBackPress
     override val isEnabled = true
 
     override fun onEvent(): Boolean {
-        controller.createGestureHandler(handler).onGestureTrigger(controller)
+        controller.getGestureHandler(handlerPref).onGestureTrigger(controller)
         return true
     }
 }
\ No newline at end of file
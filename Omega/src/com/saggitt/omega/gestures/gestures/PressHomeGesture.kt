@@ -21,11 +21,11 @@ import com.saggitt.omega.gestures.GestureController
 
 class PressHomeGesture(controller: GestureController) : Gesture(controller) {
 
-    private val handler by controller.launcher.prefs.gestureHomePress
+    private val handlerPref = controller.launcher.prefs.gestureHomePress
     override val isEnabled = true
 
     override fun onEvent(): Boolean {
-        controller.createGestureHandler(handler).onGestureTrigger(controller)
+        controller.getGestureHandler(handlerPref).onGestureTrigger(controller)
         return true
     }
 }
\ No newline at end of file
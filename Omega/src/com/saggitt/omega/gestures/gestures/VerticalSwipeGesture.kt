@@ -29,27 +29,31 @@ class VerticalSwipeGesture(controller: GestureController) : Gesture(controller)
 
     override val isEnabled = true
 
-    private val swipeUpHandler by controller.launcher.prefs.gestureSwipeUp
-    private val dockSwipeUpHandler by controller.launcher.prefs.gestureDockSwipeUp
-    private val swipeDownHandler by controller.launcher.prefs.gestureSwipeDown
+    private val swipeUpPref = controller.launcher.prefs.gestureSwipeUp
+    private val dockSwipeUpPref = controller.launcher.prefs.gestureDockSwipeUp
+    private val swipeDownPref = controller.launcher.prefs.gestureSwipeDown
 
-    val customSwipeUp get() = controller.createGestureHandler(swipeUpHandler) !is VerticalSwipeGestureHandler
-    val customDockSwipeUp get() = controller.createGestureHandler(dockSwipeUpHandler) !is VerticalSwipeGestureHandler
-    val customSwipeDown get() = controller.createGestureHandler(swipeDownHandler) !is NotificationsOpenGestureHandler
+    private val swipeUpHandler get() = controller.getGestureHandler(swipeUpPref)
+    private val dockSwipeUpHandler get() = controller.getGestureHandler(dockSwipeUpPref)
+    private val swipeDownHandler get() = controller.getGestureHandler(swipeDownPref)
 
-    val swipeUpAppsSearch get() = controller.createGestureHandler(swipeUpHandler) is StartGlobalSearchGestureHandler
-    val dockSwipeUpAppsSearch get() = controller.createGestureHandler(dockSwipeUpHandler) is StartGlobalSearchGestureHandler
+    val customSwipeUp get() = swipeUpHandler !is VerticalSwipeGestureHandler
+    val customDockSwipeUp get() = dockSwipeUpHandler !is VerticalSwipeGestureHandler
+    val customSwipeDown get() = swipeDownHandler !is NotificationsOpenGestureHandler
+
+    val swipeUpAppsSearch get() = swipeUpHandler is StartGlobalSearchGestureHandler
+    val dockSwipeUpAppsSearch get() = dockSwipeUpHandler is StartGlobalSearchGestureHandler
 
     fun onSwipeUp() {
-        controller.createGestureHandler(swipeUpHandler).onGestureTrigger(controller)
+        swipeUpHandler.onGestureTrigger(controller)
     }
 
     fun onDockSwipeUp() {
-        controller.createGestureHandler(dockSwipeUpHandler).onGestureTrigger(controller)
+        dockSwipeUpHandler.onGestureTrigger(controller)
     }
 
     fun onSwipeDown() {
-        controller.createGestureHandler(swipeDownHandler).onGestureTrigger(controller)
+        swipeDownHandler.onGestureTrigger(controller)
     }
 
     fun onSwipeUpAllAppsComplete(fromDock: Boolean) {
@@ -20,6 +20,7 @@ import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
 import org.xmlpull.v1.XmlPullParserFactory
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.collections.component1
 import kotlin.collections.component2
 import kotlin.collections.set
@@ -28,12 +29,17 @@ class CustomIconPack(context: Context, packPackageName: String) :
     IconPack(context, packPackageName) {
 
     private val packResources = context.packageManager.getResourcesForApplication(packPackageName)
-    private val componentMap = mutableMapOf<ComponentName, IconEntry>()
-    private val calendarMap = mutableMapOf<ComponentName, IconEntry>()
-    private val clockMap = mutableMapOf<ComponentName, IconEntry>()
-    private val clockMetas = mutableMapOf<IconEntry, ClockMetadata>()
+    // Replaced at once when loading completes, as they are read from other threads
+    @Volatile
+    private var componentMap = HashMap<ComponentName, IconEntry>()
+    @Volatile
+    private var calendarMap = HashMap<ComponentName, IconEntry>()
+    @Volatile
+    private var clockMap = HashMap<ComponentName, IconEntry>()
+    @Volatile
+    private var clockMetas = HashMap<IconEntry, ClockMetadata>()
 
-    private val idCache = mutableMapOf<String, Int>()
+    private val idCache = ConcurrentHashMap<String, Int>()
 
     override val label = context.packageManager.let { pm ->
         pm.getApplicationInfo(packPackageName, 0).loadLabel(pm).toString()
@@ -75,7 +81,27 @@ class CustomIconPack(context: Context, packPackageName: String) :
     }
 
     override fun loadInternal() {
-        val parseXml = getXml("appfilter") ?: return
+        val index = IconPackIndex(context, packPackageName)
+        val data = index.read() ?: parseAppFilter()?.also { index.write(it) } ?: return
+
+        val clocks = HashMap<ComponentName, IconEntry>()
+        data.componentMap.forEach { (componentName, iconEntry) ->
+            if (data.clockMetas.containsKey(iconEntry)) {
+                clocks[componentName] = iconEntry
+            }
+        }
+        componentMap = data.componentMap
+        calendarMap = data.calendarMap
+        clockMetas = data.clockMetas
+        clockMap = clocks
+    }
+
+    private fun parseAppFilter(): IconPackIndex.Data? {
+        val parseXml = getXml("appfilter") ?: return null
+        val data = IconPackIndex.Data()
+        val componentMap = data.componentMap
+        val calendarMap = data.calendarMap
+        val clockMetas = data.clockMetas
         val compStart = "ComponentInfo{"
         val compStartLength = compStart.length
         val compEnd = "}"
@@ -133,11 +159,6 @@ class CustomIconPack(context: Context, packPackageName: String) :
                     }
                 }
             }
-            componentMap.forEach { (componentName, iconEntry) ->
-                if (clockMetas.containsKey(iconEntry)) {
-                    clockMap[componentName] = iconEntry
-                }
-            }
         } catch (e: PackageManager.NameNotFoundException) {
             e.printStackTrace()
         } catch (e: XmlPullParserException) {
@@ -147,6 +168,8 @@ class CustomIconPack(context: Context, packPackageName: String) :
         } catch (e: IllegalStateException) {
             e.printStackTrace()
         }
+        // Malformed appfilter files are common, keep what was parsed before the error
+        return data
     }
 
     override fun getAllIcons(): Flow<List<IconPickerCategory>> = flow {
@@ -194,6 +217,46 @@ class CustomIconPack(context: Context, packPackageName: String) :
         endCategory()
     }.flowOn(Dispatchers.IO)
 
+    override fun getIconPages(pageSize: Int): Flow<IconPickerPage> = flow {
+        val defaultTitle = context.getString(R.string.icon_picker_default_category)
+        var currentTitle: String? = null
+        val currentItems = ArrayList<IconPickerItem>(pageSize)
+
+        suspend fun endPage() {
+            if (currentItems.isEmpty()) return
+            emit(IconPickerPage(currentTitle ?: defaultTitle, ArrayList(currentItems)))
+            currentItems.clear()
+        }
+
+        val parser = getXml("drawable")
+        while (parser != null && parser.next() != XmlPullParser.END_DOCUMENT) {
+            if (parser.eventType != XmlPullParser.START_TAG) continue
+            when (parser.name) {
+                "category" -> {
+                    val title = parser["title"] ?: continue
+                    endPage()
+                    currentTitle = title
+                }
+
+                "item" -> {
+                    val drawableName = parser["drawable"] ?: continue
+                    if (getDrawableId(drawableName) != 0) {
+                        currentItems.add(
+                            IconPickerItem(
+                                packPackageName,
+                                drawableName,
+                                drawableName,
+                                IconType.Normal
+                            )
+                        )
+                        if (currentItems.size >= pageSize) endPage()
+                    }
+                }
+            }
+        }
+        endPage()
+    }.flowOn(Dispatchers.IO)
+
     private fun getDrawableId(name: String) = idCache.getOrPut(name) {
         packResources.getIdentifier(name, "drawable", packPackageName)
     }
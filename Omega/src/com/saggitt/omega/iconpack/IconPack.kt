@@ -48,6 +48,12 @@ abstract class IconPack(
     abstract fun getIcon(iconEntry: IconEntry, iconDpi: Int): Drawable?
     abstract fun getAllIcons(): Flow<List<IconPickerCategory>>
 
+    /**
+     * Returns the icons of this pack as pages of at most [pageSize] icons, emitted as they are
+     * read.
+     */
+    open fun getIconPages(pageSize: Int): Flow<IconPickerPage> = getAllIcons().toPages(pageSize)
+
     abstract fun reloadAppMap()
 
     @Suppress("BlockingMethodInNonBlockingContext")
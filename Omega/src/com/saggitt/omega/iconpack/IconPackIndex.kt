@@ -0,0 +1,178 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.iconpack
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.PackageManager
+import android.util.Log
+import com.saggitt.omega.util.getPackageVersionCode
+import com.saulhdev.neolauncher.icons.ClockMetadata
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Compact on-disk copy of the parsed `appfilter` of an icon pack, so that the XML only needs to
+ * be parsed again when the pack is updated. The file is keyed by the pack's package name, and
+ * holds its version code and last update time to detect updates.
+ */
+class IconPackIndex(context: Context, private val packPackageName: String) {
+
+    private val file = File(File(context.cacheDir, DIR_NAME), "$packPackageName.idx")
+    private val versionCode = context.packageManager.getPackageVersionCode(packPackageName)
+    private val lastUpdateTime = try {
+        context.packageManager.getPackageInfo(packPackageName, 0).lastUpdateTime
+    } catch (e: PackageManager.NameNotFoundException) {
+        -1L
+    }
+
+    class Data(
+        val componentMap: HashMap<ComponentName, IconEntry> = HashMap(),
+        val calendarMap: HashMap<ComponentName, IconEntry> = HashMap(),
+        val clockMetas: HashMap<IconEntry, ClockMetadata> = HashMap(),
+    )
+
+    /**
+     * Returns the indexed data, or null if there is no index for the installed version of the
+     * pack or it cannot be read.
+     */
+    fun read(): Data? {
+        if (!file.exists()) return null
+        return try {
+            RandomAccessFile(file, "r").use { raf ->
+                val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                readData(buffer)
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to read icon pack index for $packPackageName", e)
+            null
+        } catch (e: BufferUnderflowException) {
+            Log.w(TAG, "Corrupted icon pack index for $packPackageName", e)
+            null
+        }
+    }
+
+    private fun readData(buffer: ByteBuffer): Data? {
+        if (buffer.int != MAGIC || buffer.int != FORMAT_VERSION
+            || buffer.long != versionCode || buffer.long != lastUpdateTime
+        ) {
+            return null
+        }
+        val data = Data()
+        repeat(buffer.int) {
+            val isCalendar = buffer.get() == TYPE_CALENDAR
+            val component = ComponentName(buffer.readString(), buffer.readString())
+            val drawableName = buffer.readString()
+            if (isCalendar) {
+                data.calendarMap[component] =
+                    IconEntry(packPackageName, drawableName, IconType.Calendar)
+            } else {
+                data.componentMap[component] =
+                    IconEntry(packPackageName, drawableName, IconType.Normal)
+            }
+        }
+        repeat(buffer.int) {
+            val entry = IconEntry(packPackageName, buffer.readString(), IconType.Normal)
+            data.clockMetas[entry] = ClockMetadata(
+                buffer.int, buffer.int, buffer.int, buffer.int, buffer.int, buffer.int
+            )
+        }
+        return data
+    }
+
+    /**
+     * Replaces the index with [data]. The file is written next to the index and renamed, so a
+     * reader never sees a partially written index.
+     */
+    fun write(data: Data) {
+        val dir = file.parentFile ?: return
+        if (!dir.exists() && !dir.mkdirs()) return
+        val tmpFile = File(dir, "${file.name}.tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmpFile))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(FORMAT_VERSION)
+                out.writeLong(versionCode)
+                out.writeLong(lastUpdateTime)
+
+                out.writeInt(data.componentMap.size + data.calendarMap.size)
+                data.componentMap.forEach { (component, entry) ->
+                    out.writeEntry(TYPE_NORMAL, component, entry)
+                }
+                data.calendarMap.forEach { (component, entry) ->
+                    out.writeEntry(TYPE_CALENDAR, component, entry)
+                }
+
+                out.writeInt(data.clockMetas.size)
+                data.clockMetas.forEach { (entry, meta) ->
+                    out.writeString(entry.name)
+                    out.writeInt(meta.hourLayerIndex)
+                    out.writeInt(meta.minuteLayerIndex)
+                    out.writeInt(meta.secondLayerIndex)
+                    out.writeInt(meta.defaultHour)
+                    out.writeInt(meta.defaultMinute)
+                    out.writeInt(meta.defaultSecond)
+                }
+            }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete()
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to write icon pack index for $packPackageName", e)
+            tmpFile.delete()
+        }
+    }
+
+    private fun DataOutputStream.writeEntry(type: Byte, component: ComponentName, entry: IconEntry) {
+        writeByte(type.toInt())
+        writeString(component.packageName)
+        writeString(component.className)
+        writeString(entry.name)
+    }
+
+    private fun DataOutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeShort(bytes.size)
+        write(bytes)
+    }
+
+    private fun ByteBuffer.readString(): String {
+        val bytes = ByteArray(short.toInt() and 0xFFFF)
+        get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    companion object {
+        private const val TAG = "IconPackIndex"
+        private const val DIR_NAME = "iconpack_index"
+
+        private const val MAGIC = 0x4E495049 // "NIPI"
+        private const val FORMAT_VERSION = 1
+
+        private const val TYPE_NORMAL: Byte = 0
+        private const val TYPE_CALENDAR: Byte = 1
+    }
+}
@@ -23,6 +23,11 @@ import com.saggitt.omega.util.Config.Companion.LAWNICONS_PACKAGE_NAME
 import com.saggitt.omega.util.Config.Companion.THEME_ICON_THEMED
 import com.saulhdev.neolauncher.icons.ClockMetadata
 import com.saulhdev.neolauncher.icons.CustomAdaptiveIconDrawable
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.plus
 
 class IconPackProvider(private val context: Context) {
 
@@ -41,15 +46,26 @@ class IconPackProvider(private val context: Context) {
         if (packageName.isEmpty()) {
             return null
         }
-        return iconPacks.getOrPut(packageName) {
-            try {
-                CustomIconPack(context, packageName)
-            } catch (_: PackageManager.NameNotFoundException) {
-                null
+        return synchronized(iconPacks) {
+            iconPacks.getOrPut(packageName) {
+                try {
+                    CustomIconPack(context, packageName)
+                } catch (_: PackageManager.NameNotFoundException) {
+                    null
+                }
             }
         }
     }
 
+    /**
+     * Starts loading the icon pack in the background, so that it is ready by the time icons are
+     * requested while the workspace binds.
+     */
+    fun preloadIconPack(packageName: String) {
+        if (packageName.isEmpty()) return
+        scope.launch { getIconPack(packageName) }
+    }
+
     fun getIconPackList(): List<IconPackInfo> {
         val pm = context.packageManager
 
@@ -162,6 +178,8 @@ class IconPackProvider(private val context: Context) {
     }
 
     companion object {
+        private val scope = CoroutineScope(Dispatchers.IO) + CoroutineName("IconPackProvider")
+
         @JvmField
         val INSTANCE = MainThreadInitializedObject(::IconPackProvider)
     }
@@ -0,0 +1,127 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.iconpack
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.util.LruCache
+import com.saggitt.omega.data.models.IconPickerItem
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.flow.onEach
+
+/**
+ * Paged view of the icons of an [IconPack] for the icon picker.
+ *
+ * Pages are emitted as soon as they are read from the pack and kept in memory once the pack has
+ * been read completely, so the pack is never read twice. Searching with [filter] only looks at
+ * labels, icons are only decoded for [getThumbnail], which keeps a bounded number of them.
+ */
+class IconPickerCatalog(private val iconPack: IconPack) {
+
+    @Volatile
+    private var cachedPages: List<IconPickerPage>? = null
+
+    private val thumbnails = object : LruCache<String, Bitmap>(THUMBNAIL_CACHE_BYTES) {
+        override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+    }
+
+    /**
+     * Returns the pages of icons of the pack, in pack order. The pack is only read the first time
+     * all of its pages are collected.
+     */
+    fun getPages(): Flow<IconPickerPage> = cachedPages?.asFlow() ?: readPages()
+
+    private fun readPages(): Flow<IconPickerPage> {
+        val pages = ArrayList<IconPickerPage>()
+        return iconPack.getIconPages(PAGE_SIZE)
+            .onEach { pages.add(it) }
+            .onCompletion { cause ->
+                if (cause == null) cachedPages = pages
+            }
+    }
+
+    /**
+     * Returns the icon of [item] drawn at [size] pixels, or null if the pack has no such icon.
+     */
+    fun getThumbnail(item: IconPickerItem, size: Int): Bitmap? {
+        val key = "${item.drawableName}/$size"
+        thumbnails.get(key)?.let { return it }
+        val drawable = iconPack.getIcon(item.toIconEntry(), 0) ?: return null
+        val bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888)
+        drawable.setBounds(0, 0, size, size)
+        drawable.draw(Canvas(bitmap))
+        thumbnails.put(key, bitmap)
+        return bitmap
+    }
+
+    companion object {
+        const val PAGE_SIZE = 120
+
+        /**
+         * Groups the icons of [pages] whose label contains [query] by category, in pack order.
+         * Icon pack labels are their drawable names.
+         */
+        fun filter(pages: List<IconPickerPage>, query: String): List<IconPickerCategory> {
+            val lowerQuery = query.lowercase()
+            val categories = ArrayList<IconPickerCategory>()
+            var items = ArrayList<IconPickerItem>()
+            for ((index, page) in pages.withIndex()) {
+                page.items.filterTo(items) {
+                    lowerQuery.isEmpty() || it.label.lowercase().contains(lowerQuery)
+                }
+                val next = pages.getOrNull(index + 1)
+                if (next == null || next.category != page.category) {
+                    if (items.isNotEmpty()) {
+                        categories.add(IconPickerCategory(page.category, items))
+                        items = ArrayList()
+                    }
+                }
+            }
+            return categories
+        }
+
+        private val THUMBNAIL_CACHE_BYTES =
+            (Runtime.getRuntime().maxMemory() / 32).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+    }
+}
+
+/**
+ * A run of consecutive icons of the same category.
+ */
+data class IconPickerPage(
+    val category: String,
+    val items: List<IconPickerItem>,
+)
+
+/**
+ * Splits the categories emitted by [IconPack.getAllIcons] into pages, for packs which cannot
+ * stream their icons.
+ */
+internal fun Flow<List<IconPickerCategory>>.toPages(pageSize: Int): Flow<IconPickerPage> = flow {
+    var latest: List<IconPickerCategory> = emptyList()
+    collect { latest = it }
+    latest.forEach { category ->
+        category.items.chunked(pageSize).forEach { emit(IconPickerPage(category.title, it)) }
+    }
+}.flowOn(Dispatchers.IO)
@@ -88,6 +88,7 @@ class CustomIconProvider @JvmOverloads constructor(
 
     init {
         setIconThemeSupported(supportsIconTheme)
+        iconPackProvider.preloadIconPack(iconPackPref.getValue())
     }
 
     override fun setIconThemeSupported(isSupported: Boolean) {
@@ -23,12 +23,10 @@ import android.content.Intent
 import androidx.annotation.StringRes
 import androidx.datastore.core.DataStore
 import androidx.datastore.preferences.core.Preferences
-import androidx.datastore.preferences.core.edit
 import com.android.launcher3.InvariantDeviceProfile
 import com.saggitt.omega.theme.AccentColorOption
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.firstOrNull
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.runBlocking
 import org.json.JSONObject
@@ -49,7 +47,7 @@ open class BooleanPref(
 
     override suspend fun set(value: Boolean) {
         onChange(value)
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -70,7 +68,7 @@ open class IntPref(
     }
 
     override suspend fun set(value: Int) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -93,7 +91,7 @@ class IdpIntPref(
     }
 
     override suspend fun set(value: Int) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 
     fun defaultValue(defaultGrid: InvariantDeviceProfile.GridOption): Int {
@@ -134,7 +132,7 @@ open class IntentLauncherPref(
     }
 
     override suspend fun set(value: Boolean) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -155,7 +153,7 @@ open class FloatPref(
     }
 
     override suspend fun set(value: Float) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -174,7 +172,7 @@ open class IntSelectionPref(
     }
 
     override suspend fun set(value: Int) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -191,13 +189,11 @@ open class ColorIntPref(
     }
 
     override suspend fun set(value: String) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 
     fun getColor(): Int {
-        return runBlocking(Dispatchers.IO) {
-            AccentColorOption.fromString(getValue()).accentColor
-        }
+        return AccentColorOption.fromString(getValue()).accentColor
     }
 }
 
@@ -215,7 +211,7 @@ open class NavigationPref(
     }
 
     override suspend fun set(value: String) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -259,7 +255,7 @@ open class StringTextPref(
     }
 
     override suspend fun set(value: String) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -279,7 +275,7 @@ open class StringSelectionPref(
 
     override suspend fun set(value: String) {
         onChange()
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -299,7 +295,7 @@ open class StringSetPref(
 
     override suspend fun set(value: Set<String>) {
         onChange()
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -317,9 +313,7 @@ open class StringMultiSelectionPref(
     private val valueList = arrayListOf<String>()
 
     init {
-        runBlocking(Dispatchers.IO) {
-            valueList.addAll(get().firstOrNull() ?: defaultValue)
-        }
+        valueList.addAll(getValue())
     }
 
     override fun get(): Flow<Set<String>> {
@@ -327,7 +321,7 @@ open class StringMultiSelectionPref(
     }
 
     override suspend fun set(value: Set<String>) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 
     fun getAll(): List<String> = valueList
@@ -341,7 +335,7 @@ open class StringMultiSelectionPref(
     }
 
     private suspend fun saveChanges() {
-        dataStore.edit { it[key] = valueList.toSet() }
+        snapshot.edit { it[key] = valueList.toSet() }
     }
 }
 
@@ -358,7 +352,7 @@ open class DialogPref(
     }
 
     override suspend fun set(value: String) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
     }
 }
 
@@ -376,7 +370,7 @@ open class StringPref(
     }
 
     override suspend fun set(value: String) {
-        dataStore.edit { it[key] = value }
+        snapshot.edit { it[key] = value }
         onChange(value)
     }
 }
@@ -461,10 +455,10 @@ abstract class PrefDelegate<T : Any>(
     private val key: Preferences.Key<T>,
     private val defaultValue: T
 ) {
+    protected val snapshot = PreferencesSnapshot.of(dataStore)
+
     fun getValue(): T {
-        return runBlocking(Dispatchers.IO) {
-            get().firstOrNull() ?: defaultValue
-        }
+        return snapshot[key] ?: defaultValue
     }
 
     fun setValue(value: T) {
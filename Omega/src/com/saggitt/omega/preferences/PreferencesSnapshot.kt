@@ -0,0 +1,90 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.preferences
+
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.MutablePreferences
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.launchIn
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.plus
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Immutable in-memory copy of the latest [Preferences] emitted by a [DataStore].
+ *
+ * The store is read once when the snapshot is created and then kept current by a single
+ * collector, so [get] is a plain volatile read that never suspends, blocks or allocates.
+ * Writes made through [edit] are published as soon as they are committed. An emission can be
+ * delivered after a newer write, so the collector publishes the latest value of the store
+ * rather than the emitted one.
+ */
+class PreferencesSnapshot private constructor(private val dataStore: DataStore<Preferences>) {
+
+    @Volatile
+    private var current: Preferences = runBlocking(Dispatchers.IO) { dataStore.data.first() }
+
+    // Orders the values published by edit() and by the collector
+    private val publishMutex = Mutex()
+
+    private val scope = CoroutineScope(Dispatchers.IO) + CoroutineName("PreferencesSnapshot")
+
+    init {
+        dataStore.data
+            .onEach { onCollected() }
+            .launchIn(scope)
+    }
+
+    operator fun <T> get(key: Preferences.Key<T>): T? = current[key]
+
+    /**
+     * Edits the store and publishes the result right away, so the caller reads back its own
+     * update without waiting for the collector.
+     */
+    suspend fun edit(transform: suspend (MutablePreferences) -> Unit): Preferences {
+        return publishMutex.withLock {
+            dataStore.edit(transform).also { current = it }
+        }
+    }
+
+    private suspend fun onCollected() {
+        publishMutex.withLock {
+            // Reading the store returns its cached value, which includes every committed write
+            current = dataStore.data.first()
+        }
+    }
+
+    companion object {
+        private val snapshots = HashMap<DataStore<Preferences>, PreferencesSnapshot>()
+
+        @JvmStatic
+        fun of(dataStore: DataStore<Preferences>): PreferencesSnapshot {
+            return synchronized(snapshots) {
+                snapshots.getOrPut(dataStore) { PreferencesSnapshot(dataStore) }
+            }
+        }
+    }
+}
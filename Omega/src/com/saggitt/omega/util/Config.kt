@@ -100,6 +100,7 @@ class Config(val context: Context) {
         const val SORT_MOST_USED = 2
         const val SORT_BY_COLOR = 3
         const val SORT_BY_INSTALL_DATE = 4
+        const val SORT_FREQUENTLY_USED = 5
 
         //COMPOSE THEME COLORS
         const val THEME_LIGHT = 0
@@ -117,6 +118,7 @@ class Config(val context: Context) {
             SORT_MOST_USED to R.string.title__sort_most_used,
             SORT_BY_COLOR to R.string.title__sort_by_color,
             SORT_BY_INSTALL_DATE to R.string.title__sort_last_installed,
+            SORT_FREQUENTLY_USED to R.string.title__sort_frequently_used,
         )
 
         const val LAWNICONS_PACKAGE_NAME = "app.lawnchair.lawnicons"
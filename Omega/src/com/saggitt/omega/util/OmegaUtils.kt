@@ -299,9 +299,12 @@ fun MutableList<AppInfo>.sortApps(context: Context, sortType: Int) {
 
         Config.SORT_MOST_USED -> {
             val repository = AppTrackerRepository.INSTANCE[context]
-            val appsCounter = repository.getAppsCount()
-            val mostUsedComparator = AppUsageComparator(appsCounter)
-            sortWith(mostUsedComparator)
+            sortWith(AppUsageComparator(repository, false, this))
+        }
+
+        Config.SORT_FREQUENTLY_USED -> {
+            val repository = AppTrackerRepository.INSTANCE[context]
+            sortWith(AppUsageComparator(repository, true, this))
         }
 
         Config.SORT_BY_COLOR -> sortWith(AppColorComparator(context))
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.blur
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class BlurWallpaperTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun sampleSize_staysAboveTargetSize() {
+        val sampleSize = WallpaperScaling.sampleSize(4000, 3000, 135, 300)
+        assertEquals(8, sampleSize)
+        assertTrue(4000 / sampleSize >= 135 && 3000 / sampleSize >= 300)
+        assertEquals(1, WallpaperScaling.sampleSize(100, 100, 135, 300))
+    }
+
+    @Test
+    fun coverScale_neverUpscales() {
+        assertEquals(0.1f, WallpaperScaling.coverScale(1000, 3000, 100, 300), 0.0001f)
+        assertEquals(0.2f, WallpaperScaling.coverScale(1000, 3000, 200, 300), 0.0001f)
+        assertEquals(1f, WallpaperScaling.coverScale(50, 50, 135, 300), 0f)
+    }
+
+    @Test
+    fun blurredSize_isDisplayReducedByFactor() {
+        // Source already reduced to the display aspect ratio
+        assertEquals(135 to 300, WallpaperScaling.blurredSize(1080, 2400, 270, 600, 8))
+        // Wider source keeps its aspect ratio and overflows horizontally
+        assertEquals(600 to 300, WallpaperScaling.blurredSize(1080, 2400, 1200, 600, 8))
+        // Tiny displays never end up with an empty bitmap
+        assertEquals(1 to 1, WallpaperScaling.blurredSize(4, 4, 4, 4, 8))
+    }
+
+    @Test
+    fun cache_hitsOnlyForSameKey() {
+        val cache = WallpaperBlurCache(folder.root)
+        val key = WallpaperBlurCache.Key(3, 1080, 2400, 25, 1.25f)
+        assertNull(cache.getFile(key))
+
+        folder.newFile(key.fileName)
+        assertNotNull(cache.getFile(WallpaperBlurCache.Key(3, 1080, 2400, 25, 1.25f)))
+        assertNull(cache.getFile(key.copy(wallpaperId = 4)))
+        assertNull(cache.getFile(key.copy(blurRadius = 30)))
+        assertNull(cache.getFile(key.copy(displayWidth = 2400, displayHeight = 1080)))
+    }
+
+    @Test
+    fun cache_ignoresUnidentifiedWallpapers() {
+        val cache = WallpaperBlurCache(folder.root)
+        val key = WallpaperBlurCache.Key(-1, 1080, 2400, 25, 1.25f)
+        folder.newFile(key.fileName)
+        assertNull(cache.getFile(key))
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of Neo Launcher
+ * Copyright (c) 2023   Neo Launcher Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.saggitt.omega.preferences
+
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.PreferenceDataStoreFactory
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.intPreferencesKey
+import androidx.datastore.preferences.core.stringSetPreferencesKey
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class PreferencesSnapshotTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var scope: CoroutineScope
+    private lateinit var dataStore: DataStore<Preferences>
+
+    @Before
+    fun setUp() {
+        scope = CoroutineScope(Dispatchers.IO + Job())
+        dataStore = PreferenceDataStoreFactory.create(scope = scope) {
+            folder.newFile("test.preferences_pb").apply { delete() }
+        }
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun setValue_isReadBack() {
+        val pref = IntPref(titleId = 0, dataStore = dataStore, key = INT_KEY, defaultValue = 3)
+        assertEquals(3, pref.getValue())
+
+        pref.setValue(7)
+        assertEquals(7, pref.getValue())
+    }
+
+    @Test
+    fun suspendSet_isReadBack() {
+        val pref = IntPref(titleId = 0, dataStore = dataStore, key = INT_KEY)
+        runBlocking { pref.set(11) }
+        assertEquals(11, pref.getValue())
+    }
+
+    @Test
+    fun multiSelectionSetAll_isReadBack() {
+        val pref = StringMultiSelectionPref(
+            titleId = 0,
+            dataStore = dataStore,
+            key = SET_KEY,
+            entries = emptyMap()
+        )
+        pref.setAll(listOf("a", "b"))
+        assertEquals(setOf("a", "b"), pref.getValue())
+    }
+
+    @Test
+    fun collector_doesNotOverwriteNewerWrites() {
+        val pref = IntPref(titleId = 0, dataStore = dataStore, key = INT_KEY)
+        for (i in 1..WRITES) {
+            runBlocking { pref.set(i) }
+            assertEquals(i, pref.getValue())
+        }
+        // Let the collector drain every emission, the latest write must still be visible
+        runBlocking { dataStore.data.first { it[INT_KEY] == WRITES } }
+        Thread.sleep(100)
+        assertEquals(WRITES, pref.getValue())
+    }
+
+    @Test
+    fun collector_doesNotRestoreSupersededWrite() {
+        val snapshot = PreferencesSnapshot.of(dataStore)
+        runBlocking {
+            snapshot.edit { it[INT_KEY] = 1 }
+            // Back to the initial value, before the first write was collected
+            snapshot.edit { it.remove(INT_KEY) }
+        }
+        assertNull(snapshot[INT_KEY])
+        Thread.sleep(100)
+        assertNull(snapshot[INT_KEY])
+    }
+
+    @Test(timeout = TIMEOUT_MS)
+    fun get_reflectsExternalWrites() {
+        val snapshot = PreferencesSnapshot.of(dataStore)
+        runBlocking { dataStore.edit { it[INT_KEY] = 5 } }
+        while (snapshot[INT_KEY] != 5) {
+            Thread.sleep(10)
+        }
+    }
+
+    @Test(timeout = TIMEOUT_MS)
+    fun get_doesNotWaitForPendingEdit() {
+        val snapshot = PreferencesSnapshot.of(dataStore)
+        runBlocking { snapshot.edit { it[INT_KEY] = 1 } }
+        val editing = CompletableDeferred<Unit>()
+        val release = CompletableDeferred<Unit>()
+        val job = scope.launch {
+            snapshot.edit {
+                editing.complete(Unit)
+                release.await()
+                it[INT_KEY] = 2
+            }
+        }
+        runBlocking { editing.await() }
+
+        // The edit holds the store, the read must still return the committed value
+        assertEquals(1, snapshot[INT_KEY])
+        release.complete(Unit)
+        runBlocking { job.join() }
+        assertEquals(2, snapshot[INT_KEY])
+    }
+
+    companion object {
+        private val INT_KEY = intPreferencesKey("int_pref")
+        private val SET_KEY = stringSetPreferencesKey("set_pref")
+        private const val WRITES = 20
+        private const val TIMEOUT_MS = 5000L
+    }
+}
@@ -189,6 +189,10 @@ android {
             manifest.srcFile("tests/AndroidManifest.xml")
         }*/
 
+        named("test") {
+            java.srcDirs(listOf("Omega/tests/src"))
+        }
+
         named("aosp") {
             java.srcDirs(listOf("src_flags", "src_shortcuts_overrides"))
         }
@@ -64,12 +64,13 @@ import com.saulhdev.neolauncher.icons.CustomAdaptiveIconDrawable;
 
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 public abstract class BaseIconCache {
@@ -79,6 +80,9 @@ public abstract class BaseIconCache {
 
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
 
+    // Number of locks used to load entries, must be a power of two
+    private static final int LOAD_LOCK_STRIPES = 16;
+
     // Empty class name is used for storing package default entry.
     public static final String EMPTY_CLASS_NAME = ".";
 
@@ -92,6 +96,28 @@ public abstract class BaseIconCache {
         public CharSequence contentDescription = "";
     }
 
+    /**
+     * A rendered entry waiting to be added to the DB and the in-memory cache.
+     */
+    static final class PendingEntry {
+
+        @NonNull
+        final ComponentKey key;
+        @NonNull
+        final CacheEntry entry;
+        @NonNull
+        final ContentValues values;
+        final boolean addToMemCache;
+
+        PendingEntry(@NonNull ComponentKey key, @NonNull CacheEntry entry,
+                @NonNull ContentValues values, boolean addToMemCache) {
+            this.key = key;
+            this.entry = entry;
+            this.values = values;
+            this.addToMemCache = addToMemCache;
+        }
+    }
+
     @NonNull
     protected final Context mContext;
 
@@ -107,7 +133,7 @@ public abstract class BaseIconCache {
     protected int mIconDpi;
 
     @NonNull
-    protected IconDB mIconDb;
+    protected volatile IconDB mIconDb;
 
     @NonNull
     protected LocaleList mLocaleList = LocaleList.getEmptyLocaleList();
@@ -116,7 +142,7 @@ public abstract class BaseIconCache {
     protected String mSystemState = "";
 
     @Nullable
-    private BitmapInfo mDefaultIcon;
+    private volatile BitmapInfo mDefaultIcon;
 
     @NonNull
     private final SparseArray<FlagOp> mUserFlagOpMap = new SparseArray<>();
@@ -127,6 +153,20 @@ public abstract class BaseIconCache {
     @NonNull
     private final Looper mBgLooper;
 
+    /**
+     * Incremented for every new {@link IconCacheUpdateHandler}, so that updates still running
+     * for a previous handler can be dropped.
+     */
+    volatile int mUpdateHandlerGeneration;
+
+    /**
+     * Locks guarding the loading and replacement of entries, striped by package and user. Reads
+     * of {@link #mCache} do not need any lock, and only entries of the same package are loaded
+     * one at a time. Entries are only added to {@link #mCache} once fully loaded.
+     */
+    @NonNull
+    private final Object[] mLoadLocks = new Object[LOAD_LOCK_STRIPES];
+
     public BaseIconCache(@NonNull final Context context, @Nullable final String dbFileName,
                          @NonNull final Looper bgLooper, final int iconDpi, final int iconPixelSize,
                          final boolean inMemoryCache) {
@@ -136,8 +176,11 @@ public abstract class BaseIconCache {
         mBgLooper = bgLooper;
         mWorkerHandler = new Handler(mBgLooper);
 
+        for (int i = 0; i < LOAD_LOCK_STRIPES; i++) {
+            mLoadLocks[i] = new Object();
+        }
         if (inMemoryCache) {
-            mCache = new HashMap<>(INITIAL_ICON_CACHE_CAPACITY);
+            mCache = new ConcurrentHashMap<>(INITIAL_ICON_CACHE_CAPACITY);
         } else {
             // Use a dummy cache
             mCache = new AbstractMap<ComponentKey, CacheEntry>() {
@@ -181,12 +224,20 @@ public abstract class BaseIconCache {
 
     private synchronized void updateIconParamsBg(final int iconDpi, final int iconPixelSize) {
         mIconDpi = iconDpi;
-        mDefaultIcon = null;
-        mUserFlagOpMap.clear();
-        mIconDb.clear();
-        mIconDb.close();
-        mIconDb = new IconDB(mContext, mDbFileName, iconPixelSize);
-        mCache.clear();
+        synchronized (mUserFlagOpMap) {
+            mDefaultIcon = null;
+            mUserFlagOpMap.clear();
+        }
+        // Loads and writes use the DB under their load lock, so hold all of them while the DB
+        // is replaced
+        boolean[] stripes = new boolean[LOAD_LOCK_STRIPES];
+        Arrays.fill(stripes, true);
+        runWithLoadLocks(stripes, 0, () -> {
+            mIconDb.clear();
+            mIconDb.close();
+            mIconDb = new IconDB(mContext, mDbFileName, iconPixelSize);
+            mCache.clear();
+        });
     }
 
     @Nullable
@@ -220,41 +271,53 @@ public abstract class BaseIconCache {
         return getFullResDefaultActivityIcon(mIconDpi);
     }
 
+    /**
+     * Returns the lock guarding the loading of entries for the given package and user.
+     */
+    @NonNull
+    protected Object getLoadLock(@NonNull final String packageName,
+                                 @NonNull final UserHandle user) {
+        return mLoadLocks[getLoadLockIndex(packageName, user)];
+    }
+
+    private static int getLoadLockIndex(@NonNull final String packageName,
+                                        @NonNull final UserHandle user) {
+        int hash = 31 * packageName.hashCode() + user.hashCode();
+        return (hash ^ (hash >>> 16)) & (LOAD_LOCK_STRIPES - 1);
+    }
+
     /**
      * Remove any records for the supplied ComponentName.
      */
-    public synchronized void remove(@NonNull final ComponentName componentName,
-                                    @NonNull final UserHandle user) {
-        mCache.remove(new ComponentKey(componentName, user));
+    public void remove(@NonNull final ComponentName componentName,
+                       @NonNull final UserHandle user) {
+        synchronized (getLoadLock(componentName.getPackageName(), user)) {
+            mCache.remove(new ComponentKey(componentName, user));
+        }
     }
 
     /**
      * Remove any records for the supplied package name from memory.
+     * This must be called while holding the load lock of the package.
      */
     private void removeFromMemCacheLocked(@Nullable final String packageName,
                                           @Nullable final UserHandle user) {
-        HashSet<ComponentKey> forDeletion = new HashSet<>();
-        for (ComponentKey key : mCache.keySet()) {
-            if (key.componentName.getPackageName().equals(packageName)
-                    && key.user.equals(user)) {
-                forDeletion.add(key);
-            }
-        }
-        for (ComponentKey condemned : forDeletion) {
-            mCache.remove(condemned);
-        }
+        mCache.keySet().removeIf(key -> key.componentName.getPackageName().equals(packageName)
+                && key.user.equals(user));
     }
 
     /**
      * Removes the entries related to the given package in memory and persistent DB.
      */
-    public synchronized void removeIconsForPkg(@NonNull final String packageName,
-                                               @NonNull final UserHandle user) {
-        removeFromMemCacheLocked(packageName, user);
-        long userSerial = getSerialNumberForUser(user);
-        mIconDb.delete(
-                IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
-                new String[]{packageName + "/%", Long.toString(userSerial)});
+    public void removeIconsForPkg(@NonNull final String packageName,
+                                  @NonNull final UserHandle user) {
+        synchronized (getLoadLock(packageName, user)) {
+            removeFromMemCacheLocked(packageName, user);
+            long userSerial = getSerialNumberForUser(user);
+            mIconDb.delete(
+                    IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
+                    new String[]{packageName + "/%", Long.toString(userSerial)});
+        }
     }
 
     @NonNull
@@ -286,9 +349,29 @@ public abstract class BaseIconCache {
      *                        old data.
      */
     @VisibleForTesting
-    public synchronized <T> void addIconToDBAndMemCache(@NonNull final T object,
+    public <T> void addIconToDBAndMemCache(@NonNull final T object,
                                                         @NonNull final CachingLogic<T> cachingLogic, @NonNull final PackageInfo info,
                                                         final long userSerial, final boolean replaceExisting) {
+        PendingEntry pending = loadEntryForDB(object, cachingLogic, info, userSerial,
+                replaceExisting);
+        if (pending != null) {
+            addEntriesToDBAndMemCache(Collections.singletonList(pending));
+        }
+    }
+
+    /**
+     * Renders the entry for {@param object} without adding it to the DB or the in-memory cache.
+     * This does not hold the cache lock while rendering, so it can be called from several threads
+     * at once.
+     *
+     * @return the entry to pass to {@link #addEntriesToDBAndMemCache}, or null if the icon could
+     * not be loaded
+     * @see #addIconToDBAndMemCache
+     */
+    @Nullable
+    <T> PendingEntry loadEntryForDB(@NonNull final T object,
+                                    @NonNull final CachingLogic<T> cachingLogic, @NonNull final PackageInfo info,
+                                    final long userSerial, final boolean replaceExisting) {
         UserHandle user = cachingLogic.getUser(object);
         ComponentName componentName = cachingLogic.getComponent(object);
 
@@ -308,7 +391,7 @@ public abstract class BaseIconCache {
         // Icon can't be loaded from cachingLogic, which implies alternative icon was loaded
         // (e.g. fallback icon, default icon). So we drop here since there's no point in caching
         // an empty entry.
-        if (entry.bitmap.isNullOrLowRes()) return;
+        if (entry.bitmap.isNullOrLowRes()) return null;
 
         CharSequence entryTitle = cachingLogic.getLabel(object);
         if (entryTitle == null) {
@@ -318,12 +401,52 @@ public abstract class BaseIconCache {
         entry.title = entryTitle;
 
         entry.contentDescription = mPackageManager.getUserBadgedLabel(entry.title, user);
-        if (cachingLogic.addToMemCache()) mCache.put(key, entry);
 
         ContentValues values = newContentValues(entry.bitmap, entry.title.toString(),
                 componentName.getPackageName(), cachingLogic.getKeywords(object, mLocaleList));
-        addIconToDB(values, componentName, info, userSerial,
+        putVersionInfo(values, componentName, info, userSerial,
                 cachingLogic.getLastUpdatedTime(object, info));
+        return new PendingEntry(key, entry, values, cachingLogic.addToMemCache());
+    }
+
+    /**
+     * Adds entries rendered by {@link #loadEntryForDB} to the in-memory cache, and writes them to
+     * the DB in a single transaction. The load locks of all the packages involved are held for
+     * both, so the memory cache and the DB always agree.
+     */
+    void addEntriesToDBAndMemCache(@NonNull final List<PendingEntry> entries) {
+        boolean[] stripes = new boolean[LOAD_LOCK_STRIPES];
+        for (PendingEntry pending : entries) {
+            stripes[getLoadLockIndex(
+                    pending.key.componentName.getPackageName(), pending.key.user)] = true;
+        }
+        runWithLoadLocks(stripes, 0, () -> {
+            ArrayList<ContentValues> values = new ArrayList<>(entries.size());
+            for (PendingEntry pending : entries) {
+                if (pending.addToMemCache) {
+                    mCache.put(pending.key, pending.entry);
+                }
+                values.add(pending.values);
+            }
+            mIconDb.insertOrReplace(values);
+        });
+    }
+
+    /**
+     * Takes the load locks marked in {@param stripes} from {@param index} on, always in
+     * increasing order so that concurrent callers cannot deadlock, then runs {@param r}.
+     */
+    private void runWithLoadLocks(@NonNull final boolean[] stripes, final int index,
+                                  @NonNull final Runnable r) {
+        if (index == LOAD_LOCK_STRIPES) {
+            r.run();
+        } else if (!stripes[index]) {
+            runWithLoadLocks(stripes, index + 1, r);
+        } else {
+            synchronized (mLoadLocks[index]) {
+                runWithLoadLocks(stripes, index + 1, r);
+            }
+        }
     }
 
     /**
@@ -333,34 +456,48 @@ public abstract class BaseIconCache {
      */
     private void addIconToDB(@NonNull final ContentValues values, @NonNull final ComponentName key,
                              @NonNull final PackageInfo info, final long userSerial, final long lastUpdateTime) {
+        putVersionInfo(values, key, info, userSerial, lastUpdateTime);
+        mIconDb.insertOrReplace(values);
+    }
+
+    private static void putVersionInfo(@NonNull final ContentValues values,
+                                       @NonNull final ComponentName key, @NonNull final PackageInfo info,
+                                       final long userSerial, final long lastUpdateTime) {
         values.put(IconDB.COLUMN_COMPONENT, key.flattenToString());
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, lastUpdateTime);
         values.put(IconDB.COLUMN_VERSION, info.versionCode);
-        mIconDb.insertOrReplace(values);
     }
 
     @NonNull
-    public synchronized BitmapInfo getDefaultIcon(@NonNull final UserHandle user) {
-        if (mDefaultIcon == null) {
-            try (BaseIconFactory li = getIconFactory()) {
-                mDefaultIcon = li.makeDefaultIcon(user);
+    public BitmapInfo getDefaultIcon(@NonNull final UserHandle user) {
+        BitmapInfo defaultIcon = mDefaultIcon;
+        if (defaultIcon == null) {
+            synchronized (mUserFlagOpMap) {
+                defaultIcon = mDefaultIcon;
+                if (defaultIcon == null) {
+                    try (BaseIconFactory li = getIconFactory()) {
+                        defaultIcon = mDefaultIcon = li.makeDefaultIcon(user);
+                    }
+                }
             }
         }
-        return mDefaultIcon.withFlags(getUserFlagOpLocked(user));
+        return defaultIcon.withFlags(getUserFlagOpLocked(user));
     }
 
     @NonNull
     protected FlagOp getUserFlagOpLocked(@NonNull final UserHandle user) {
         int key = user.hashCode();
-        int index;
-        if ((index = mUserFlagOpMap.indexOfKey(key)) >= 0) {
-            return mUserFlagOpMap.valueAt(index);
-        } else {
-            try (BaseIconFactory li = getIconFactory()) {
-                FlagOp op = li.getBitmapFlagOp(new IconOptions().setUser(user));
-                mUserFlagOpMap.put(key, op);
-                return op;
+        synchronized (mUserFlagOpMap) {
+            int index;
+            if ((index = mUserFlagOpMap.indexOfKey(key)) >= 0) {
+                return mUserFlagOpMap.valueAt(index);
+            } else {
+                try (BaseIconFactory li = getIconFactory()) {
+                    FlagOp op = li.getBitmapFlagOp(new IconOptions().setUser(user));
+                    mUserFlagOpMap.put(key, op);
+                    return op;
+                }
             }
         }
     }
@@ -371,7 +508,8 @@ public abstract class BaseIconCache {
 
     /**
      * Retrieves the entry from the cache. If the entry is not present, it creates a new entry.
-     * This method is not thread safe, it must be called from a synchronized method.
+     * Entries already in memory are returned without locking, missing entries are loaded under
+     * the load lock of their package, so concurrent requests for an entry only load it once.
      */
     @NonNull
     protected <T> CacheEntry cacheLocked(
@@ -397,11 +535,16 @@ public abstract class BaseIconCache {
         assertWorkerThread();
         ComponentKey cacheKey = new ComponentKey(componentName, user);
         CacheEntry entry = mCache.get(cacheKey);
-        if (entry == null || (entry.bitmap.isLowRes() && !useLowResIcon)) {
-            entry = new CacheEntry();
-            if (cachingLogic.addToMemCache()) {
-                mCache.put(cacheKey, entry);
+        if (isEntryUsable(entry, useLowResIcon)) {
+            return entry;
+        }
+        synchronized (getLoadLock(componentName.getPackageName(), user)) {
+            // Another thread may have loaded the entry while waiting for the lock.
+            entry = mCache.get(cacheKey);
+            if (isEntryUsable(entry, useLowResIcon)) {
+                return entry;
             }
+            entry = new CacheEntry();
 
             // Check the DB first.
             T object = null;
@@ -432,10 +575,18 @@ public abstract class BaseIconCache {
                     loadFallbackTitle(object, entry, cachingLogic, user);
                 }
             }
+            if (cachingLogic.addToMemCache()) {
+                mCache.put(cacheKey, entry);
+            }
         }
         return entry;
     }
 
+    private static boolean isEntryUsable(@Nullable final CacheEntry entry,
+                                         final boolean useLowResIcon) {
+        return entry != null && (useLowResIcon || !entry.bitmap.isLowRes());
+    }
+
     /**
      * Fallback method for loading an icon bitmap.
      */
@@ -486,28 +637,27 @@ public abstract class BaseIconCache {
      * Adds a default package entry in the cache. This entry is not persisted and will be removed
      * when the cache is flushed.
      */
-    protected synchronized void cachePackageInstallInfo(@NonNull final String packageName,
-                                                        @NonNull final UserHandle user, @Nullable final Bitmap icon,
-                                                        @Nullable final CharSequence title) {
-        removeFromMemCacheLocked(packageName, user);
-
-        ComponentKey cacheKey = getPackageKey(packageName, user);
-        CacheEntry entry = mCache.get(cacheKey);
-
-        // For icon caching, do not go through DB. Just update the in-memory entry.
-        if (entry == null) {
-            entry = new CacheEntry();
-        }
-        if (!TextUtils.isEmpty(title)) {
-            entry.title = title;
-        }
-        if (icon != null) {
-            BaseIconFactory li = getIconFactory();
-            entry.bitmap = li.createShapedIconBitmap(icon, user);
-            li.close();
-        }
-        if (!TextUtils.isEmpty(title) && entry.bitmap.icon != null) {
-            mCache.put(cacheKey, entry);
+    protected void cachePackageInstallInfo(@NonNull final String packageName,
+                                           @NonNull final UserHandle user, @Nullable final Bitmap icon,
+                                           @Nullable final CharSequence title) {
+        synchronized (getLoadLock(packageName, user)) {
+            removeFromMemCacheLocked(packageName, user);
+
+            // For icon caching, do not go through DB. Just update the in-memory entry.
+            // The entry was just removed from memory, so it is always a new one.
+            ComponentKey cacheKey = getPackageKey(packageName, user);
+            CacheEntry entry = new CacheEntry();
+            if (!TextUtils.isEmpty(title)) {
+                entry.title = title;
+            }
+            if (icon != null) {
+                BaseIconFactory li = getIconFactory();
+                entry.bitmap = li.createShapedIconBitmap(icon, user);
+                li.close();
+            }
+            if (!TextUtils.isEmpty(title) && entry.bitmap.icon != null) {
+                mCache.put(cacheKey, entry);
+            }
         }
     }
 
@@ -520,7 +670,7 @@ public abstract class BaseIconCache {
 
     /**
      * Gets an entry for the package, which can be used as a fallback entry for various components.
-     * This method is not thread safe, it must be called from a synchronized method.
+     * Like {@link #cacheLocked}, missing entries are loaded under the load lock of the package.
      */
     @WorkerThread
     @NonNull
@@ -529,8 +679,14 @@ public abstract class BaseIconCache {
         assertWorkerThread();
         ComponentKey cacheKey = getPackageKey(packageName, user);
         CacheEntry entry = mCache.get(cacheKey);
-
-        if (entry == null || (entry.bitmap.isLowRes() && !useLowResIcon)) {
+        if (isEntryUsable(entry, useLowResIcon)) {
+            return entry;
+        }
+        synchronized (getLoadLock(packageName, user)) {
+            entry = mCache.get(cacheKey);
+            if (isEntryUsable(entry, useLowResIcon)) {
+                return entry;
+            }
             entry = new CacheEntry();
             boolean entryUpdated = true;
 
@@ -659,7 +815,7 @@ public abstract class BaseIconCache {
     /**
      * Returns a cursor for an arbitrary query to the cache db
      */
-    public synchronized Cursor queryCacheDb(String[] columns, String selection,
+    public Cursor queryCacheDb(String[] columns, String selection,
                                             String[] selectionArgs) {
         return mIconDb.query(columns, selection, selectionArgs);
     }
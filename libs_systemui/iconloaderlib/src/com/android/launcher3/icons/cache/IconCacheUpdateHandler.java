@@ -21,6 +21,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
+import android.os.Process;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.text.TextUtils;
@@ -28,8 +29,12 @@ import android.util.ArrayMap;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 
+import androidx.annotation.NonNull;
+
 import com.android.launcher3.icons.cache.BaseIconCache.IconDB;
+import com.android.launcher3.util.ComponentKey;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,6 +42,10 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility class to handle updating the Icon cache
@@ -59,6 +68,32 @@ public class IconCacheUpdateHandler {
 
     private static final Object ICON_UPDATE_TOKEN = new Object();
 
+    /**
+     * Minimum number of icons to render for a user before switching from one icon per message
+     * to {@link BulkIconUpdateTask}.
+     */
+    private static final int BULK_UPDATE_THRESHOLD = 24;
+
+    /**
+     * Number of icons written to the DB per transaction by {@link BulkIconUpdateTask}.
+     */
+    private static final int BULK_UPDATE_BATCH_SIZE = 32;
+
+    private static final int BULK_RENDER_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final ThreadPoolExecutor BULK_RENDER_EXECUTOR = new ThreadPoolExecutor(
+            BULK_RENDER_THREADS, BULK_RENDER_THREADS, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "icon-cache-bulk-update"));
+
+    static {
+        BULK_RENDER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private final HashMap<String, PackageInfo> mPkgInfoMap;
     private final BaseIconCache mIconCache;
 
@@ -67,8 +102,12 @@ public class IconCacheUpdateHandler {
     private final SparseBooleanArray mItemsToDelete = new SparseBooleanArray();
     private boolean mFilterMode = MODE_SET_INVALID_ITEMS;
 
+    private final int mGeneration;
+    private Set<ComponentKey> mPriorityComponents = Collections.emptySet();
+
     IconCacheUpdateHandler(BaseIconCache cache) {
         mIconCache = cache;
+        mGeneration = ++cache.mUpdateHandlerGeneration;
 
         mPkgInfoMap = new HashMap<>();
 
@@ -90,6 +129,14 @@ public class IconCacheUpdateHandler {
         packages.add(packageName);
     }
 
+    /**
+     * Sets the components whose icons are rendered first when many icons need to be updated,
+     * typically the ones currently visible.
+     */
+    public void setPriorityComponents(@NonNull Set<ComponentKey> components) {
+        mPriorityComponents = components;
+    }
+
     private void createPackageInfoMap() {
         PackageManager pm = mIconCache.mPackageManager;
         for (PackageInfo info :
@@ -211,8 +258,13 @@ public class IconCacheUpdateHandler {
         if (!componentMap.isEmpty() || !appsToUpdate.isEmpty()) {
             Stack<T> appsToAdd = new Stack<>();
             appsToAdd.addAll(componentMap.values());
-            new SerializedIconUpdateTask(userSerial, user, appsToAdd, appsToUpdate, cachingLogic,
-                    onUpdateCallback).scheduleNext();
+            if (appsToAdd.size() + appsToUpdate.size() >= BULK_UPDATE_THRESHOLD) {
+                new BulkIconUpdateTask<>(userSerial, user, appsToAdd, appsToUpdate, cachingLogic,
+                        onUpdateCallback).scheduleNextBatch();
+            } else {
+                new SerializedIconUpdateTask(userSerial, user, appsToAdd, appsToUpdate,
+                        cachingLogic, onUpdateCallback).scheduleNext();
+            }
         }
     }
 
@@ -309,6 +361,121 @@ public class IconCacheUpdateHandler {
         }
     }
 
+    /**
+     * Updates many icons at once, for example after the icon cache was invalidated. Icons are
+     * rendered in parallel on {@link #BULK_RENDER_EXECUTOR}, and written to the DB on the worker
+     * thread in one transaction per {@link #BULK_UPDATE_BATCH_SIZE} icons. Priority components
+     * are rendered first, and the callback is notified after every batch so that updated icons
+     * show up progressively.
+     */
+    private class BulkIconUpdateTask<T> {
+        private final long mUserSerial;
+        private final UserHandle mUserHandle;
+        private final CachingLogic<T> mCachingLogic;
+        private final OnUpdateCallback mOnUpdateCallback;
+
+        // Apps to render, with whether an existing entry needs to be replaced
+        private final ArrayList<T> mApps = new ArrayList<>();
+        private final ArrayList<Boolean> mReplaceExisting = new ArrayList<>();
+        private int mNextIndex = 0;
+
+        BulkIconUpdateTask(long userSerial, UserHandle userHandle,
+                           Stack<T> appsToAdd, Stack<T> appsToUpdate, CachingLogic<T> cachingLogic,
+                           OnUpdateCallback onUpdateCallback) {
+            mUserSerial = userSerial;
+            mUserHandle = userHandle;
+            mCachingLogic = cachingLogic;
+            mOnUpdateCallback = onUpdateCallback;
+
+            // Priority components first, then updates before additions like
+            // SerializedIconUpdateTask
+            for (int pass = 0; pass < 2; pass++) {
+                boolean priority = pass == 0;
+                addApps(appsToUpdate, true, priority);
+                addApps(appsToAdd, false, priority);
+            }
+        }
+
+        private void addApps(Stack<T> apps, boolean replaceExisting, boolean priority) {
+            for (int i = apps.size() - 1; i >= 0; i--) {
+                T app = apps.get(i);
+                ComponentKey key = new ComponentKey(
+                        mCachingLogic.getComponent(app), mCachingLogic.getUser(app));
+                if (mPriorityComponents.contains(key) == priority) {
+                    mApps.add(app);
+                    mReplaceExisting.add(replaceExisting);
+                }
+            }
+        }
+
+        void scheduleNextBatch() {
+            if (mGeneration != mIconCache.mUpdateHandlerGeneration) {
+                // A new update handler was created, drop the remaining work.
+                return;
+            }
+            int start = mNextIndex;
+            int end = Math.min(start + BULK_UPDATE_BATCH_SIZE, mApps.size());
+            if (start >= end) {
+                return;
+            }
+            mNextIndex = end;
+
+            BaseIconCache.PendingEntry[] results = new BaseIconCache.PendingEntry[end - start];
+            AtomicInteger remaining = new AtomicInteger(results.length);
+            for (int i = start; i < end; i++) {
+                final int index = i;
+                BULK_RENDER_EXECUTOR.execute(() -> {
+                    try {
+                        results[index - start] = render(index);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error rendering icon", e);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        mIconCache.mWorkerHandler.postAtTime(() -> commitBatch(start, results),
+                                ICON_UPDATE_TOKEN, SystemClock.uptimeMillis());
+                    }
+                });
+            }
+        }
+
+        private BaseIconCache.PendingEntry render(int index) {
+            if (mGeneration != mIconCache.mUpdateHandlerGeneration) {
+                return null;
+            }
+            T app = mApps.get(index);
+            PackageInfo info = mPkgInfoMap.get(mCachingLogic.getComponent(app).getPackageName());
+            // We do not check the mPkgInfoMap when generating the apps to add. Although every
+            // app should have package info, this is not guaranteed by the api
+            if (info == null) {
+                return null;
+            }
+            return mIconCache.loadEntryForDB(
+                    app, mCachingLogic, info, mUserSerial, mReplaceExisting.get(index));
+        }
+
+        private void commitBatch(int start, BaseIconCache.PendingEntry[] results) {
+            if (mGeneration != mIconCache.mUpdateHandlerGeneration) {
+                return;
+            }
+            ArrayList<BaseIconCache.PendingEntry> entries = new ArrayList<>(results.length);
+            HashSet<String> updatedPackages = new HashSet<>();
+            for (int i = 0; i < results.length; i++) {
+                if (mReplaceExisting.get(start + i)) {
+                    updatedPackages.add(
+                            mCachingLogic.getComponent(mApps.get(start + i)).getPackageName());
+                }
+                if (results[i] != null) {
+                    entries.add(results[i]);
+                }
+            }
+            mIconCache.addEntriesToDBAndMemCache(entries);
+            if (!updatedPackages.isEmpty()) {
+                mOnUpdateCallback.onPackageIconsUpdated(updatedPackages, mUserHandle);
+            }
+            scheduleNextBatch();
+        }
+    }
+
     public interface OnUpdateCallback {
 
         void onPackageIconsUpdated(HashSet<String> updatedPackages, UserHandle user);
@@ -9,6 +9,8 @@ import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.util.List;
+
 /**
  * An extension of {@link SQLiteOpenHelper} with utility methods for a single table cache DB.
  * Any exception during write operations are ignored, and any version change causes a DB reset.
@@ -66,6 +68,34 @@ public abstract class SQLiteCacheHelper {
         }
     }
 
+    /**
+     * Inserts or replaces all the {@param values} rows in a single transaction.
+     *
+     * @see #insertOrReplace(ContentValues)
+     */
+    public void insertOrReplace(List<ContentValues> values) {
+        if (mIgnoreWrites || values.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < values.size(); i++) {
+                    db.insertWithOnConflict(
+                            mTableName, null, values.get(i), SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteFullException e) {
+            onDiskFull(e);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Ignoring sqlite exception", e);
+        }
+    }
+
     private void onDiskFull(SQLiteFullException e) {
         Log.e(TAG, "Disk full, all write operations will be ignored", e);
         mIgnoreWrites = true;
@@ -56,6 +56,7 @@ import android.view.ViewGroup;
 import android.view.accessibility.AccessibilityEvent;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import androidx.core.graphics.ColorUtils;
 import androidx.core.view.ViewCompat;
 
@@ -125,6 +126,7 @@ public class CellLayout extends ViewGroup {
 
     protected GridOccupancy mOccupied;
     public GridOccupancy mTmpOccupied;
+    private long[] mTmpVacantOrigins;
 
     private OnTouchListener mInterceptTouchListener;
 
@@ -214,6 +216,7 @@ public class CellLayout extends ViewGroup {
     public final int[] mDirectionVector = new int[2];
 
     ItemConfiguration mPreviousSolution = null;
+    private ReorderAlgorithm mReorderAlgorithm;
     private static final int INVALID_DIRECTION = -100;
 
     private final Rect mTempRect = new Rect();
@@ -1310,17 +1313,29 @@ public class CellLayout extends ViewGroup {
             return bestXY;
         }
 
+        // Columns of each row at which the minimum span fits, or null if not available
+        final long[] vacantOrigins = ignoreOccupied ? null : getVacantOrigins(minSpanX, minSpanY);
+
         for (int y = 0; y < countY - (minSpanY - 1); y++) {
+            if (vacantOrigins != null && vacantOrigins[y] == 0) {
+                continue;
+            }
             inner:
             for (int x = 0; x < countX - (minSpanX - 1); x++) {
                 int ySize = -1;
                 int xSize = -1;
                 if (!ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
+                    if (vacantOrigins != null) {
+                        if ((vacantOrigins[y] & (1L << x)) == 0) {
+                            continue;
+                        }
+                    } else {
+                        for (int i = 0; i < minSpanX; i++) {
+                            for (int j = 0; j < minSpanY; j++) {
+                                if (mOccupied.cells[x + i][y + j]) {
+                                    continue inner;
+                                }
                             }
                         }
                     }
@@ -1399,6 +1414,15 @@ public class CellLayout extends ViewGroup {
         return bestXY;
     }
 
+    @Nullable
+    private long[] getVacantOrigins(int spanX, int spanY) {
+        if (mTmpVacantOrigins == null || mTmpVacantOrigins.length < mCountY) {
+            mTmpVacantOrigins = new long[mCountY];
+        }
+        return mOccupied.getVacantOrigins(spanX, spanY, mTmpVacantOrigins)
+                ? mTmpVacantOrigins : null;
+    }
+
     public GridOccupancy getOccupied() {
         return mOccupied;
     }
@@ -2403,25 +2427,35 @@ public class CellLayout extends ViewGroup {
         return new ReorderAlgorithm(this);
     }
 
+    /**
+     * Returns the reorder algorithm of this layout, which keeps its solutions during a drag
+     */
+    public ReorderAlgorithm getReorderAlgorithm() {
+        if (mReorderAlgorithm == null) {
+            mReorderAlgorithm = createReorderAlgorithm();
+        }
+        return mReorderAlgorithm;
+    }
+
     protected ItemConfiguration findReorderSolution(int pixelX, int pixelY, int minSpanX,
                                                     int minSpanY, int spanX, int spanY, int[] direction, View dragView, boolean decX,
                                                     ItemConfiguration solution) {
-        return createReorderAlgorithm().findReorderSolution(pixelX, pixelY, minSpanX, minSpanY,
+        return getReorderAlgorithm().findReorderSolution(pixelX, pixelY, minSpanX, minSpanY,
                 spanX, spanY, direction, dragView, decX, solution);
     }
 
     public void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
+        solution.sortedViews.clear();
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             CellLayoutLayoutParams lp = (CellLayoutLayoutParams) child.getLayoutParams();
-            CellAndSpan c;
             if (temp) {
-                c = new CellAndSpan(lp.getTmpCellX(), lp.getTmpCellY(), lp.cellHSpan, lp.cellVSpan);
+                solution.set(child, lp.getTmpCellX(), lp.getTmpCellY(), lp.cellHSpan,
+                        lp.cellVSpan);
             } else {
-                c = new CellAndSpan(lp.getCellX(), lp.getCellY(), lp.cellHSpan, lp.cellVSpan);
+                solution.set(child, lp.getCellX(), lp.getCellY(), lp.cellHSpan, lp.cellVSpan);
             }
-            solution.add(child, c);
         }
     }
 
@@ -2442,7 +2476,7 @@ public class CellLayout extends ViewGroup {
      */
     public ItemConfiguration calculateReorder(int pixelX, int pixelY, int minSpanX, int minSpanY,
                                               int spanX, int spanY, View dragView) {
-        return createReorderAlgorithm().calculateReorder(pixelX, pixelY, minSpanX, minSpanY,
+        return getReorderAlgorithm().calculateReorder(pixelX, pixelY, minSpanX, minSpanY,
                 spanX, spanY, dragView);
     }
 
@@ -2568,10 +2602,38 @@ public class CellLayout extends ViewGroup {
 
         public void add(View v, CellAndSpan cs) {
             map.put(v, cs);
-            savedMap.put(v, new CellAndSpan());
+            if (!savedMap.containsKey(v)) {
+                savedMap.put(v, new CellAndSpan());
+            }
             sortedViews.add(v);
         }
 
+        /**
+         * Adds {@param v} at the given position, reusing its previous entry if any
+         */
+        public void set(View v, int cellX, int cellY, int spanX, int spanY) {
+            CellAndSpan c = map.get(v);
+            if (c == null) {
+                c = new CellAndSpan();
+            }
+            c.cellX = cellX;
+            c.cellY = cellY;
+            c.spanX = spanX;
+            c.spanY = spanY;
+            add(v, c);
+        }
+
+        /**
+         * Resets the result of this configuration, so that it can be reused for the same layout.
+         * The views positions are kept and overwritten when the current state is copied.
+         */
+        public void reset() {
+            cellX = cellY = -1;
+            spanX = spanY = 1;
+            isSolution = false;
+            intersectingViews = null;
+        }
+
         public int area() {
             return spanX * spanY;
         }
@@ -2639,6 +2701,9 @@ public class CellLayout extends ViewGroup {
     void onDragEnter() {
         mDragging = true;
         mPreviousSolution = null;
+        if (mReorderAlgorithm != null) {
+            mReorderAlgorithm.invalidateSolutions();
+        }
     }
 
     /**
@@ -2654,6 +2719,9 @@ public class CellLayout extends ViewGroup {
 
         // Invalidate the drag data
         mPreviousSolution = null;
+        if (mReorderAlgorithm != null) {
+            mReorderAlgorithm.invalidateSolutions();
+        }
         mDragCell[0] = mDragCell[1] = -1;
         mDragCellSpan[0] = mDragCellSpan[1] = -1;
         mDragOutlineAnims[mDragOutlineCurrent].animateOut();
@@ -35,6 +35,7 @@ import android.content.res.TypedArray;
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
+import android.util.ArrayMap;
 import android.util.DisplayMetrics;
 import android.util.SparseArray;
 import android.view.Surface;
@@ -238,6 +239,9 @@ public class DeviceProfile {
     public int stashedTaskbarSize;
     // DragController
     public int flingToDeleteThresholdVelocity;
+    // Multi-window profiles derived from this profile, keyed by their window bounds
+    private static final int MAX_MULTI_WINDOW_PROFILES = 4;
+    private final ArrayMap<WindowBounds, DeviceProfile> mMultiWindowProfiles = new ArrayMap<>();
 
     private final NeoPrefs prefs;
 
@@ -619,6 +623,24 @@ public class DeviceProfile {
      * TODO: Move this to the builder as part of setMultiWindowMode
      */
     public DeviceProfile getMultiWindowProfile(Context context, WindowBounds windowBounds) {
+        // Resizing a split screen app goes through a small set of sizes, reuse the profiles which
+        // were already built for them instead of measuring the whole layout again.
+        DeviceProfile profile = mMultiWindowProfiles.get(windowBounds);
+        if (profile != null && profile.rotationHint == windowBounds.rotationHint) {
+            return profile;
+        }
+        profile = createMultiWindowProfile(context, windowBounds);
+        // The keys ignore the rotation hint, drop the entry built for the other rotation
+        mMultiWindowProfiles.remove(windowBounds);
+        if (mMultiWindowProfiles.size() >= MAX_MULTI_WINDOW_PROFILES) {
+            mMultiWindowProfiles.removeAt(0);
+        }
+        mMultiWindowProfiles.put(new WindowBounds(new Rect(windowBounds.bounds),
+                new Rect(windowBounds.insets), windowBounds.rotationHint), profile);
+        return profile;
+    }
+
+    private DeviceProfile createMultiWindowProfile(Context context, WindowBounds windowBounds) {
         DeviceProfile profile = toBuilder(context)
                 .setWindowBounds(windowBounds)
                 .setMultiWindowMode(true)
@@ -94,6 +94,10 @@ public class InvariantDeviceProfile {
     private static final float WEIGHT_POWER = 5;
     // used to offset float not being able to express extremely small weights in extreme cases.
     private static final float WEIGHT_EFFICIENT = 100000f;
+
+    // Cache of R.xml.device_profiles, one entry per device type and density
+    private static final int MAX_PARSED_GRID_OPTIONS = 4;
+    private static final ArrayList<ParsedGridOptions> sParsedGridOptions = new ArrayList<>();
     // Used for arrays to specify different sizes (e.g. border spaces, width/height) in different
     // constraints
     static final int COUNT_SIZES = 4;
@@ -460,30 +464,9 @@ public class InvariantDeviceProfile {
     }
     private static ArrayList<DisplayOption> getPredefinedDeviceProfiles(Context context,
                                                                         String gridName, @DeviceType int deviceType, boolean allowDisabledGrid) {
-        ArrayList<DisplayOption> profiles = new ArrayList<>();
-        try (XmlResourceParser parser = context.getResources().getXml(R.xml.device_profiles)) {
-            final int depth = parser.getDepth();
-            int type;
-            while (((type = parser.next()) != XmlPullParser.END_TAG ||
-                    parser.getDepth() > depth) && type != XmlPullParser.END_DOCUMENT) {
-                if ((type == XmlPullParser.START_TAG)
-                        && GridOption.TAG_NAME.equals(parser.getName())) {
-                    GridOption gridOption = new GridOption(context, Xml.asAttributeSet(parser),
-                            deviceType);
-                    if (gridOption.isEnabled || allowDisabledGrid) {
-                        final int displayDepth = parser.getDepth();
-                        while (((type = parser.next()) != XmlPullParser.END_TAG
-                                || parser.getDepth() > displayDepth)
-                                && type != XmlPullParser.END_DOCUMENT) {
-                            if ((type == XmlPullParser.START_TAG) && "display-option".equals(
-                                    parser.getName())) {
-                                profiles.add(new DisplayOption(gridOption, context,
-                                        Xml.asAttributeSet(parser)));
-                            }
-                        }
-                    }
-                }
-            }
+        List<DisplayOption> profiles;
+        try {
+            profiles = getParsedGridOptions(context, deviceType).displayOptions;
         } catch (IOException | XmlPullParserException e) {
             throw new RuntimeException(e);
         }
@@ -499,7 +482,7 @@ public class InvariantDeviceProfile {
         if (filteredProfiles.isEmpty()) {
             // No grid found, use the default options
             for (DisplayOption option : profiles) {
-                if (option.canBeDefault) {
+                if (option.canBeDefault && (option.grid.isEnabled || allowDisabledGrid)) {
                     filteredProfiles.add(option);
                 }
             }
@@ -517,26 +500,83 @@ public class InvariantDeviceProfile {
         List<GridOption> result = new ArrayList<>();
         Info defaultInfo = DisplayController.INSTANCE.get(context).getInfo();
         @DeviceType int deviceType = getDeviceType(defaultInfo);
+        try {
+            for (GridOption option : getParsedGridOptions(context, deviceType).gridOptions) {
+                if (option.isEnabled) {
+                    result.add(option);
+                }
+            }
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(TAG, "Error parsing device profile", e);
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    /**
+     * Returns all the grid and display options defined in {@link R.xml#device_profiles}, including
+     * the disabled ones. The file only changes with the density, so it is parsed once per device
+     * type and density instead of every time the grid is initialized.
+     */
+    private static ParsedGridOptions getParsedGridOptions(Context context,
+            @DeviceType int deviceType) throws IOException, XmlPullParserException {
+        int densityDpi = context.getResources().getConfiguration().densityDpi;
+        synchronized (sParsedGridOptions) {
+            for (ParsedGridOptions parsed : sParsedGridOptions) {
+                if (parsed.deviceType == deviceType && parsed.densityDpi == densityDpi) {
+                    return parsed;
+                }
+            }
+        }
+        ParsedGridOptions parsed = new ParsedGridOptions(deviceType, densityDpi);
         try (XmlResourceParser parser = context.getResources().getXml(R.xml.device_profiles)) {
             final int depth = parser.getDepth();
             int type;
-            while (((type = parser.next()) != XmlPullParser.END_TAG
-                    || parser.getDepth() > depth) && type != XmlPullParser.END_DOCUMENT) {
+            while (((type = parser.next()) != XmlPullParser.END_TAG ||
+                    parser.getDepth() > depth) && type != XmlPullParser.END_DOCUMENT) {
                 if ((type == XmlPullParser.START_TAG)
                         && GridOption.TAG_NAME.equals(parser.getName())) {
-                    GridOption option =
-                            new GridOption(context, Xml.asAttributeSet(parser), deviceType);
-                    if (option.isEnabled) {
-                        result.add(option);
+                    GridOption gridOption = new GridOption(context, Xml.asAttributeSet(parser),
+                            deviceType);
+                    parsed.gridOptions.add(gridOption);
+                    final int displayDepth = parser.getDepth();
+                    while (((type = parser.next()) != XmlPullParser.END_TAG
+                            || parser.getDepth() > displayDepth)
+                            && type != XmlPullParser.END_DOCUMENT) {
+                        if ((type == XmlPullParser.START_TAG) && "display-option".equals(
+                                parser.getName())) {
+                            parsed.displayOptions.add(new DisplayOption(gridOption, context,
+                                    Xml.asAttributeSet(parser)));
+                        }
                     }
                 }
             }
-        } catch (IOException | XmlPullParserException e) {
-            Log.e(TAG, "Error parsing device profile", e);
-            return Collections.emptyList();
         }
-        return result;
+        synchronized (sParsedGridOptions) {
+            if (sParsedGridOptions.size() >= MAX_PARSED_GRID_OPTIONS) {
+                sParsedGridOptions.remove(0);
+            }
+            sParsedGridOptions.add(parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Grid and display options parsed from {@link R.xml#device_profiles}. The display options are
+     * shared, so they must be copied before being modified.
+     */
+    private static class ParsedGridOptions {
+        final @DeviceType int deviceType;
+        final int densityDpi;
+        final List<GridOption> gridOptions = new ArrayList<>();
+        final List<DisplayOption> displayOptions = new ArrayList<>();
+
+        ParsedGridOptions(@DeviceType int deviceType, int densityDpi) {
+            this.deviceType = deviceType;
+            this.densityDpi = densityDpi;
+        }
     }
+
     private int getLauncherIconDensity(int requiredSize) {
         // Densities typically defined by an app.
         int[] densityBuckets = new int[]{
@@ -620,7 +660,8 @@ public class InvariantDeviceProfile {
         GridOption closestOption = closestPoint.grid;
         float weights = 0;
         if (dist(width, height, closestPoint.minWidthDps, closestPoint.minHeightDps) == 0) {
-            return closestPoint;
+            // The parsed options are shared, return a copy as the result gets modified
+            return new DisplayOption(closestOption).add(closestPoint);
         }
         DisplayOption out = new DisplayOption(closestOption);
         for (int i = 0; i < points.size() && i < KNEARESTNEIGHBOR; ++i) {
@@ -48,6 +48,8 @@ import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCH
 import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_ONRESUME;
 import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_ONSTOP;
 import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_WIDGET_RECONFIGURED;
+import static com.android.launcher3.logging.StatsLogManager.LauncherLatencyEvent.LAUNCHER_LATENCY_ALLAPPS_OPEN;
+import static com.android.launcher3.logging.StatsLogManager.LauncherLatencyEvent.LAUNCHER_LATENCY_APP_LAUNCH;
 import static com.android.launcher3.model.ItemInstallQueue.FLAG_ACTIVITY_PAUSED;
 import static com.android.launcher3.model.ItemInstallQueue.FLAG_DRAG_AND_DROP;
 import static com.android.launcher3.popup.SystemShortcut.APP_INFO;
@@ -149,6 +151,7 @@ import com.android.launcher3.logger.LauncherAtom.WorkspaceContainer;
 import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.logging.InstanceId;
 import com.android.launcher3.logging.InstanceIdSequence;
+import com.android.launcher3.logging.LocalMetrics;
 import com.android.launcher3.logging.StatsLogManager;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.ItemInstallQueue;
@@ -183,6 +186,7 @@ import com.android.launcher3.util.ActivityTracker;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.IntSet;
+import com.android.launcher3.util.ItemViewIndex;
 import com.android.launcher3.util.OnboardingPrefs;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
@@ -195,6 +199,7 @@ import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.TouchController;
 import com.android.launcher3.util.TraceHelper;
 import com.android.launcher3.util.UiThreadHelper;
+import com.android.launcher3.util.ViewCapture;
 import com.android.launcher3.util.ViewOnDrawExecutor;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.views.FloatingIconView;
@@ -223,12 +228,14 @@ import com.saggitt.omega.util.Config;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -298,6 +305,9 @@ public class Launcher extends StatefulActivity<LauncherState>
 
     private static final int THEME_CROSS_FADE_ANIMATION_DURATION = 375;
 
+    // Launches which do not pause launcher within this time are not recorded as app launches
+    private static final long APP_LAUNCH_TIMEOUT_MS = 5000;
+
     private static final String DISPLAY_WORKSPACE_TRACE_METHOD_NAME = "DisplayWorkspaceFirstFrame";
     private static final String DISPLAY_ALL_APPS_TRACE_METHOD_NAME = "DisplayAllApps";
     public static final int DISPLAY_WORKSPACE_TRACE_COOKIE = 0;
@@ -310,6 +320,7 @@ public class Launcher extends StatefulActivity<LauncherState>
     @Thunk
     DragLayer mDragLayer;
     private DragController mDragController;
+    private ViewCapture mViewCapture;
 
     private WidgetManagerHelper mAppWidgetManager;
     private LauncherWidgetHolder mAppWidgetHolder;
@@ -349,6 +360,7 @@ public class Launcher extends StatefulActivity<LauncherState>
     private LauncherAccessibilityDelegate mAccessibilityDelegate;
 
     private PopupDataProvider mPopupDataProvider;
+    private final ItemViewIndex mItemViewIndex = new ItemViewIndex();
 
     private IntSet mSynchronouslyBoundPages = new IntSet();
     @NonNull
@@ -388,6 +400,9 @@ public class Launcher extends StatefulActivity<LauncherState>
     // User actions within AllApps state are logged with this InstanceId, to recreate AllApps
     // session on the server side.
     protected InstanceId mAllAppsSessionLogId;
+    // Uptime at which the pending all apps transition or app launch started, 0 if there is none
+    private long mAllAppsOpenStartTime;
+    private long mAppLaunchStartTime;
     private LauncherState mPrevLauncherState;
 
     private StringCache mStringCache;
@@ -715,6 +730,11 @@ public class Launcher extends StatefulActivity<LauncherState>
         return mPopupDataProvider;
     }
 
+    @Override
+    public ItemViewIndex getItemViewIndex() {
+        return mItemViewIndex;
+    }
+
     @Override
     public DotInfo getDotInfoForItem(ItemInfo info) {
         return mPopupDataProvider.getDotInfoForItem(info);
@@ -1114,6 +1134,9 @@ public class Launcher extends StatefulActivity<LauncherState>
         mWorkspace.getPageIndicator().setShouldAutoHide(!state.hasFlag(FLAG_MULTI_PAGE));
 
         mPrevLauncherState = mStateManager.getCurrentStableState();
+        if (mPrevLauncherState != state && ALL_APPS.equals(state)) {
+            mAllAppsOpenStartTime = SystemClock.uptimeMillis();
+        }
         if (mPrevLauncherState != state && ALL_APPS.equals(state)
                 // Making sure mAllAppsSessionLogId is null to avoid double logging.
                 && mAllAppsSessionLogId == null) {
@@ -1160,6 +1183,15 @@ public class Launcher extends StatefulActivity<LauncherState>
             getRotationHelper().setCurrentStateRequest(REQUEST_NONE);
         }
 
+        if (mAllAppsOpenStartTime != 0) {
+            if (ALL_APPS.equals(state)) {
+                getStatsLogManager().latencyLogger()
+                        .withLatency(SystemClock.uptimeMillis() - mAllAppsOpenStartTime)
+                        .log(LAUNCHER_LATENCY_ALLAPPS_OPEN);
+            }
+            mAllAppsOpenStartTime = 0;
+        }
+
         if (ALL_APPS.equals(mPrevLauncherState) && !ALL_APPS.equals(state)
                 // Making sure mAllAppsSessionLogId is not null to avoid double logging.
                 && mAllAppsSessionLogId != null) {
@@ -1199,6 +1231,16 @@ public class Launcher extends StatefulActivity<LauncherState>
         ItemInstallQueue.INSTANCE.get(this).pauseModelPush(FLAG_ACTIVITY_PAUSED);
 
         super.onPause();
+        if (mAppLaunchStartTime != 0) {
+            long latency = SystemClock.uptimeMillis() - mAppLaunchStartTime;
+            // Launcher was paused by something else if the app did not start in time
+            if (latency < APP_LAUNCH_TIMEOUT_MS) {
+                getStatsLogManager().latencyLogger()
+                        .withLatency(latency)
+                        .log(LAUNCHER_LATENCY_APP_LAUNCH);
+            }
+            mAppLaunchStartTime = 0;
+        }
         mDragController.cancelDrag();
         mLastTouchUpTime = -1;
         mDropTargetBar.animateToVisibility(false);
@@ -1282,6 +1324,11 @@ public class Launcher extends StatefulActivity<LauncherState>
         // Setup the drag controller (drop targets have to be added in reverse order in priority)
         mDropTargetBar.setup(mDragController);
         mAllAppsController.setupViews(mScrimView, mAppsView);
+
+        if (FeatureFlags.CONTINUOUS_VIEW_TREE_CAPTURE.get()) {
+            mViewCapture = new ViewCapture();
+            mViewCapture.attachTo(mDragLayer);
+        }
     }
 
     /**
@@ -1471,9 +1518,9 @@ public class Launcher extends StatefulActivity<LauncherState>
         }
     };
 
-    private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
+    private void updateNotificationDots(Set<PackageUserKey> updatedDots) {
         mWorkspace.updateNotificationDots(updatedDots);
-        mAppsView.getAppsStore().updateNotificationDots(updatedDots);
+        mAppsView.getAppsStore().updateNotificationDots(updatedDots::contains);
     }
 
     @Override
@@ -1726,6 +1773,9 @@ public class Launcher extends StatefulActivity<LauncherState>
 
         mOverlayManager.onActivityDestroyed(this);
         mUserChangedCallbackCloseable.close();
+        if (mViewCapture != null) {
+            mViewCapture.detach();
+        }
     }
 
     public LauncherAccessibilityDelegate getAccessibilityDelegate() {
@@ -2123,7 +2173,11 @@ public class Launcher extends StatefulActivity<LauncherState>
             return true;
         }
 
+        long launchStartTime = SystemClock.uptimeMillis();
         boolean success = super.startActivitySafely(v, intent, item);
+        if (success) {
+            mAppLaunchStartTime = launchStartTime;
+        }
         if (success && v instanceof BubbleTextView) {
             // This is set to the view that launched the activity that navigated the user away
             // from launcher. Since there is no callback for when the activity has finished
@@ -3001,7 +3055,7 @@ public class Launcher extends StatefulActivity<LauncherState>
     }
 
     /**
-     * $ adb shell dumpsys activity com.android.launcher3.Launcher [--all]
+     * $ adb shell dumpsys activity com.android.launcher3.Launcher [--all] [--view-capture]
      */
     @Override
     public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
@@ -3045,6 +3099,10 @@ public class Launcher extends StatefulActivity<LauncherState>
         mStateManager.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
         mDeviceProfile.dump(prefix, writer);
+        LocalMetrics.INSTANCE.dump(prefix, writer);
+        if (mViewCapture != null) {
+            mViewCapture.dump(prefix, writer, Arrays.asList(args).contains("--view-capture"));
+        }
 
         try {
             FileLog.flushAll(writer);
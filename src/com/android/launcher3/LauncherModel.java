@@ -89,6 +89,8 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     private static final boolean DEBUG_RECEIVER = false;
 
     static final String TAG = "Launcher.Model";
+    private static final FileLog.LogEvent LOG_PACKAGES_REMOVED =
+            FileLog.registerEvent(TAG, "package removed received %s");
 
     @NonNull
     private final LauncherAppState mApp;
@@ -186,7 +188,7 @@ public class LauncherModel extends LauncherApps.Callback implements InstallSessi
     public void onPackagesRemoved(
             @NonNull final UserHandle user, @NonNull final String... packages) {
         int op = PackageUpdatedTask.OP_REMOVE;
-        FileLog.d(TAG, "package removed received " + TextUtils.join(",", packages));
+        FileLog.d(LOG_PACKAGES_REMOVED, TextUtils.join(",", packages));
         enqueueModelUpdateTask(new PackageUpdatedTask(op, user, packages));
     }
 
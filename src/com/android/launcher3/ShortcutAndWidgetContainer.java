@@ -31,10 +31,13 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.CellLayout.ContainerType;
 import com.android.launcher3.celllayout.CellLayoutLayoutParams;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.util.ItemViewIndex;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.widget.NavigableAppWidgetHostView;
 
@@ -103,6 +106,55 @@ public class ShortcutAndWidgetContainer extends ViewGroup implements FolderIcon.
         return super.addViewInLayout(child, -1, layoutParams, true);
     }
 
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        ItemViewIndex index = getItemViewIndex();
+        if (index != null && isAttachedToWindow()) {
+            index.add(child);
+        }
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        ItemViewIndex index = getItemViewIndex();
+        if (index != null) {
+            index.remove(child);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        ItemViewIndex index = getItemViewIndex();
+        if (index != null) {
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                index.add(getChildAt(i));
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        ItemViewIndex index = getItemViewIndex();
+        if (index != null) {
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                index.remove(getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the index to keep the items of this container in, or null if they are not indexed.
+     * Only the workspace and hotseat are indexed, folder contents are indexed through their icon.
+     */
+    @Nullable
+    private ItemViewIndex getItemViewIndex() {
+        return mContainerType == FOLDER ? null : mActivity.getItemViewIndex();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int count = getChildCount();
@@ -104,6 +104,7 @@ import com.android.launcher3.util.Executors;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.IntSet;
 import com.android.launcher3.util.IntSparseArrayMap;
+import com.android.launcher3.util.ItemViewIndex;
 import com.android.launcher3.util.LauncherBindableItemsContainer;
 import com.android.launcher3.util.OverlayEdgeEffect;
 import com.android.launcher3.util.PackageUserKey;
@@ -126,8 +127,11 @@ import com.saggitt.omega.NeoLauncher;
 import com.saggitt.omega.views.OmegaBackgroundView;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -3298,6 +3302,43 @@ public class Workspace<T extends View & PageIndicator> extends PagedView<T>
         }
     }
 
+    @Override
+    public void mapOverItems(Collection<? extends ItemInfo> items, ItemOperator op) {
+        Set<PackageUserKey> packages = new HashSet<>();
+        for (ItemInfo info : items) {
+            PackageUserKey key = PackageUserKey.fromItemInfo(info);
+            if (key == null) {
+                // Items without a target are not indexed
+                mapOverItems(op);
+                return;
+            }
+            packages.add(key);
+        }
+        mapOverPackageItems(packages, op);
+    }
+
+    /**
+     * Perform {@param op} over the items of {@param packages} and the folders containing them,
+     * without going through the other items.
+     */
+    private void mapOverPackageItems(Set<PackageUserKey> packages, ItemOperator op) {
+        ItemViewIndex index = mLauncher.getItemViewIndex();
+        Set<FolderIcon> folderIcons = new HashSet<>();
+        for (PackageUserKey key : packages) {
+            for (View view : index.getViews(key)) {
+                if (op.evaluate((ItemInfo) view.getTag(), view)) {
+                    return;
+                }
+            }
+            folderIcons.addAll(index.getFolderIcons(key));
+        }
+        for (FolderIcon folderIcon : folderIcons) {
+            if (op.evaluate((ItemInfo) folderIcon.getTag(), folderIcon)) {
+                return;
+            }
+        }
+    }
+
     /**
      * Perform {param operator} over all the items in a given {param layout}.
      * @return The first item that satisfies the operator or null.
@@ -3319,10 +3360,10 @@ public class Workspace<T extends View & PageIndicator> extends PagedView<T>
         return null;
     }
 
-    public void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
+    public void updateNotificationDots(Set<PackageUserKey> updatedDots) {
         final PackageUserKey packageUserKey = new PackageUserKey(null, null);
         Predicate<ItemInfo> matcher = info -> !packageUserKey.updateFromItemInfo(info)
-                || updatedDots.test(packageUserKey);
+                || updatedDots.contains(packageUserKey);
 
         ItemOperator op = (info, v) -> {
             if (info instanceof WorkspaceItemInfo && v instanceof BubbleTextView) {
@@ -3344,7 +3385,7 @@ public class Workspace<T extends View & PageIndicator> extends PagedView<T>
             return false;
         };
 
-        mapOverItems(op);
+        mapOverPackageItems(updatedDots, op);
         Folder folder = Folder.getOpen(mLauncher);
         if (folder != null) {
             folder.iterateOverItems(op);
@@ -15,9 +15,14 @@
  */
 package com.android.launcher3.allapps;
 
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import android.content.Context;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.recyclerview.widget.DiffUtil;
 
 import com.android.launcher3.BaseDraggingActivity;
@@ -43,6 +48,7 @@ import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -92,6 +98,12 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
     private final int mNumAppsPerRowAllApps;
     private int mNumAppRowsInAdapter;
     private Predicate<ItemInfo> mItemFilter;
+    // Identifies the latest apps update, used to discard stale background computations
+    private volatile int mAppsUpdateId;
+    @Nullable
+    private Future<?> mPendingAppsUpdate;
+    // Incremented every time the adapter items are replaced, never decreases
+    private int mAdapterItemsGeneration;
 
     private final NeoPrefs prefs;
     private final BaseDraggingActivity mLauncher;
@@ -203,32 +215,97 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
     }
 
     /**
-     * Updates internals when the set of apps are updated.
+     * Updates internals when the set of apps are updated. Sorting, building the adapter items and
+     * diffing happen on a background thread and only the finished list is published to the
+     * adapter on the main thread. Any computation still pending when a newer update arrives is
+     * discarded. The first update is applied synchronously so that the drawer is never shown
+     * empty.
      */
     @Override
     public void onAppsUpdated() {
         if (mAllAppsStore == null) {
             return;
         }
-        // Sort the list of apps
-        mApps.clear();
-
-        // Sort the list of apps
-        List<AppInfo> unsortedApps = Arrays.asList(mAllAppsStore.getApps());
-        OmegaUtilsKt.sortApps(unsortedApps, mLauncher, prefs.getDrawerSortMode().getValue());
-        AppInfo[] sortedApps = unsortedApps.toArray(AppInfo.EMPTY_ARRAY);
-
-        Stream<AppInfo> appSteam = Stream.of(sortedApps);
-        if (!hasSearchResults() && mItemFilter != null) {
-            appSteam = appSteam.filter(mItemFilter);
+        final int updateId = ++mAppsUpdateId;
+        if (mPendingAppsUpdate != null) {
+            mPendingAppsUpdate.cancel(false);
+            mPendingAppsUpdate = null;
         }
 
-        //appSteam = appSteam.sorted(mAppNameComparator);
-
+        // Copy the apps as they are sorted in place on the background thread
+        final AppInfo[] apps = mAllAppsStore.getApps().clone();
+        final int sortMode = prefs.getDrawerSortMode().getValue();
+        final Predicate<ItemInfo> itemFilter = hasSearchResults() ? null : mItemFilter;
         // As a special case for some languages (currently only Simplified Chinese), we may need to
         // coalesce sections
         Locale curLocale = mActivityContext.getResources().getConfiguration().locale;
-        boolean localeRequiresSectionSorting = curLocale.equals(Locale.SIMPLIFIED_CHINESE);
+        final boolean localeRequiresSectionSorting = curLocale.equals(Locale.SIMPLIFIED_CHINESE);
+
+        if (mAdapterItems.isEmpty()) {
+            mApps.clear();
+            mApps.addAll(sortApps(apps, sortMode, itemFilter, localeRequiresSectionSorting));
+            if (mSearchResults.isEmpty()) {
+                updateAdapterItems();
+            }
+            return;
+        }
+
+        // Everything the adapter items depend on besides the apps is read on the main thread
+        final AdapterItemsInput input = hasSearchResults() ? null : createAdapterItemsInput();
+        final List<AdapterItem> oldItems = new ArrayList<>(mAdapterItems);
+        final int itemsGeneration = mAdapterItemsGeneration;
+        mPendingAppsUpdate = UI_HELPER_EXECUTOR.submit(() -> {
+            if (updateId != mAppsUpdateId) {
+                return;
+            }
+            List<AppInfo> sortedApps =
+                    sortApps(apps, sortMode, itemFilter, localeRequiresSectionSorting);
+            AdapterItemsResult result = null;
+            DiffUtil.DiffResult diff = null;
+            if (input != null) {
+                result = buildAdapterItems(input, sortedApps);
+                if (result.notifyAdapter) {
+                    diff = DiffUtil.calculateDiff(
+                            new MyDiffCallback(oldItems, result.items), false);
+                }
+            }
+            final AdapterItemsResult finalResult = result;
+            final DiffUtil.DiffResult finalDiff = diff;
+            MAIN_EXECUTOR.execute(() -> {
+                if (updateId != mAppsUpdateId) {
+                    return;
+                }
+                mPendingAppsUpdate = null;
+                mApps.clear();
+                mApps.addAll(sortedApps);
+                if (hasSearchResults()) {
+                    // The items are rebuilt from mApps when the search is cleared
+                    return;
+                }
+                if (finalResult == null || itemsGeneration != mAdapterItemsGeneration) {
+                    // The items were rebuilt in the meantime, the diff no longer applies
+                    updateAdapterItems();
+                    return;
+                }
+                applyAdapterItems(finalResult);
+                if (mAdapter != null && finalDiff != null) {
+                    finalDiff.dispatchUpdatesTo(mAdapter);
+                }
+            });
+        });
+    }
+
+    @WorkerThread
+    private List<AppInfo> sortApps(AppInfo[] apps, int sortMode,
+            @Nullable Predicate<ItemInfo> itemFilter, boolean localeRequiresSectionSorting) {
+        List<AppInfo> unsortedApps = Arrays.asList(apps);
+        OmegaUtilsKt.sortApps(unsortedApps, mLauncher, sortMode);
+
+        Stream<AppInfo> appSteam = unsortedApps.stream();
+        if (itemFilter != null) {
+            appSteam = appSteam.filter(itemFilter);
+        }
+
         if (localeRequiresSectionSorting) {
             // Compute the section headers. We use a TreeMap with the section name comparator to
             // ensure that the sections are ordered when we iterate over it later
@@ -240,11 +317,7 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
                     .stream()
                     .flatMap(ArrayList::stream);
         }
-        appSteam.forEachOrdered(mApps::add);
-        // Recompose the set of adapter items from the current set of apps
-        if (mSearchResults.isEmpty()) {
-            updateAdapterItems();
-        }
+        return appSteam.collect(Collectors.toList());
     }
 
     /**
@@ -253,53 +326,83 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
      */
     public void updateAdapterItems() {
         List<AdapterItem> oldItems = new ArrayList<>(mAdapterItems);
-        // Prepare to update the list of sections, filtered apps, etc.
-        mFastScrollerSections.clear();
-        mAdapterItems.clear();
-        mAccessibilityResultsCount = 0;
-        // Recreate the filtered and sectioned apps (for convenience for the grid layout) from the
-        // ordered set of sections
+        AdapterItemsResult result;
         if (hasSearchResults()) {
-            mAdapterItems.addAll(mSearchResults);
+            result = new AdapterItemsResult();
+            result.items.addAll(mSearchResults);
+            computeCountsAndRows(result);
         } else {
-            int position = 0;
-            if (mWorkProviderManager != null) {
-                position += mWorkProviderManager.addWorkItems(mAdapterItems);
-                if (!mWorkProviderManager.shouldShowWorkApps()) {
-                    return;
-                }
+            result = buildAdapterItems(createAdapterItemsInput(), mApps);
+        }
+        applyAdapterItems(result);
+        if (mAdapter != null && result.notifyAdapter) {
+            DiffUtil.calculateDiff(new MyDiffCallback(oldItems, mAdapterItems), false)
+                    .dispatchUpdatesTo(mAdapter);
+        }
+    }
+
+    private AdapterItemsInput createAdapterItemsInput() {
+        AdapterItemsInput input = new AdapterItemsInput();
+        if (mWorkProviderManager != null) {
+            mWorkProviderManager.addWorkItems(input.workItems);
+            input.showApps = mWorkProviderManager.shouldShowWorkApps();
+        }
+        if (input.showApps && mAllAppsStore != null) {
+            for (DrawerFolderInfo info : getFolderInfos()) {
+                info.setAppsStore(mAllAppsStore);
+                input.folders.add(info);
             }
-            String lastSectionName = null;
-
-            if (mAllAppsStore != null) {
-                for (DrawerFolderInfo info : getFolderInfos()) {
-                    // Create an folder item
-                    mAdapterItems.add(AdapterItem.asFolder(info));
-                    String sectionName = "#";
-
-                    // Create a new section if the section names do not match
-                    if (!sectionName.equals(lastSectionName)) {
-                        lastSectionName = sectionName;
-                        mFastScrollerSections.add(new FastScrollSectionInfo(sectionName, position));
-                    }
+        }
+        return input;
+    }
 
-                    info.setAppsStore(mAllAppsStore);
-                    position++;
-                }
+    /**
+     * Recreates the filtered and sectioned apps (for convenience for the grid layout) from the
+     * ordered set of sections. Only reads its arguments, so it can run on any thread.
+     */
+    @AnyThread
+    private AdapterItemsResult buildAdapterItems(AdapterItemsInput input, List<AppInfo> apps) {
+        AdapterItemsResult result = new AdapterItemsResult();
+        ArrayList<AdapterItem> adapterItems = result.items;
+        adapterItems.addAll(input.workItems);
+        int position = adapterItems.size();
+        if (!input.showApps) {
+            result.notifyAdapter = false;
+            return result;
+        }
+        String lastSectionName = null;
+
+        for (DrawerFolderInfo info : input.folders) {
+            // Create an folder item
+            adapterItems.add(AdapterItem.asFolder(info));
+            String sectionName = "#";
+
+            // Create a new section if the section names do not match
+            if (!sectionName.equals(lastSectionName)) {
+                lastSectionName = sectionName;
+                result.sections.add(new FastScrollSectionInfo(sectionName, position));
             }
+            position++;
+        }
 
-            for (AppInfo info : mApps) {
-                mAdapterItems.add(AdapterItem.asApp(info));
-                String sectionName = info.sectionName;
-                // Create a new section if the section names do not match
-                if (!sectionName.equals(lastSectionName)) {
-                    lastSectionName = sectionName;
-                    mFastScrollerSections.add(new FastScrollSectionInfo(sectionName, position));
-                }
-                position++;
+        for (AppInfo info : apps) {
+            adapterItems.add(AdapterItem.asApp(info));
+            String sectionName = info.sectionName;
+            // Create a new section if the section names do not match
+            if (!sectionName.equals(lastSectionName)) {
+                lastSectionName = sectionName;
+                result.sections.add(new FastScrollSectionInfo(sectionName, position));
             }
+            position++;
         }
-        mAccessibilityResultsCount = (int) mAdapterItems.stream()
+        computeCountsAndRows(result);
+        return result;
+    }
+
+    @AnyThread
+    private void computeCountsAndRows(AdapterItemsResult result) {
+        ArrayList<AdapterItem> adapterItems = result.items;
+        result.accessibilityResultsCount = (int) adapterItems.stream()
                 .filter(AdapterItem::isCountedForAccessibility).count();
         if (mNumAppsPerRowAllApps != 0) {
             // Update the number of rows in the adapter after we do all the merging (otherwise, we
@@ -307,7 +410,7 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
             int numAppsInSection = 0;
             int numAppsInRow = 0;
             int rowIndex = -1;
-            for (AdapterItem item : mAdapterItems) {
+            for (AdapterItem item : adapterItems) {
                 item.rowIndex = 0;
                 if (BaseAllAppsAdapter.isDividerViewType(item.viewType)) {
                     numAppsInSection = 0;
@@ -322,12 +425,20 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
                     numAppsInRow++;
                 }
             }
-            mNumAppRowsInAdapter = rowIndex + 1;
+            result.numAppRows = rowIndex + 1;
         }
-        if (mAdapter != null) {
-            DiffUtil.calculateDiff(new MyDiffCallback(oldItems, mAdapterItems), false)
-                    .dispatchUpdatesTo(mAdapter);
+    }
+
+    private void applyAdapterItems(AdapterItemsResult result) {
+        mAdapterItems.clear();
+        mAdapterItems.addAll(result.items);
+        mFastScrollerSections.clear();
+        mFastScrollerSections.addAll(result.sections);
+        mAccessibilityResultsCount = result.accessibilityResultsCount;
+        if (result.numAppRows >= 0) {
+            mNumAppRowsInAdapter = result.numAppRows;
         }
+        mAdapterItemsGeneration++;
     }
 
     /**
@@ -355,6 +466,28 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
                 .getHiddenComponents();
     }
 
+    /**
+     * State besides the apps that the adapter items are built from, read on the main thread.
+     */
+    private static class AdapterItemsInput {
+        final ArrayList<AdapterItem> workItems = new ArrayList<>();
+        final ArrayList<DrawerFolderInfo> folders = new ArrayList<>();
+        boolean showApps = true;
+    }
+
+    /**
+     * Adapter items along with the fast scroller sections and counts derived from them, so that
+     * they can be published together.
+     */
+    private static class AdapterItemsResult {
+        final ArrayList<AdapterItem> items = new ArrayList<>();
+        final ArrayList<FastScrollSectionInfo> sections = new ArrayList<>();
+        int accessibilityResultsCount = 0;
+        // Negative when the number of rows should not change
+        int numAppRows = -1;
+        boolean notifyAdapter = true;
+    }
+
     private static class MyDiffCallback extends DiffUtil.Callback {
         private final List<AdapterItem> mOldList;
         private final List<AdapterItem> mNewList;
@@ -17,7 +17,9 @@ package com.android.launcher3.allapps.search;
 
 import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_ALLAPPS_FOCUSED_ITEM_SELECTED_WITH_IME;
 import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_ALLAPPS_QUICK_SEARCH_WITH_IME;
+import static com.android.launcher3.logging.StatsLogManager.LauncherLatencyEvent.LAUNCHER_LATENCY_ALLAPPS_SEARCH;
 
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
@@ -38,6 +40,8 @@ import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
 import com.android.launcher3.views.ActivityContext;
 
+import java.util.ArrayList;
+
 /**
  * An interface to a search box that AllApps can command.
  */
@@ -50,6 +54,8 @@ public class AllAppsSearchBarController
     protected ExtendedEditText mInput;
     protected String mQuery;
     private String[] mTextConversions;
+    // Uptime at which the current query was sent, 0 once its results are received
+    private long mSearchStartTime;
 
     protected SearchAlgorithm<AdapterItem> mSearchAlgorithm;
 
@@ -63,7 +69,7 @@ public class AllAppsSearchBarController
     public final void initialize(
             SearchAlgorithm<AdapterItem> searchAlgorithm, ExtendedEditText input,
             ActivityContext launcher, SearchCallback<AdapterItem> callback) {
-        mCallback = callback;
+        mCallback = new LatencyTrackingCallback(callback);
         mLauncher = launcher;
 
         mInput = input;
@@ -105,6 +111,7 @@ public class AllAppsSearchBarController
             mCallback.clearSearchResult();
         } else {
             mSearchAlgorithm.cancel(false);
+            mSearchStartTime = SystemClock.uptimeMillis();
             mSearchAlgorithm.doSearch(mQuery, mTextConversions, mCallback);
         }
     }
@@ -172,4 +179,34 @@ public class AllAppsSearchBarController
     public boolean isSearchFieldFocused() {
         return mInput.isFocused();
     }
+
+    /**
+     * Records the time between a query change and its results before forwarding them.
+     */
+    private class LatencyTrackingCallback implements SearchCallback<AdapterItem> {
+
+        private final SearchCallback<AdapterItem> mDelegate;
+
+        LatencyTrackingCallback(SearchCallback<AdapterItem> delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void onSearchResult(String query, ArrayList<AdapterItem> items) {
+            if (mSearchStartTime != 0 && TextUtils.equals(query, mQuery)) {
+                mLauncher.getStatsLogManager().latencyLogger()
+                        .withLatency(SystemClock.uptimeMillis() - mSearchStartTime)
+                        .withQueryLength(query.length())
+                        .log(LAUNCHER_LATENCY_ALLAPPS_SEARCH);
+                mSearchStartTime = 0;
+            }
+            mDelegate.onSearchResult(query, items);
+        }
+
+        @Override
+        public void clearSearchResult() {
+            mSearchStartTime = 0;
+            mDelegate.clearSearchResult();
+        }
+    }
 }
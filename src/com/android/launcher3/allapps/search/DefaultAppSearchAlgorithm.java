@@ -21,7 +21,6 @@ import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import android.content.Context;
 import android.os.Handler;
 
-import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 
 import com.android.launcher3.LauncherAppState;
@@ -32,7 +31,6 @@ import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
-import com.android.launcher3.search.StringMatcherUtility;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -71,7 +69,7 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
             @Override
             public void execute(@NonNull final LauncherAppState app,
                                 @NonNull final BgDataModel dataModel, @NonNull final AllAppsList apps) {
-                ArrayList<AdapterItem> result = getTitleMatchResult(apps.data, query);
+                ArrayList<AdapterItem> result = getTitleMatchResult(apps, query);
                 if (mAddNoResultsMessage && result.isEmpty()) {
                     result.add(getEmptyMessageAdapterItem(query));
                 }
@@ -90,25 +88,15 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
     }
 
     /**
-     * Filters {@link AppInfo}s matching specified query
+     * Filters {@link AppInfo}s matching specified query using the search index of {@code apps}
      */
-    @AnyThread
-    public static ArrayList<AdapterItem> getTitleMatchResult(List<AppInfo> apps, String query) {
-        // Do an intersection of the words in the query and each title, and filter out all the
-        // apps that don't match all of the words in the query.
-        final String queryTextLower = query.toLowerCase();
+    public static ArrayList<AdapterItem> getTitleMatchResult(AllAppsList apps, String query) {
         final ArrayList<AdapterItem> result = new ArrayList<>();
-        StringMatcherUtility.StringMatcher matcher =
-                StringMatcherUtility.StringMatcher.getInstance();
-
-        int resultCount = 0;
-        int total = apps.size();
-        for (int i = 0; i < total && resultCount < MAX_RESULTS_COUNT; i++) {
-            AppInfo info = apps.get(i);
-            if (StringMatcherUtility.matches(queryTextLower, info.title.toString(), matcher)) {
-                result.add(AdapterItem.asApp(info));
-                resultCount++;
-            }
+        List<AppInfo> matches = apps.getSearchIndex().search(apps.data,
+                apps.getGeneration(), query);
+        int total = Math.min(matches.size(), MAX_RESULTS_COUNT);
+        for (int i = 0; i < total; i++) {
+            result.add(AdapterItem.asApp(matches.get(i)));
         }
         return result;
     }
@@ -15,24 +15,85 @@
  */
 package com.android.launcher3.celllayout;
 
+import android.util.LruCache;
 import android.view.View;
 
 import com.android.launcher3.CellLayout;
+import com.android.launcher3.ShortcutAndWidgetContainer;
+import com.android.launcher3.util.IntArray;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Contains the logic of a reorder.
  * <p>
  * The content of this class was extracted from {@link CellLayout} and should mimic the exact
  * same behaviour.
+ * <p>
+ * Solutions are cached by target cell, span and push direction for as long as the layout does not
+ * change, so that dragging back and forth over the same cells does not run the search again.
+ * The search for a solution which shrinks the dragged item stops once it exceeds a time budget,
+ * in which case the last solution found is used instead.
  */
 public class ReorderAlgorithm {
 
+    private static final long SOLVE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+    private static final int MAX_CACHED_SOLUTIONS = 32;
+    private static final int MAX_POOLED_CONFIGURATIONS = 4;
+
+    // Cached when there is no solution, as the cache does not support null values
+    private static final CellLayout.ItemConfiguration NO_SOLUTION =
+            new CellLayout.ItemConfiguration();
+
     CellLayout mCellLayout;
 
+    private final LruCache<SolutionKey, CellLayout.ItemConfiguration> mSolutions =
+            new LruCache<>(MAX_CACHED_SOLUTIONS);
+    private final ArrayList<CellLayout.ItemConfiguration> mConfigurationPool = new ArrayList<>();
+    private final ArrayList<View> mLayoutViews = new ArrayList<>();
+    private final IntArray mLayoutState = new IntArray();
+    private final IntArray mTmpLayoutState = new IntArray();
+    private final int[] mTmpTargetCell = new int[2];
+
+    private CellLayout.ItemConfiguration mLastSolution;
+    private long mDeadlineNanos = Long.MAX_VALUE;
+    private boolean mBudgetExceeded;
+
     public ReorderAlgorithm(CellLayout cellLayout) {
         mCellLayout = cellLayout;
     }
 
+    /**
+     * Drops the cached solutions, they are also dropped whenever the layout changes
+     */
+    public void invalidateSolutions() {
+        mSolutions.evictAll();
+        mConfigurationPool.clear();
+        mLastSolution = null;
+    }
+
+    /**
+     * Returns a configuration which is not referenced anymore, or a new one
+     */
+    protected CellLayout.ItemConfiguration obtainConfiguration() {
+        int size = mConfigurationPool.size();
+        if (size == 0) {
+            return new CellLayout.ItemConfiguration();
+        }
+        CellLayout.ItemConfiguration configuration = mConfigurationPool.remove(size - 1);
+        configuration.reset();
+        return configuration;
+    }
+
+    private void recycleConfiguration(CellLayout.ItemConfiguration configuration) {
+        if (configuration != null && configuration != NO_SOLUTION
+                && mConfigurationPool.size() < MAX_POOLED_CONFIGURATIONS
+                && !mConfigurationPool.contains(configuration)) {
+            mConfigurationPool.add(configuration);
+        }
+    }
+
     /**
      * This method differs from closestEmptySpaceReorder and dropInPlaceSolution because this method
      * will move items around and will change the shape of the item if possible to try to find a
@@ -77,6 +138,12 @@ public class ReorderAlgorithm {
                 dragView, solution);
 
         if (!success) {
+            if (System.nanoTime() > mDeadlineNanos) {
+                // Out of time, do not try the smaller spans
+                mBudgetExceeded = true;
+                solution.isSolution = false;
+                return solution;
+            }
             // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
             // x, then 1 in y etc.
             if (spanX > minSpanX && (minSpanY == spanY || decX)) {
@@ -114,7 +181,7 @@ public class ReorderAlgorithm {
                 result)) {
             result[0] = result[1] = -1;
         }
-        CellLayout.ItemConfiguration solution = new CellLayout.ItemConfiguration();
+        CellLayout.ItemConfiguration solution = obtainConfiguration();
         mCellLayout.copyCurrentStateToSolution(solution, false);
         solution.isSolution = result[0] != -1;
         if (!solution.isSolution) {
@@ -139,7 +206,7 @@ public class ReorderAlgorithm {
      */
     public CellLayout.ItemConfiguration closestEmptySpaceReorder(int pixelX, int pixelY,
                                                                  int minSpanX, int minSpanY, int spanX, int spanY) {
-        CellLayout.ItemConfiguration solution = new CellLayout.ItemConfiguration();
+        CellLayout.ItemConfiguration solution = obtainConfiguration();
         int[] result = new int[2];
         int[] resultSpan = new int[2];
         mCellLayout.findNearestVacantArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, result,
@@ -177,6 +244,41 @@ public class ReorderAlgorithm {
         mCellLayout.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragView,
                 mCellLayout.mDirectionVector);
 
+        if (updateLayoutState()) {
+            invalidateSolutions();
+        }
+        int[] targetCell = mCellLayout.findNearestAreaIgnoreOccupied(pixelX, pixelY, spanX,
+                spanY, mTmpTargetCell);
+        SolutionKey key = new SolutionKey(targetCell[0], targetCell[1], minSpanX, minSpanY,
+                spanX, spanY, mCellLayout.mDirectionVector, dragView);
+        CellLayout.ItemConfiguration cached = mSolutions.get(key);
+        if (cached != null) {
+            return cached == NO_SOLUTION ? null : cached;
+        }
+
+        CellLayout.ItemConfiguration solution;
+        mBudgetExceeded = false;
+        mDeadlineNanos = System.nanoTime() + SOLVE_BUDGET_NANOS;
+        try {
+            solution = solveReorder(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, dragView);
+        } finally {
+            mDeadlineNanos = Long.MAX_VALUE;
+        }
+
+        if (mBudgetExceeded) {
+            // The search was cut short, so the result is not cached and if nothing was found
+            // we keep the last solution, which is still valid since the layout did not change
+            return solution != null ? solution : mLastSolution;
+        }
+        mSolutions.put(key, solution == null ? NO_SOLUTION : solution);
+        if (solution != null) {
+            mLastSolution = solution;
+        }
+        return solution;
+    }
+
+    private CellLayout.ItemConfiguration solveReorder(int pixelX, int pixelY, int minSpanX,
+            int minSpanY, int spanX, int spanY, View dragView) {
         CellLayout.ItemConfiguration dropInPlaceSolution = dropInPlaceSolution(pixelX, pixelY,
                 spanX, spanY,
                 dragView);
@@ -184,7 +286,7 @@ public class ReorderAlgorithm {
         // Find a solution involving pushing / displacing any items in the way
         CellLayout.ItemConfiguration swapSolution = findReorderSolution(pixelX, pixelY, minSpanX,
                 minSpanY, spanX, spanY, mCellLayout.mDirectionVector, dragView, true,
-                new CellLayout.ItemConfiguration());
+                obtainConfiguration());
 
         // We attempt the approach which doesn't shuffle views at all
         CellLayout.ItemConfiguration closestSpaceSolution = closestEmptySpaceReorder(
@@ -192,13 +294,126 @@ public class ReorderAlgorithm {
 
         // If the reorder solution requires resizing (shrinking) the item being dropped, we instead
         // favor a solution in which the item is not resized, but
+        CellLayout.ItemConfiguration solution = null;
         if (swapSolution.isSolution && swapSolution.area() >= closestSpaceSolution.area()) {
-            return swapSolution;
+            solution = swapSolution;
         } else if (closestSpaceSolution.isSolution) {
-            return closestSpaceSolution;
+            solution = closestSpaceSolution;
         } else if (dropInPlaceSolution.isSolution) {
-            return dropInPlaceSolution;
+            solution = dropInPlaceSolution;
+        }
+
+        // The other candidates are not referenced anymore
+        if (solution != dropInPlaceSolution) {
+            recycleConfiguration(dropInPlaceSolution);
+        }
+        if (solution != swapSolution) {
+            recycleConfiguration(swapSolution);
+        }
+        if (solution != closestSpaceSolution) {
+            recycleConfiguration(closestSpaceSolution);
+        }
+        return solution;
+    }
+
+    /**
+     * Records the position of every view and the occupied cells of the layout, which is what the
+     * solutions depend on.
+     *
+     * @return true if the layout changed since the last call
+     */
+    private boolean updateLayoutState() {
+        ShortcutAndWidgetContainer container = mCellLayout.getShortcutsAndWidgets();
+        int childCount = container.getChildCount();
+        boolean changed = childCount != mLayoutViews.size();
+        for (int i = 0; i < childCount && !changed; i++) {
+            changed = container.getChildAt(i) != mLayoutViews.get(i);
+        }
+        if (changed) {
+            mLayoutViews.clear();
+            for (int i = 0; i < childCount; i++) {
+                mLayoutViews.add(container.getChildAt(i));
+            }
+        }
+
+        IntArray state = mTmpLayoutState;
+        state.clear();
+        state.add(mCellLayout.getCountX());
+        state.add(mCellLayout.getCountY());
+        for (int i = 0; i < childCount; i++) {
+            CellLayoutLayoutParams lp =
+                    (CellLayoutLayoutParams) container.getChildAt(i).getLayoutParams();
+            state.add(lp.getCellX());
+            state.add(lp.getCellY());
+            state.add(lp.cellHSpan);
+            state.add(lp.cellVSpan);
+            state.add(lp.canReorder ? 1 : 0);
+        }
+        boolean[][] cells = mCellLayout.getOccupied().cells;
+        for (boolean[] column : cells) {
+            int bits = 0;
+            for (int y = 0; y < column.length; y++) {
+                if (column[y]) {
+                    bits |= 1 << (y % Integer.SIZE);
+                }
+                if (y % Integer.SIZE == Integer.SIZE - 1 || y == column.length - 1) {
+                    state.add(bits);
+                    bits = 0;
+                }
+            }
+        }
+        if (!changed) {
+            changed = !state.equals(mLayoutState);
+        }
+        if (changed) {
+            mLayoutState.copyFrom(state);
+        }
+        return changed;
+    }
+
+    private static final class SolutionKey {
+
+        private final int mCellX;
+        private final int mCellY;
+        private final int mMinSpanX;
+        private final int mMinSpanY;
+        private final int mSpanX;
+        private final int mSpanY;
+        private final int mDirectionX;
+        private final int mDirectionY;
+        private final View mDragView;
+
+        SolutionKey(int cellX, int cellY, int minSpanX, int minSpanY, int spanX, int spanY,
+                int[] direction, View dragView) {
+            mCellX = cellX;
+            mCellY = cellY;
+            mMinSpanX = minSpanX;
+            mMinSpanY = minSpanY;
+            mSpanX = spanX;
+            mSpanY = spanY;
+            mDirectionX = direction[0];
+            mDirectionY = direction[1];
+            mDragView = dragView;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SolutionKey)) return false;
+            SolutionKey other = (SolutionKey) o;
+            return mCellX == other.mCellX && mCellY == other.mCellY
+                    && mMinSpanX == other.mMinSpanX && mMinSpanY == other.mMinSpanY
+                    && mSpanX == other.mSpanX && mSpanY == other.mSpanY
+                    && mDirectionX == other.mDirectionX && mDirectionY == other.mDirectionY
+                    && mDragView == other.mDragView;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 * mCellX + mCellY;
+            result = 31 * (31 * result + mMinSpanX) + mMinSpanY;
+            result = 31 * (31 * result + mSpanX) + mSpanY;
+            result = 31 * (31 * result + mDirectionX) + mDirectionY;
+            return 31 * result + System.identityHashCode(mDragView);
         }
-        return null;
     }
 }
@@ -168,6 +168,10 @@ public final class FeatureFlags {
     public static final BooleanFlag ENABLE_ENFORCED_ROUNDED_CORNERS = getReleaseFlag(270393258,
             "ENABLE_ENFORCED_ROUNDED_CORNERS", true, "Enforce rounded corners on all App Widgets");
 
+    public static final BooleanFlag CONTINUOUS_VIEW_TREE_CAPTURE = getDebugFlag(270395171,
+            "CONTINUOUS_VIEW_TREE_CAPTURE", false,
+            "Capture View tree every frame and include it in dumpsys");
+
     public static final BooleanFlag NOTIFY_CRASHES = getDebugFlag(
             270393108, "NOTIFY_CRASHES", true,
             "Sends a notification whenever launcher encounters an uncaught exception.");
@@ -253,6 +257,10 @@ public final class FeatureFlags {
             "LARGE_SCREEN_WIDGET_PICKER", false, "Enable new widget picker that takes "
                     + "advantage of large screen format");
 
+    public static final BooleanFlag ENABLE_MODEL_SNAPSHOT = getDebugFlag(270396471,
+            "ENABLE_MODEL_SNAPSHOT", false,
+            "Bind all apps from a snapshot of the last load while the model is loading");
+
     public static final BooleanFlag ENABLE_PREMIUM_HAPTICS_ALL_APPS = getDebugFlag(270396358,
             "ENABLE_PREMIUM_HAPTICS_ALL_APPS", false,
             "Enables haptics opening/closing All apps");
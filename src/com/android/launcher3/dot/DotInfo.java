@@ -17,6 +17,7 @@
 package com.android.launcher3.dot;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationKeyData;
@@ -35,7 +36,7 @@ public class DotInfo {
      * The keys of the notifications that this dot represents. These keys can later be
      * used to retrieve {@link NotificationInfo}'s.
      */
-    private final List<NotificationKeyData> mNotificationKeys = new ArrayList<>();
+    private List<NotificationKeyData> mNotificationKeys = new ArrayList<>();
 
     /**
      * The current sum of the counts in {@link #mNotificationKeys},
@@ -43,6 +44,14 @@ public class DotInfo {
      */
     private int mTotalCount;
 
+    /**
+     * The keys found by the current full refresh, which replace {@link #mNotificationKeys} when
+     * the refresh finishes. The two lists are swapped to avoid allocating on every refresh.
+     */
+    private List<NotificationKeyData> mRefreshedKeys = new ArrayList<>();
+    private int mRefreshedCount;
+    private boolean mRefreshing;
+
     /**
      * Returns whether the notification was added or its count changed.
      */
@@ -78,6 +87,63 @@ public class DotInfo {
         return removed;
     }
 
+    /**
+     * Starts collecting the notifications of a full refresh, see {@link #finishRefresh()}
+     */
+    public void startRefresh() {
+        mRefreshedKeys.clear();
+        mRefreshedCount = 0;
+        mRefreshing = true;
+    }
+
+    public boolean isRefreshing() {
+        return mRefreshing;
+    }
+
+    /**
+     * Returns the current key data of the notification with {@param notificationKey}, or null if
+     * the notification is not part of this dot.
+     */
+    @Nullable
+    public NotificationKeyData findNotificationKey(String notificationKey) {
+        // Notifications are usually refreshed in the same order, so check that position first
+        int hint = mRefreshedKeys.size();
+        if (hint < mNotificationKeys.size()
+                && mNotificationKeys.get(hint).notificationKey.equals(notificationKey)) {
+            return mNotificationKeys.get(hint);
+        }
+        for (int i = mNotificationKeys.size() - 1; i >= 0; i--) {
+            NotificationKeyData keyData = mNotificationKeys.get(i);
+            if (keyData.notificationKey.equals(notificationKey)) {
+                return keyData;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a notification found by the current full refresh
+     */
+    public void addRefreshedNotificationKey(NotificationKeyData notificationKey) {
+        mRefreshedKeys.add(notificationKey);
+        mRefreshedCount += notificationKey.count;
+    }
+
+    /**
+     * Replaces the notifications of this dot with the ones found by the refresh.
+     * @return whether the notification count changed.
+     */
+    public boolean finishRefresh() {
+        int oldCount = getNotificationCount();
+        List<NotificationKeyData> oldKeys = mNotificationKeys;
+        mNotificationKeys = mRefreshedKeys;
+        mRefreshedKeys = oldKeys;
+        mRefreshedKeys.clear();
+        mTotalCount = mRefreshedCount;
+        mRefreshing = false;
+        return oldCount != getNotificationCount();
+    }
+
     public List<NotificationKeyData> getNotificationKeys() {
         return mNotificationKeys;
     }
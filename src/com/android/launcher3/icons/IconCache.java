@@ -136,19 +136,21 @@ public class IconCache extends BaseIconCache {
     /**
      * Updates the entries related to the given package in memory and persistent DB.
      */
-    public synchronized void updateIconsForPkg(@NonNull final String packageName,
-                                               @NonNull final UserHandle user) {
-        removeIconsForPkg(packageName, user);
-        try {
-            PackageInfo info = mPackageManager.getPackageInfo(packageName,
-                    PackageManager.GET_UNINSTALLED_PACKAGES);
-            long userSerial = mUserManager.getSerialNumberForUser(user);
-            for (LauncherActivityInfo app : mLauncherApps.getActivityList(packageName, user)) {
-                addIconToDBAndMemCache(app, mLauncherActivityInfoCachingLogic, info, userSerial,
-                        false /*replace existing*/);
+    public void updateIconsForPkg(@NonNull final String packageName,
+                                  @NonNull final UserHandle user) {
+        synchronized (getLoadLock(packageName, user)) {
+            removeIconsForPkg(packageName, user);
+            try {
+                PackageInfo info = mPackageManager.getPackageInfo(packageName,
+                        PackageManager.GET_UNINSTALLED_PACKAGES);
+                long userSerial = mUserManager.getSerialNumberForUser(user);
+                for (LauncherActivityInfo app : mLauncherApps.getActivityList(packageName, user)) {
+                    addIconToDBAndMemCache(app, mLauncherActivityInfoCachingLogic, info,
+                            userSerial, false /*replace existing*/);
+                }
+            } catch (NameNotFoundException e) {
+                Log.d(TAG, "Package not found", e);
             }
-        } catch (NameNotFoundException e) {
-            Log.d(TAG, "Package not found", e);
         }
     }
 
@@ -201,7 +203,7 @@ public class IconCache extends BaseIconCache {
     /**
      * Updates {@param application} only if a valid entry is found.
      */
-    public synchronized void updateTitleAndIcon(AppInfo application) {
+    public void updateTitleAndIcon(AppInfo application) {
         CacheEntry entry = cacheLocked(application.componentName,
                 application.user, () -> null, mLauncherActivityInfoCachingLogic,
                 false, application.usingLowResIcon());
@@ -213,8 +215,8 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param info} with the icon and label for {@param activityInfo}
      */
-    public synchronized void getTitleAndIcon(ItemInfoWithIcon info,
-                                             LauncherActivityInfo activityInfo, boolean useLowResIcon) {
+    public void getTitleAndIcon(ItemInfoWithIcon info,
+                                LauncherActivityInfo activityInfo, boolean useLowResIcon) {
         // If we already have activity info, no need to use package icon
         getTitleAndIcon(info, () -> activityInfo, false, useLowResIcon);
     }
@@ -271,7 +273,7 @@ public class IconCache extends BaseIconCache {
      * Fill in {@param info} with the icon and label. If the
      * corresponding activity is not found, it reverts to the package icon.
      */
-    public synchronized void getTitleAndIcon(ItemInfoWithIcon info, boolean useLowResIcon) {
+    public void getTitleAndIcon(ItemInfoWithIcon info, boolean useLowResIcon) {
         // null info means not installed, but if we have a component from the intent then
         // we should still look in the cache for restored app icons.
         if (info.getTargetComponent() == null) {
@@ -285,7 +287,7 @@ public class IconCache extends BaseIconCache {
         }
     }
 
-    public synchronized String getTitleNoCache(ComponentWithLabel info) {
+    public String getTitleNoCache(ComponentWithLabel info) {
         CacheEntry entry = cacheLocked(info.getComponent(), info.getUser(), () -> info,
                 mComponentWithLabelCachingLogic, false /* usePackageIcon */,
                 true /* useLowResIcon */);
@@ -295,7 +297,7 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param mWorkspaceItemInfo} with the icon and label for {@param info}
      */
-    public synchronized void getTitleAndIcon(
+    public void getTitleAndIcon(
             @NonNull ItemInfoWithIcon infoInOut,
             @NonNull Supplier<LauncherActivityInfo> activityInfoProvider,
             boolean usePkgIcon, boolean useLowResIcon) {
@@ -336,7 +338,7 @@ public class IconCache extends BaseIconCache {
     /**
      * Load and fill icons requested in iconRequestInfos using a single bulk sql query.
      */
-    public synchronized <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
+    public <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
             List<IconRequestInfo<T>> iconRequestInfos) {
         Map<Pair<UserHandle, Boolean>, List<IconRequestInfo<T>>> iconLoadSubsectionsMap =
                 iconRequestInfos.stream()
@@ -472,7 +474,7 @@ public class IconCache extends BaseIconCache {
     /**
      * Fill in {@param infoInOut} with the corresponding icon and label.
      */
-    public synchronized void getTitleAndIconForApp(
+    public void getTitleAndIconForApp(
             @NonNull final PackageItemInfo infoInOut, final boolean useLowResIcon) {
         CacheEntry entry = getEntryForPackageLocked(
                 infoInOut.packageName, infoInOut.user, useLowResIcon);
@@ -486,25 +488,28 @@ public class IconCache extends BaseIconCache {
         infoInOut.title = mContext.getString(widgetSection.mSectionTitle);
         infoInOut.contentDescription = mPackageManager.getUserBadgedLabel(
                 infoInOut.title, infoInOut.user);
-        final BitmapInfo cachedBitmap = mWidgetCategoryBitmapInfos.get(infoInOut.widgetCategory);
-        if (cachedBitmap != null) {
-            infoInOut.bitmap = getBadgedIcon(cachedBitmap, infoInOut.user);
-            return;
-        }
+        synchronized (mWidgetCategoryBitmapInfos) {
+            final BitmapInfo cachedBitmap =
+                    mWidgetCategoryBitmapInfos.get(infoInOut.widgetCategory);
+            if (cachedBitmap != null) {
+                infoInOut.bitmap = getBadgedIcon(cachedBitmap, infoInOut.user);
+                return;
+            }
 
-        try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
-            final BitmapInfo tempBitmap = li.createBadgedIconBitmap(
-                    mContext.getDrawable(widgetSection.mSectionDrawable),
-                    new BaseIconFactory.IconOptions().setShrinkNonAdaptiveIcons(false));
-            mWidgetCategoryBitmapInfos.put(infoInOut.widgetCategory, tempBitmap);
-            infoInOut.bitmap = getBadgedIcon(tempBitmap, infoInOut.user);
-        } catch (Exception e) {
-            Log.e(TAG, "Error initializing bitmap for icons with widget category", e);
+            try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
+                final BitmapInfo tempBitmap = li.createBadgedIconBitmap(
+                        mContext.getDrawable(widgetSection.mSectionDrawable),
+                        new BaseIconFactory.IconOptions().setShrinkNonAdaptiveIcons(false));
+                mWidgetCategoryBitmapInfos.put(infoInOut.widgetCategory, tempBitmap);
+                infoInOut.bitmap = getBadgedIcon(tempBitmap, infoInOut.user);
+            } catch (Exception e) {
+                Log.e(TAG, "Error initializing bitmap for icons with widget category", e);
+            }
         }
 
     }
 
-    private synchronized BitmapInfo getBadgedIcon(@Nullable final BitmapInfo bitmap,
+    private BitmapInfo getBadgedIcon(@Nullable final BitmapInfo bitmap,
                                                   @NonNull final UserHandle user) {
         if (bitmap == null) {
             return getDefaultIcon(user);
@@ -7,19 +7,31 @@ import android.os.HandlerThread;
 import android.os.Message;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
 
 import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.util.IOUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.IllegalFormatException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -29,11 +41,15 @@ import java.util.concurrent.TimeUnit;
  *
  * Note: This should only be used for logging errors which have a persistent effect on user's data,
  * but whose effect may not be visible immediately.
+ *
+ * Frequent logs should use a {@link LogEvent} instead of {@link #print}, which stores the
+ * arguments in a binary file and only formats them when the logs are dumped.
  */
 public final class FileLog {
 
     protected static final boolean ENABLED = true;
     private static final String FILE_NAME_PREFIX = "log-";
+    private static final String BINARY_FILE_NAME_PREFIX = "blog-";
     private static final DateFormat DATE_FORMAT =
             DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
 
@@ -44,6 +60,20 @@ public final class FileLog {
 
     public static final int LOG_DAYS = 4;
 
+    // Record types of the binary log files
+    private static final int RECORD_DEFINITION = 1;
+    private static final int RECORD_ENTRY = 2;
+    private static final int RECORD_DROPPED = 3;
+
+    private static final byte ARG_NONE = 0;
+    private static final byte ARG_LONG = 1;
+    private static final byte ARG_STRING = 2;
+    private static final int MAX_ARGS = 2;
+    private static final int MAX_STRING_ARG_LENGTH = 4096;
+
+    private static final ArrayList<LogEvent> sEvents = new ArrayList<>();
+    private static final EventBuffer sEventBuffer = new EventBuffer();
+
     public static void setDir(File logsDir) {
         if (ENABLED) {
             synchronized (DATE_FORMAT) {
@@ -92,6 +122,71 @@ public final class FileLog {
         Message.obtain(getHandler(), LogWriterCallback.MSG_WRITE, out).sendToTarget();
     }
 
+    /**
+     * Registers a structured log entry. {@param format} is only applied to the logged arguments
+     * when the logs are read back, see {@link #log(LogEvent, String)}.
+     */
+    public static LogEvent registerEvent(String tag, String format) {
+        synchronized (sEvents) {
+            LogEvent event = new LogEvent(sEvents.size(), tag, format);
+            sEvents.add(event);
+            return event;
+        }
+    }
+
+    public static void log(LogEvent event) {
+        add(event, ARG_NONE, 0, null, ARG_NONE, 0, null);
+    }
+
+    public static void log(LogEvent event, long arg0) {
+        add(event, ARG_LONG, arg0, null, ARG_NONE, 0, null);
+    }
+
+    public static void log(LogEvent event, long arg0, long arg1) {
+        add(event, ARG_LONG, arg0, null, ARG_LONG, arg1, null);
+    }
+
+    /**
+     * Logs {@param event} with the provided arguments. Unlike {@link #print}, the message is not
+     * formatted on the calling thread: the arguments are copied to a preallocated buffer, which
+     * is written in batches to a binary log file.
+     */
+    public static void log(LogEvent event, String arg0) {
+        add(event, ARG_STRING, 0, arg0, ARG_NONE, 0, null);
+    }
+
+    public static void log(LogEvent event, String arg0, long arg1) {
+        add(event, ARG_STRING, 0, arg0, ARG_LONG, arg1, null);
+    }
+
+    public static void log(LogEvent event, String arg0, String arg1) {
+        add(event, ARG_STRING, 0, arg0, ARG_STRING, 0, arg1);
+    }
+
+    /**
+     * Same as {@link #log(LogEvent, String)}, but the message is also printed to logcat, so that
+     * it stays in order with the other logcat lines.
+     */
+    public static void d(LogEvent event, String arg0) {
+        Log.d(event.mTag, String.format(event.mFormat, arg0));
+        log(event, arg0);
+    }
+
+    private static void add(LogEvent event, byte type0, long long0, String string0,
+            byte type1, long long1, String string1) {
+        if (!ENABLED) {
+            return;
+        }
+        int drain = sEventBuffer.add(System.currentTimeMillis(), event,
+                type0, long0, string0, type1, long1, string1);
+        if (drain == EventBuffer.DRAIN_LATER) {
+            getHandler().sendEmptyMessageDelayed(
+                    LogWriterCallback.MSG_DRAIN, LogWriterCallback.DRAIN_DELAY);
+        } else if (drain == EventBuffer.DRAIN_NOW) {
+            getHandler().sendEmptyMessage(LogWriterCallback.MSG_DRAIN);
+        }
+    }
+
     @VisibleForTesting
     static Handler getHandler() {
         synchronized (DATE_FORMAT) {
@@ -119,6 +214,19 @@ public final class FileLog {
         return latch.getCount() == 0;
     }
 
+    private static boolean shouldAppend(File logFile, Calendar cal) {
+        if (!logFile.exists()) {
+            return false;
+        }
+        Calendar modifiedTime = Calendar.getInstance();
+        modifiedTime.setTimeInMillis(logFile.lastModified());
+
+        // If the file was modified more that 36 hours ago, purge the file.
+        // We use instead of 24 to account for day-365 followed by day-1
+        modifiedTime.add(Calendar.HOUR, 36);
+        return cal.before(modifiedTime) && logFile.length() < MAX_LOG_FILE_SIZE;
+    }
+
     /**
      * Writes logs to the file.
      * Log files are named log-0 for even days of the year and log-1 for odd days of the year.
@@ -127,22 +235,37 @@ public final class FileLog {
     private static class LogWriterCallback implements Handler.Callback {
 
         private static final long CLOSE_DELAY = 5000;  // 5 seconds
+        private static final long DRAIN_DELAY = 1000;  // 1 second
 
         private static final int MSG_WRITE = 1;
         private static final int MSG_CLOSE = 2;
         private static final int MSG_FLUSH = 3;
+        private static final int MSG_DRAIN = 4;
 
         private String mCurrentFileName = null;
         private PrintWriter mCurrentWriter = null;
 
+        private String mCurrentBinaryFileName = null;
+        private DataOutputStream mBinaryWriter = null;
+        // Events whose definition was written to the current binary file
+        private final BitSet mDefinedEvents = new BitSet();
+        private final EventBuffer mPendingEvents = new EventBuffer();
+
         private void closeWriter() {
             IOUtils.closeSilently(mCurrentWriter);
             mCurrentWriter = null;
+            IOUtils.closeSilently(mBinaryWriter);
+            mBinaryWriter = null;
         }
 
         @Override
         public boolean handleMessage(Message msg) {
             if (sLogsDirectory == null || !ENABLED) {
+                if (msg.what == MSG_DRAIN) {
+                    // Nowhere to write, drop the events so that logging can continue
+                    sEventBuffer.drainTo(mPendingEvents);
+                    mPendingEvents.clear();
+                }
                 return true;
             }
             switch (msg.what) {
@@ -152,30 +275,23 @@ public final class FileLog {
                     String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) % LOG_DAYS);
 
                     if (!fileName.equals(mCurrentFileName)) {
-                        closeWriter();
+                        IOUtils.closeSilently(mCurrentWriter);
+                        mCurrentWriter = null;
                     }
 
                     try {
                         if (mCurrentWriter == null) {
                             mCurrentFileName = fileName;
-
-                            boolean append = false;
                             File logFile = new File(sLogsDirectory, fileName);
-                            if (logFile.exists()) {
-                                Calendar modifiedTime = Calendar.getInstance();
-                                modifiedTime.setTimeInMillis(logFile.lastModified());
-
-                                // If the file was modified more that 36 hours ago, purge the file.
-                                // We use instead of 24 to account for day-365 followed by day-1
-                                modifiedTime.add(Calendar.HOUR, 36);
-                                append = cal.before(modifiedTime)
-                                        && logFile.length() < MAX_LOG_FILE_SIZE;
-                            }
-                            mCurrentWriter = new PrintWriter(new FileWriter(logFile, append));
+                            mCurrentWriter = new PrintWriter(
+                                    new FileWriter(logFile, shouldAppend(logFile, cal)));
                         }
 
                         mCurrentWriter.println((String) msg.obj);
-                        mCurrentWriter.flush();
+                        // Lines which are already queued are flushed with the last one
+                        if (!sHandler.hasMessages(MSG_WRITE)) {
+                            mCurrentWriter.flush();
+                        }
 
                         // Auto close file stream after some time.
                         sHandler.removeMessages(MSG_CLOSE);
@@ -187,11 +303,16 @@ public final class FileLog {
                     }
                     return true;
                 }
+                case MSG_DRAIN: {
+                    writeEvents();
+                    return true;
+                }
                 case MSG_CLOSE: {
                     closeWriter();
                     return true;
                 }
                 case MSG_FLUSH: {
+                    writeEvents();
                     closeWriter();
                     Pair<PrintWriter, CountDownLatch> p =
                             (Pair<PrintWriter, CountDownLatch>) msg.obj;
@@ -200,6 +321,9 @@ public final class FileLog {
                         for (int i = 0; i < LOG_DAYS; i++) {
                             dumpFile(p.first, FILE_NAME_PREFIX + i);
                         }
+                        for (int i = 0; i < LOG_DAYS; i++) {
+                            dumpBinaryFile(p.first, BINARY_FILE_NAME_PREFIX + i);
+                        }
                     }
                     p.second.countDown();
                     return true;
@@ -207,6 +331,174 @@ public final class FileLog {
             }
             return true;
         }
+
+        /**
+         * Writes all the events logged since the last call to the binary log file of the day,
+         * with a single flush.
+         */
+        private void writeEvents() {
+            int dropped = sEventBuffer.drainTo(mPendingEvents);
+            if (mPendingEvents.mSize == 0 && dropped == 0) {
+                return;
+            }
+
+            Calendar cal = Calendar.getInstance();
+            String fileName = BINARY_FILE_NAME_PREFIX
+                    + (cal.get(Calendar.DAY_OF_YEAR) % LOG_DAYS);
+            if (!fileName.equals(mCurrentBinaryFileName)) {
+                IOUtils.closeSilently(mBinaryWriter);
+                mBinaryWriter = null;
+            }
+
+            try {
+                if (mBinaryWriter == null) {
+                    mCurrentBinaryFileName = fileName;
+                    File logFile = new File(sLogsDirectory, fileName);
+                    mBinaryWriter = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(logFile, shouldAppend(logFile, cal))));
+                    // Event ids are only valid in this process, define them again in each file
+                    mDefinedEvents.clear();
+                }
+
+                DataOutputStream out = mBinaryWriter;
+                for (int i = 0; i < mPendingEvents.mSize; i++) {
+                    LogEvent event = mPendingEvents.mEvents[i];
+                    if (!mDefinedEvents.get(event.mId)) {
+                        mDefinedEvents.set(event.mId);
+                        out.writeByte(RECORD_DEFINITION);
+                        out.writeShort(event.mId);
+                        out.writeUTF(event.mTag);
+                        out.writeUTF(event.mFormat);
+                    }
+                    out.writeByte(RECORD_ENTRY);
+                    out.writeLong(mPendingEvents.mTimes[i]);
+                    out.writeShort(event.mId);
+                    int argIndex = i * MAX_ARGS;
+                    byte type0 = mPendingEvents.mArgTypes[argIndex];
+                    byte type1 = mPendingEvents.mArgTypes[argIndex + 1];
+                    out.writeByte(type0 | (type1 << 2));
+                    writeArg(out, type0, mPendingEvents, argIndex);
+                    writeArg(out, type1, mPendingEvents, argIndex + 1);
+                }
+                if (dropped > 0) {
+                    out.writeByte(RECORD_DROPPED);
+                    out.writeLong(cal.getTimeInMillis());
+                    out.writeInt(dropped);
+                }
+                out.flush();
+
+                // Auto close file stream after some time.
+                sHandler.removeMessages(MSG_CLOSE);
+                sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
+            } catch (Exception e) {
+                Log.e("FileLog", "Error writing structured logs to file", e);
+                // Close stream, will try reopening during next log
+                IOUtils.closeSilently(mBinaryWriter);
+                mBinaryWriter = null;
+            } finally {
+                mPendingEvents.clear();
+            }
+        }
+
+        private static void writeArg(DataOutputStream out, byte type, EventBuffer buffer,
+                int argIndex) throws IOException {
+            if (type == ARG_LONG) {
+                out.writeLong(buffer.mLongArgs[argIndex]);
+            } else if (type == ARG_STRING) {
+                String arg = String.valueOf(buffer.mStringArgs[argIndex]);
+                // writeUTF is limited to 64k bytes
+                out.writeUTF(arg.length() > MAX_STRING_ARG_LENGTH
+                        ? arg.substring(0, MAX_STRING_ARG_LENGTH) : arg);
+            }
+        }
+    }
+
+    private static void dumpBinaryFile(PrintWriter out, String fileName) {
+        File logFile = new File(sLogsDirectory, fileName);
+        if (logFile.exists()) {
+            out.println();
+            out.println("--- logfile: " + fileName + " ---");
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(logFile)))) {
+                decode(in, out);
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Prints the entries of a binary log file as text, until the end of the stream
+     */
+    @VisibleForTesting
+    static void decode(DataInputStream in, PrintWriter out) throws IOException {
+        SparseArray<String[]> definitions = new SparseArray<>();
+        Object[] args = new Object[MAX_ARGS];
+        Date date = new Date();
+        while (true) {
+            int record;
+            try {
+                record = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return;
+            }
+            try {
+                switch (record) {
+                    case RECORD_DEFINITION: {
+                        int id = in.readUnsignedShort();
+                        definitions.put(id, new String[]{in.readUTF(), in.readUTF()});
+                        break;
+                    }
+                    case RECORD_ENTRY: {
+                        date.setTime(in.readLong());
+                        String[] definition = definitions.get(in.readUnsignedShort());
+                        int types = in.readUnsignedByte();
+                        int argCount = 0;
+                        for (int i = 0; i < MAX_ARGS; i++) {
+                            int type = (types >> (2 * i)) & 0x3;
+                            if (type == ARG_LONG) {
+                                args[argCount++] = in.readLong();
+                            } else if (type == ARG_STRING) {
+                                args[argCount++] = in.readUTF();
+                            }
+                        }
+                        out.println(DATE_FORMAT.format(date) + " "
+                                + (definition == null ? "?" : definition[0]) + " "
+                                + formatMessage(definition, args, argCount));
+                        break;
+                    }
+                    case RECORD_DROPPED: {
+                        date.setTime(in.readLong());
+                        out.println(DATE_FORMAT.format(date) + " FileLog "
+                                + in.readInt() + " structured logs were dropped");
+                        break;
+                    }
+                    default:
+                        out.println("Unknown log record " + record);
+                        return;
+                }
+            } catch (EOFException e) {
+                // The last record was not completely written
+                return;
+            }
+        }
+    }
+
+    private static String formatMessage(String[] definition, Object[] args, int argCount) {
+        Object[] usedArgs = new Object[argCount];
+        System.arraycopy(args, 0, usedArgs, 0, argCount);
+        if (definition != null) {
+            try {
+                return String.format(definition[1], usedArgs);
+            } catch (IllegalFormatException e) {
+                // Fall through and print the raw arguments
+            }
+        }
+        StringBuilder sb = new StringBuilder(definition == null ? "" : definition[1]);
+        for (Object arg : usedArgs) {
+            sb.append(' ').append(arg);
+        }
+        return sb.toString();
     }
 
     private static void dumpFile(PrintWriter out, String fileName) {
@@ -244,4 +536,113 @@ public final class FileLog {
         }
         return files;
     }
+
+    /**
+     * A structured log entry, see {@link #registerEvent(String, String)}
+     */
+    public static final class LogEvent {
+        private final int mId;
+        private final String mTag;
+        private final String mFormat;
+
+        private LogEvent(int id, String tag, String format) {
+            mId = id;
+            mTag = tag;
+            mFormat = format;
+        }
+    }
+
+    /**
+     * Preallocated ring of logged events, written by the logging threads and drained by the
+     * writer thread.
+     */
+    @VisibleForTesting
+    static final class EventBuffer {
+
+        static final int CAPACITY = 1024;
+
+        static final int DRAIN_SCHEDULED = 0;
+        static final int DRAIN_LATER = 1;
+        static final int DRAIN_NOW = 2;
+
+        private final long[] mTimes = new long[CAPACITY];
+        private final LogEvent[] mEvents = new LogEvent[CAPACITY];
+        private final byte[] mArgTypes = new byte[CAPACITY * MAX_ARGS];
+        private final long[] mLongArgs = new long[CAPACITY * MAX_ARGS];
+        private final String[] mStringArgs = new String[CAPACITY * MAX_ARGS];
+
+        private int mStart;
+        private int mSize;
+        private int mDropped;
+        private boolean mDrainScheduled;
+        private boolean mUrgentDrainScheduled;
+
+        /**
+         * Adds an event, or drops it if the buffer is full.
+         * @return whether the caller needs to schedule a drain of the buffer
+         */
+        synchronized int add(long time, LogEvent event, byte type0, long long0, String string0,
+                byte type1, long long1, String string1) {
+            if (mSize == CAPACITY) {
+                mDropped++;
+                return DRAIN_SCHEDULED;
+            }
+            int i = (mStart + mSize) % CAPACITY;
+            mSize++;
+            mTimes[i] = time;
+            mEvents[i] = event;
+            int argIndex = i * MAX_ARGS;
+            mArgTypes[argIndex] = type0;
+            mLongArgs[argIndex] = long0;
+            mStringArgs[argIndex] = string0;
+            mArgTypes[argIndex + 1] = type1;
+            mLongArgs[argIndex + 1] = long1;
+            mStringArgs[argIndex + 1] = string1;
+
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                return DRAIN_LATER;
+            }
+            if (!mUrgentDrainScheduled && mSize >= CAPACITY / 2) {
+                mUrgentDrainScheduled = true;
+                return DRAIN_NOW;
+            }
+            return DRAIN_SCHEDULED;
+        }
+
+        /**
+         * Moves all the events to {@param dest}, which must be empty, oldest first.
+         * @return the number of events dropped since the last call
+         */
+        synchronized int drainTo(EventBuffer dest) {
+            for (int n = 0; n < mSize; n++) {
+                int i = (mStart + n) % CAPACITY;
+                dest.mTimes[n] = mTimes[i];
+                dest.mEvents[n] = mEvents[i];
+                System.arraycopy(mArgTypes, i * MAX_ARGS, dest.mArgTypes, n * MAX_ARGS, MAX_ARGS);
+                System.arraycopy(mLongArgs, i * MAX_ARGS, dest.mLongArgs, n * MAX_ARGS, MAX_ARGS);
+                System.arraycopy(
+                        mStringArgs, i * MAX_ARGS, dest.mStringArgs, n * MAX_ARGS, MAX_ARGS);
+            }
+            dest.mSize = mSize;
+            int dropped = mDropped;
+            clear();
+            return dropped;
+        }
+
+        synchronized void clear() {
+            // Release the references to the logged objects
+            for (int n = 0; n < mSize; n++) {
+                int i = (mStart + n) % CAPACITY;
+                mEvents[i] = null;
+                mStringArgs[i * MAX_ARGS] = null;
+                mStringArgs[i * MAX_ARGS + 1] = null;
+            }
+            mStart = 0;
+            mSize = 0;
+            mDropped = 0;
+            mDrainScheduled = false;
+            mUrgentDrainScheduled = false;
+        }
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.logging;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.logging.StatsLogManager.EventEnum;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * On-device sink for the events logged through the default {@link StatsLogManager}.
+ *
+ * Events are counted and latencies are recorded in fixed-bucket histograms, keyed by
+ * {@link EventEnum#getId()}. Recording is lock-free and does not allocate once an event has
+ * been seen, so it can be called from any thread.
+ */
+public class LocalMetrics {
+
+    public static final LocalMetrics INSTANCE = new LocalMetrics();
+
+    /** Events with an id outside [0, MAX_EVENT_ID) are only counted as dropped */
+    @VisibleForTesting
+    static final int MAX_EVENT_ID = 2048;
+
+    private final AtomicReferenceArray<EventEnum> mEvents =
+            new AtomicReferenceArray<>(MAX_EVENT_ID);
+    private final AtomicLongArray mEventCounts = new AtomicLongArray(MAX_EVENT_ID);
+    private final AtomicReferenceArray<LatencyHistogram> mLatencies =
+            new AtomicReferenceArray<>(MAX_EVENT_ID);
+    private final AtomicLong mDroppedEvents = new AtomicLong();
+
+    @VisibleForTesting
+    LocalMetrics() { }
+
+    /**
+     * Increments the number of times {@param event} was logged
+     */
+    public void countEvent(EventEnum event) {
+        int id = event.getId();
+        if (!register(event, id)) {
+            return;
+        }
+        mEventCounts.incrementAndGet(id);
+    }
+
+    /**
+     * Adds {@param latencyMillis} to the latency histogram of {@param event}
+     */
+    public void recordLatency(EventEnum event, long latencyMillis) {
+        int id = event.getId();
+        if (!register(event, id)) {
+            return;
+        }
+        LatencyHistogram histogram = mLatencies.get(id);
+        while (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            // reset() may clear the slot at any time, so only use instances read non-null
+            histogram = mLatencies.compareAndSet(id, null, created) ? created : mLatencies.get(id);
+        }
+        histogram.record(latencyMillis);
+    }
+
+    private boolean register(EventEnum event, int id) {
+        if (id < 0 || id >= MAX_EVENT_ID) {
+            mDroppedEvents.incrementAndGet();
+            return false;
+        }
+        if (mEvents.get(id) == null) {
+            mEvents.compareAndSet(id, null, event);
+        }
+        return true;
+    }
+
+    public long getEventCount(EventEnum event) {
+        int id = event.getId();
+        return id < 0 || id >= MAX_EVENT_ID ? 0 : mEventCounts.get(id);
+    }
+
+    @Nullable
+    public LatencyHistogram getLatency(EventEnum event) {
+        int id = event.getId();
+        return id < 0 || id >= MAX_EVENT_ID ? null : mLatencies.get(id);
+    }
+
+    /**
+     * Clears all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < MAX_EVENT_ID; i++) {
+            mEventCounts.set(i, 0);
+            mLatencies.set(i, null);
+        }
+        mDroppedEvents.set(0);
+    }
+
+    /**
+     * Returns a summary line for each event which has recorded latencies
+     */
+    public List<String> getLatencySummaries() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < MAX_EVENT_ID; i++) {
+            LatencyHistogram histogram = mLatencies.get(i);
+            if (histogram != null) {
+                result.add(mEvents.get(i) + ": " + histogram);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a summary line for each event which has been counted
+     */
+    public List<String> getCountSummaries() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < MAX_EVENT_ID; i++) {
+            long count = mEventCounts.get(i);
+            if (count > 0) {
+                result.add(mEvents.get(i) + ": " + count);
+            }
+        }
+        return result;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "LocalMetrics:");
+        writer.println(prefix + "\tLatencies:");
+        for (String line : getLatencySummaries()) {
+            writer.println(prefix + "\t\t" + line);
+        }
+        writer.println(prefix + "\tEvents:");
+        for (String line : getCountSummaries()) {
+            writer.println(prefix + "\t\t" + line);
+        }
+        writer.println(prefix + "\tdroppedEvents=" + mDroppedEvents.get());
+    }
+
+    /**
+     * Histogram of millisecond latencies. Values below {@link #SUB_BUCKETS} have their own
+     * bucket, larger values are split in {@link #SUB_BUCKETS} buckets per power of two, which
+     * bounds the relative error of a percentile to 1 / {@link #SUB_BUCKETS}.
+     */
+    public static class LatencyHistogram {
+
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        /** Values of 2^MAX_BITS ms (about 17 minutes) or more go in the last bucket */
+        private static final int MAX_BITS = 20;
+        @VisibleForTesting
+        static final int BUCKET_COUNT = SUB_BUCKETS * (MAX_BITS - SUB_BUCKET_BITS + 2);
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            mBuckets.incrementAndGet(getBucket(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            mMax.accumulateAndGet(value, Math::max);
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public long getMean() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the {@param percentile}th value,
+         * capped by the maximum recorded value.
+         */
+        public long getPercentile(float percentile) {
+            long[] buckets = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = mBuckets.get(i);
+                total += buckets[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        @VisibleForTesting
+        static int getBucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int highestBit = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_BITS);
+            int shift = highestBit - SUB_BUCKET_BITS;
+            int subBucket = (int) Math.min((value >> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+            return SUB_BUCKETS * (shift + 1) + subBucket;
+        }
+
+        @VisibleForTesting
+        static long getBucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            int subBucket = bucket % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount()
+                    + " mean=" + getMean()
+                    + " p50=" + getPercentile(50)
+                    + " p90=" + getPercentile(90)
+                    + " p99=" + getPercentile(99)
+                    + " max=" + getMax();
+        }
+    }
+}
@@ -42,7 +42,8 @@ import java.util.List;
  *
  * <pre>
  * All of the event ids are defined here.
- * Most of the methods are placeholder methods for Launcher3
+ * Most of the methods are placeholder methods for Launcher3, which only record events and
+ * latencies in {@link LocalMetrics}.
  * Actual call happens only for Launcher variant that implements QuickStep.
  * </pre>
  */
@@ -676,6 +677,35 @@ public class StatsLogManager implements ResourceBasedOverride {
         }
     }
 
+    /**
+     * Launcher specific latency events.
+     */
+    public enum LauncherLatencyEvent implements EventEnum {
+
+        @UiEvent(doc = "Time to load and bind the workspace, from the start of the loader task")
+        LAUNCHER_LATENCY_STARTUP_WORKSPACE_LOADER_ASYNC(1367),
+
+        @UiEvent(doc = "Time from starting an app until launcher is paused by it")
+        LAUNCHER_LATENCY_APP_LAUNCH(1420),
+
+        @UiEvent(doc = "Time from the start of the transition to all apps until it is settled")
+        LAUNCHER_LATENCY_ALLAPPS_OPEN(1421),
+
+        @UiEvent(doc = "Time from a change of the all apps search query until its results")
+        LAUNCHER_LATENCY_ALLAPPS_SEARCH(1422);
+        // ADD MORE
+
+        private final int mId;
+
+        LauncherLatencyEvent(int id) {
+            mId = id;
+        }
+
+        public int getId() {
+            return mId;
+        }
+    }
+
     /**
      * Helps to construct and log launcher event.
      */
@@ -975,16 +1005,36 @@ public class StatsLogManager implements ResourceBasedOverride {
 
     protected StatsLogger createLogger() {
         return new StatsLogger() {
+            @Override
+            public void log(EventEnum event) {
+                LocalMetrics.INSTANCE.countEvent(event);
+            }
         };
     }
 
     protected StatsLatencyLogger createLatencyLogger() {
         return new StatsLatencyLogger() {
+            private long mLatencyInMillis;
+
+            @Override
+            public StatsLatencyLogger withLatency(long latencyInMillis) {
+                mLatencyInMillis = latencyInMillis;
+                return this;
+            }
+
+            @Override
+            public void log(EventEnum event) {
+                LocalMetrics.INSTANCE.recordLatency(event, mLatencyInMillis);
+            }
         };
     }
 
     protected StatsImpressionLogger createImpressionLogger() {
         return new StatsImpressionLogger() {
+            @Override
+            public void log(EventEnum event) {
+                LocalMetrics.INSTANCE.countEvent(event);
+            }
         };
     }
 
@@ -38,6 +38,7 @@ import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.pm.PackageInstallInfo;
+import com.android.launcher3.search.AppSearchIndex;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.SafeCloseable;
@@ -74,10 +75,13 @@ public class AllAppsList {
     private AppFilter mAppFilter;
 
     private boolean mDataChanged = false;
+    private int mGeneration = 0;
     private Consumer<AppInfo> mRemoveListener = NO_OP_CONSUMER;
 
     private AlphabeticIndexCompat mIndex;
 
+    private final AppSearchIndex mSearchIndex = new AppSearchIndex();
+
     /**
      * @see Callbacks#FLAG_HAS_SHORTCUT_PERMISSION
      * @see Callbacks#FLAG_QUIET_MODE_ENABLED
@@ -99,10 +103,21 @@ public class AllAppsList {
      */
     public boolean getAndResetChangeFlag() {
         boolean result = mDataChanged;
+        if (result) {
+            mGeneration++;
+        }
         mDataChanged = false;
         return result;
     }
 
+    /**
+     * Returns a number which changes every time a change to the apps is reported by
+     * {@link #getAndResetChangeFlag} or the list is cleared.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
     /**
      * Helper to checking {@link Callbacks#FLAG_HAS_SHORTCUT_PERMISSION}
      */
@@ -155,6 +170,7 @@ public class AllAppsList {
         }
 
         data.add(info);
+        mSearchIndex.onAppUpdated(info);
         mDataChanged = true;
     }
 
@@ -181,6 +197,7 @@ public class AllAppsList {
         }
 
         data.add(promiseAppInfo);
+        mSearchIndex.onAppUpdated(promiseAppInfo);
         mDataChanged = true;
 
         return promiseAppInfo;
@@ -188,7 +205,7 @@ public class AllAppsList {
 
     public void updateSectionName(AppInfo appInfo) {
         appInfo.sectionName = mIndex.computeSectionName(appInfo.title);
-
+        mSearchIndex.onAppUpdated(appInfo);
     }
 
     /**
@@ -223,6 +240,7 @@ public class AllAppsList {
     private void removeApp(int index) {
         AppInfo removed = data.remove(index);
         if (removed != null) {
+            mSearchIndex.onAppRemoved(removed);
             mDataChanged = true;
             mRemoveListener.accept(removed);
         }
@@ -230,6 +248,8 @@ public class AllAppsList {
 
     public void clear() {
         data.clear();
+        mSearchIndex.clear();
+        mGeneration++;
         mDataChanged = false;
         // Reset the index as locales might have changed
         mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
@@ -282,6 +302,7 @@ public class AllAppsList {
             if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
                 mIconCache.updateTitleAndIcon(info);
                 info.sectionName = mIndex.computeSectionName(info.title);
+                mSearchIndex.onAppUpdated(info);
                 mDataChanged = true;
             }
         }
@@ -319,6 +340,7 @@ public class AllAppsList {
 
                     mIconCache.getTitleAndIcon(applicationInfo, info, false /* useLowResIcon */);
                     applicationInfo.sectionName = mIndex.computeSectionName(applicationInfo.title);
+                    mSearchIndex.onAppUpdated(applicationInfo);
                     applicationInfo.setProgressLevel(
                             PackageManagerHelper.getLoadingProgress(info),
                             PackageInstallInfo.STATUS_INSTALLED_DOWNLOADING);
@@ -370,6 +392,13 @@ public class AllAppsList {
         return null;
     }
 
+    /**
+     * Returns the search index over the titles of {@link #data}.
+     */
+    public AppSearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
     public AppInfo[] copyData() {
         AppInfo[] result = data.toArray(EMPTY_ARRAY);
         Arrays.sort(result, COMPONENT_KEY_COMPARATOR);
@@ -33,6 +33,7 @@ import com.android.launcher3.model.BgDataModel.FixedContainerItems;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.LauncherAppWidgetInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.testing.shared.TestProtocol;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.IntSet;
@@ -103,10 +104,38 @@ public abstract class BaseLoaderResults {
 
     public abstract void bindDeepShortcuts();
 
+    /**
+     * Returns the pages which {@link #bindWorkspace} will bind first for any of the callbacks.
+     */
+    public IntSet getPagesToBindSynchronously(IntArray orderedScreenIds) {
+        IntSet result = new IntSet();
+        for (Callbacks cb : mCallbacksList) {
+            IntSet pages = cb.getPagesToBindSynchronously(orderedScreenIds);
+            if (pages != null) {
+                result.addAll(pages);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebinds workspace items whose title or icon changed after they were bound.
+     */
+    public void bindWorkspaceItemsChanged(List<WorkspaceItemInfo> updated) {
+        if (!updated.isEmpty()) {
+            executeCallbacksTask(c -> c.bindWorkspaceItemsChanged(updated), mUiExecutor);
+        }
+    }
+
     public void bindAllApps() {
         // shallow copy
-        AppInfo[] apps = mBgAllAppsList.copyData();
-        int flags = mBgAllAppsList.getFlags();
+        bindAllApps(mBgAllAppsList.copyData(), mBgAllAppsList.getFlags());
+    }
+
+    /**
+     * Binds {@param apps} as the all apps list, when it was not read from the model
+     */
+    public void bindAllApps(AppInfo[] apps, int flags) {
         executeCallbacksTask(c -> c.bindAllApplications(apps, flags), mUiExecutor);
     }
 
@@ -83,6 +83,12 @@ public class GridSizeMigrationTaskV2 {
     private final int mDestHotseatSize;
     private final int mTrgX, mTrgY;
 
+    // Describes the entries read from both tables, a cached plan is only used for the same input
+    private final String mInputSignature;
+
+    // Migration plans by source and target grid
+    private static final Map<String, MigrationPlan> sPlanCache = new HashMap<>();
+
     @VisibleForTesting
     protected GridSizeMigrationTaskV2(Context context, SQLiteDatabase db, DbReader srcReader,
                                       DbReader destReader, int destHotseatSize, Point targetSize) {
@@ -94,12 +100,22 @@ public class GridSizeMigrationTaskV2 {
         mHotseatItems = destReader.loadHotseatEntries();
         mWorkspaceItems = destReader.loadAllWorkspaceEntries();
 
-        mHotseatDiff = calcDiff(mSrcReader.loadHotseatEntries(), mHotseatItems);
-        mWorkspaceDiff = calcDiff(mSrcReader.loadAllWorkspaceEntries(), mWorkspaceItems);
+        List<DbEntry> srcHotseatItems = mSrcReader.loadHotseatEntries();
+        List<DbEntry> srcWorkspaceItems = mSrcReader.loadAllWorkspaceEntries();
+        mHotseatDiff = calcDiff(srcHotseatItems, mHotseatItems);
+        mWorkspaceDiff = calcDiff(srcWorkspaceItems, mWorkspaceItems);
         mDestHotseatSize = destHotseatSize;
 
         mTrgX = targetSize.x;
         mTrgY = targetSize.y;
+
+        StringBuilder signature = new StringBuilder()
+                .append(mDestHotseatSize).append(',').append(mTrgX).append(',').append(mTrgY);
+        appendEntries(signature, srcHotseatItems);
+        appendEntries(signature, srcWorkspaceItems);
+        appendEntries(signature, mHotseatItems);
+        appendEntries(signature, mWorkspaceItems);
+        mInputSignature = signature.toString();
     }
 
     /**
@@ -220,53 +236,89 @@ public class GridSizeMigrationTaskV2 {
             return false;
         }
 
-        // Sort the items by the reading order.
-        Collections.sort(mHotseatDiff);
-        Collections.sort(mWorkspaceDiff);
-
-        // Migrate hotseat
-        HotseatPlacementSolution hotseatSolution = new HotseatPlacementSolution(mDb, mSrcReader,
-                mDestReader, mContext, mDestHotseatSize, mHotseatItems, mHotseatDiff);
-        hotseatSolution.find();
-
-        // Migrate workspace.
-        // First we create a collection of the screens
-        List<Integer> screens = new ArrayList<>();
-        for (int screenId = 0; screenId <= mDestReader.mLastScreenId; screenId++) {
-            screens.add(screenId);
-        }
-
         boolean preservePages = false;
-        if (screens.isEmpty() && FeatureFlags.ENABLE_NEW_MIGRATION_LOGIC.get()) {
+        if (mDestReader.mLastScreenId < 0 && FeatureFlags.ENABLE_NEW_MIGRATION_LOGIC.get()) {
             preservePages = destDeviceState.compareTo(srcDeviceState) >= 0
                     && destDeviceState.getColumns() - srcDeviceState.getColumns() <= 2;
         }
+        boolean qsbOnFirstScreen = FeatureFlags.QSbOnFirstScreen(mContext);
+
+        String planKey = srcDeviceState.getDbFile() + "->" + destDeviceState.getDbFile();
+        String signature = mInputSignature + "," + preservePages + "," + qsbOnFirstScreen;
+        MigrationPlan plan;
+        synchronized (sPlanCache) {
+            plan = sPlanCache.get(planKey);
+        }
+        if (plan == null || !plan.mSignature.equals(signature)) {
+            plan = planMigration(signature, mHotseatItems, mHotseatDiff,
+                    mDestReader.mWorkspaceEntriesByScreenId, mDestReader.mLastScreenId,
+                    mWorkspaceDiff, mDestHotseatSize, mTrgX, mTrgY, qsbOnFirstScreen,
+                    preservePages);
+            synchronized (sPlanCache) {
+                sPlanCache.put(planKey, plan);
+            }
+        } else if (DEBUG) {
+            Log.d(TAG, "Using cached migration plan for " + planKey);
+        }
+
+        applyPlan(mDb, mContext, plan, mSrcReader.mTableName, mDestReader.mTableName);
+        return true;
+    }
+
+    /**
+     * Computes where the entries missing from the destination are placed, without reading or
+     * writing any table. The entries in {@param hotseatDiff} and {@param workspaceDiff} are
+     * updated to their new position as they are placed.
+     */
+    @VisibleForTesting
+    static MigrationPlan planMigration(String signature, List<DbEntry> hotseatItems,
+            List<DbEntry> hotseatDiff, Map<Integer, ? extends List<DbEntry>> workspaceItemsByScreen,
+            int lastScreenId, List<DbEntry> workspaceDiff, int destHotseatSize, int trgX, int trgY,
+            boolean qsbOnFirstScreen, boolean preservePages) {
+        MigrationPlan plan = new MigrationPlan(signature);
+
+        // Sort the items by the reading order.
+        Collections.sort(hotseatDiff);
+        Collections.sort(workspaceDiff);
 
-        // Then we place the items on the screens
-        for (int screenId : screens) {
+        // Migrate hotseat
+        new HotseatPlacementSolution(destHotseatSize, hotseatItems, hotseatDiff, plan).find();
+
+        // Migrate workspace.
+        // Place the items on the existing screens
+        for (int screenId = 0; screenId <= lastScreenId; screenId++) {
             if (DEBUG) {
                 Log.d(TAG, "Migrating " + screenId);
             }
-            GridPlacementSolution workspaceSolution = new GridPlacementSolution(mDb, mSrcReader,
-                    mDestReader, mContext, screenId, mTrgX, mTrgY, mWorkspaceDiff, false);
-            workspaceSolution.find();
-            if (mWorkspaceDiff.isEmpty()) {
+            new GridPlacementSolution(workspaceItemsByScreen.get(screenId), screenId, trgX, trgY,
+                    qsbOnFirstScreen, workspaceDiff, false, plan).find();
+            if (workspaceDiff.isEmpty()) {
                 break;
             }
         }
 
         // In case the new grid is smaller, there might be some leftover items that don't fit on
         // any of the screens, in this case we add them to new screens until all of them are placed.
-        int screenId = mDestReader.mLastScreenId + 1;
-        while (!mWorkspaceDiff.isEmpty()) {
-            GridPlacementSolution workspaceSolution = new GridPlacementSolution(mDb, mSrcReader,
-                    mDestReader, mContext, screenId, mTrgX, mTrgY, mWorkspaceDiff,
-                    preservePages);
-            workspaceSolution.find();
+        int screenId = lastScreenId + 1;
+        while (!workspaceDiff.isEmpty()) {
+            new GridPlacementSolution(null, screenId, trgX, trgY, qsbOnFirstScreen,
+                    workspaceDiff, preservePages, plan).find();
             screenId++;
         }
+        return plan;
+    }
 
-        return true;
+    private static void appendEntries(StringBuilder out, List<DbEntry> entries) {
+        out.append('|');
+        for (DbEntry entry : entries) {
+            out.append(entry.id).append(',').append(entry.itemType)
+                    .append(',').append(entry.screenId)
+                    .append(',').append(entry.cellX).append(',').append(entry.cellY)
+                    .append(',').append(entry.spanX).append(',').append(entry.spanY)
+                    .append(',').append(entry.minSpanX).append(',').append(entry.minSpanY)
+                    .append(',').append(entry.mIntent).append(',').append(entry.mProvider)
+                    .append(',').append(entry.mFolderItems).append(';');
+        }
     }
 
     /** Return what's in the src but not in the dest */
@@ -298,50 +350,58 @@ public class GridSizeMigrationTaskV2 {
         return diff;
     }
 
-    private static void insertEntryInDb(SQLiteDatabase db, Context context, DbEntry entry,
-                                        String srcTableName, String destTableName) {
-        int id = copyEntryAndUpdate(db, context, entry, srcTableName, destTableName);
+    /**
+     * Copies the entries of {@param plan} from {@param srcTableName} to {@param destTableName} at
+     * their planned position. All the rows are read with a single query.
+     */
+    private static void applyPlan(SQLiteDatabase db, Context context, MigrationPlan plan,
+            String srcTableName, String destTableName) {
+        IntArray ids = new IntArray();
+        for (Placement placement : plan.mPlacements) {
+            ids.add(placement.id);
+            ids.addAll(placement.folderItemIds);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
 
-        if (entry.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
-            for (Set<Integer> itemIds : entry.mFolderItems.values()) {
-                for (int itemId : itemIds) {
-                    copyEntryAndUpdate(db, context, itemId, id, srcTableName, destTableName);
-                }
+        Map<Integer, ContentValues> rows = new HashMap<>();
+        try (Cursor c = db.query(srcTableName, null,
+                Utilities.createDbSelectionQuery(LauncherSettings.Favorites._ID, ids),
+                null, null, null, null)) {
+            final int indexId = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
+            while (c.moveToNext()) {
+                ContentValues values = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(c, values);
+                rows.put(c.getInt(indexId), values);
             }
         }
-    }
-
-    private static int copyEntryAndUpdate(SQLiteDatabase db, Context context,
-                                          DbEntry entry, String srcTableName, String destTableName) {
-        return copyEntryAndUpdate(db, context, entry, -1, -1, srcTableName, destTableName);
-    }
-
-    private static int copyEntryAndUpdate(SQLiteDatabase db, Context context,
-                                          int id, int folderId, String srcTableName, String destTableName) {
-        return copyEntryAndUpdate(db, context, null, id, folderId, srcTableName, destTableName);
-    }
 
-    private static int copyEntryAndUpdate(SQLiteDatabase db, Context context,
-                                          DbEntry entry, int id, int folderId, String srcTableName, String destTableName) {
-        int newId = -1;
-        Cursor c = db.query(srcTableName, null,
-                LauncherSettings.Favorites._ID + " = '" + (entry != null ? entry.id : id) + "'",
-                null, null, null, null);
-        while (c.moveToNext()) {
-            ContentValues values = new ContentValues();
-            DatabaseUtils.cursorRowToContentValues(c, values);
-            if (entry != null) {
-                entry.updateContentValues(values);
-            } else {
-                values.put(LauncherSettings.Favorites.CONTAINER, folderId);
+        for (Placement placement : plan.mPlacements) {
+            ContentValues values = rows.get(placement.id);
+            if (values == null) {
+                continue;
+            }
+            placement.updateContentValues(values);
+            int folderId = insertRow(db, context, values, destTableName);
+
+            for (int i = 0; i < placement.folderItemIds.size(); i++) {
+                ContentValues itemValues = rows.get(placement.folderItemIds.get(i));
+                if (itemValues != null) {
+                    itemValues.put(LauncherSettings.Favorites.CONTAINER, folderId);
+                    insertRow(db, context, itemValues, destTableName);
+                }
             }
-            newId = LauncherSettings.Settings.call(context.getContentResolver(),
-                    LauncherSettings.Settings.METHOD_NEW_ITEM_ID).getInt(
-                    LauncherSettings.Settings.EXTRA_VALUE);
-            values.put(LauncherSettings.Favorites._ID, newId);
-            db.insert(destTableName, null, values);
         }
-        c.close();
+    }
+
+    private static int insertRow(SQLiteDatabase db, Context context, ContentValues values,
+            String destTableName) {
+        int newId = LauncherSettings.Settings.call(context.getContentResolver(),
+                LauncherSettings.Settings.METHOD_NEW_ITEM_ID).getInt(
+                LauncherSettings.Settings.EXTRA_VALUE);
+        values.put(LauncherSettings.Favorites._ID, newId);
+        db.insert(destTableName, null, values);
         return newId;
     }
 
@@ -367,37 +427,86 @@ public class GridSizeMigrationTaskV2 {
         return validPackages;
     }
 
+    /**
+     * Positions of the entries to copy to the destination table, in the order they are copied
+     */
+    @VisibleForTesting
+    static class MigrationPlan {
+
+        private final String mSignature;
+        final List<Placement> mPlacements = new ArrayList<>();
+
+        MigrationPlan(String signature) {
+            mSignature = signature;
+        }
+    }
+
+    /**
+     * New position of an entry of the source table
+     */
+    @VisibleForTesting
+    static class Placement {
+
+        final int id;
+        final int itemType;
+        final int screenId;
+        final int cellX;
+        final int cellY;
+        final int spanX;
+        final int spanY;
+        // Items of a folder, copied in the new folder
+        final IntArray folderItemIds = new IntArray();
+
+        Placement(DbEntry entry) {
+            id = entry.id;
+            itemType = entry.itemType;
+            screenId = entry.screenId;
+            cellX = entry.cellX;
+            cellY = entry.cellY;
+            spanX = entry.spanX;
+            spanY = entry.spanY;
+            if (entry.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
+                for (Set<Integer> itemIds : entry.mFolderItems.values()) {
+                    for (int itemId : itemIds) {
+                        folderItemIds.add(itemId);
+                    }
+                }
+            }
+        }
+
+        void updateContentValues(ContentValues values) {
+            values.put(LauncherSettings.Favorites.SCREEN, screenId);
+            values.put(LauncherSettings.Favorites.CELLX, cellX);
+            values.put(LauncherSettings.Favorites.CELLY, cellY);
+            values.put(LauncherSettings.Favorites.SPANX, spanX);
+            values.put(LauncherSettings.Favorites.SPANY, spanY);
+        }
+    }
+
     protected static class GridPlacementSolution {
 
-        private final SQLiteDatabase mDb;
-        private final DbReader mSrcReader;
-        private final DbReader mDestReader;
-        private final Context mContext;
         private final GridOccupancy mOccupied;
         private final int mScreenId;
         private final int mTrgX;
         private final int mTrgY;
         private final List<DbEntry> mSortedItemsToPlace;
         private final boolean mMatchingScreenIdOnly;
+        private final MigrationPlan mPlan;
+        private final int[] mTmpFitsXY = new int[2];
+        private final int[] mTmpMinFitsXY = new int[2];
 
         private int mNextStartX;
         private int mNextStartY;
 
-        GridPlacementSolution(SQLiteDatabase db, DbReader srcReader, DbReader destReader,
-                              Context context, int screenId, int trgX, int trgY, List<DbEntry> sortedItemsToPlace,
-                              boolean matchingScreenIdOnly) {
-            mDb = db;
-            mSrcReader = srcReader;
-            mDestReader = destReader;
-            mContext = context;
+        GridPlacementSolution(List<DbEntry> existedEntries, int screenId, int trgX, int trgY,
+                              boolean qsbOnFirstScreen, List<DbEntry> sortedItemsToPlace,
+                              boolean matchingScreenIdOnly, MigrationPlan plan) {
             mOccupied = new GridOccupancy(trgX, trgY);
             mScreenId = screenId;
             mTrgX = trgX;
             mTrgY = trgY;
             mNextStartX = 0;
-            mNextStartY = mScreenId == 0 && FeatureFlags.QSbOnFirstScreen(mContext)
-                    ? 1 /* smartspace */ : 0;
-            List<DbEntry> existedEntries = mDestReader.mWorkspaceEntriesByScreenId.get(screenId);
+            mNextStartY = mScreenId == 0 && qsbOnFirstScreen ? 1 /* smartspace */ : 0;
             if (existedEntries != null) {
                 for (DbEntry entry : existedEntries) {
                     mOccupied.markCells(entry, true);
@@ -405,6 +514,7 @@ public class GridSizeMigrationTaskV2 {
             }
             mSortedItemsToPlace = sortedItemsToPlace;
             mMatchingScreenIdOnly = matchingScreenIdOnly;
+            mPlan = plan;
         }
 
         public void find() {
@@ -418,8 +528,7 @@ public class GridSizeMigrationTaskV2 {
                     continue;
                 }
                 if (findPlacement(entry)) {
-                    insertEntryInDb(mDb, mContext, entry, mSrcReader.mTableName,
-                            mDestReader.mTableName);
+                    mPlan.mPlacements.add(new Placement(entry));
                     iterator.remove();
                 }
             }
@@ -431,52 +540,50 @@ public class GridSizeMigrationTaskV2 {
          * to speed up the search.
          */
         private boolean findPlacement(DbEntry entry) {
-            for (int y = mNextStartY; y < mTrgY; y++) {
-                for (int x = mNextStartX; x < mTrgX; x++) {
-                    boolean fits = mOccupied.isRegionVacant(x, y, entry.spanX, entry.spanY);
-                    boolean minFits = mOccupied.isRegionVacant(x, y, entry.minSpanX,
-                            entry.minSpanY);
-                    if (minFits) {
-                        entry.spanX = entry.minSpanX;
-                        entry.spanY = entry.minSpanY;
-                    }
-                    if (fits || minFits) {
-                        entry.screenId = mScreenId;
-                        entry.cellX = x;
-                        entry.cellY = y;
-                        mOccupied.markCells(entry, true);
-                        mNextStartX = x + entry.spanX;
-                        mNextStartY = y;
-                        return true;
-                    }
-                }
-                mNextStartX = 0;
+            int[] fitsXY = mTmpFitsXY;
+            int[] minFitsXY = mTmpMinFitsXY;
+            boolean fits = mOccupied.findVacantCell(fitsXY, mNextStartX, mNextStartY,
+                    entry.spanX, entry.spanY);
+            boolean minFits = mOccupied.findVacantCell(minFitsXY, mNextStartX, mNextStartY,
+                    entry.minSpanX, entry.minSpanY);
+            if (!fits && !minFits) {
+                return false;
             }
-            return false;
+            // Use the first position in row order at which either span fits, preferring the
+            // minimum span when both fit there
+            int[] xy;
+            if (minFits && (!fits || minFitsXY[1] < fitsXY[1]
+                    || (minFitsXY[1] == fitsXY[1] && minFitsXY[0] <= fitsXY[0]))) {
+                xy = minFitsXY;
+                entry.spanX = entry.minSpanX;
+                entry.spanY = entry.minSpanY;
+            } else {
+                xy = fitsXY;
+            }
+            entry.screenId = mScreenId;
+            entry.cellX = xy[0];
+            entry.cellY = xy[1];
+            mOccupied.markCells(entry, true);
+            mNextStartX = xy[0] + entry.spanX;
+            mNextStartY = xy[1];
+            return true;
         }
     }
 
     protected static class HotseatPlacementSolution {
 
-        private final SQLiteDatabase mDb;
-        private final DbReader mSrcReader;
-        private final DbReader mDestReader;
-        private final Context mContext;
         private final HotseatOccupancy mOccupied;
         private final List<DbEntry> mItemsToPlace;
+        private final MigrationPlan mPlan;
 
-        HotseatPlacementSolution(SQLiteDatabase db, DbReader srcReader, DbReader destReader,
-                                 Context context, int hotseatSize, List<DbEntry> placedHotseatItems,
-                                 List<DbEntry> itemsToPlace) {
-            mDb = db;
-            mSrcReader = srcReader;
-            mDestReader = destReader;
-            mContext = context;
+        HotseatPlacementSolution(int hotseatSize, List<DbEntry> placedHotseatItems,
+                                 List<DbEntry> itemsToPlace, MigrationPlan plan) {
             mOccupied = new HotseatOccupancy(hotseatSize);
             for (DbEntry entry : placedHotseatItems) {
                 mOccupied.markCells(entry, true);
             }
             mItemsToPlace = itemsToPlace;
+            mPlan = plan;
         }
 
         public void find() {
@@ -488,8 +595,7 @@ public class GridSizeMigrationTaskV2 {
                     // to something other than -1.
                     entry.cellX = i;
                     entry.cellY = 0;
-                    insertEntryInDb(mDb, mContext, entry, mSrcReader.mTableName,
-                            mDestReader.mTableName);
+                    mPlan.mPlacements.add(new Placement(entry));
                     mOccupied.markCells(entry, true);
                 }
             }
@@ -772,14 +878,6 @@ public class GridSizeMigrationTaskV2 {
             return Objects.hash(mIntent);
         }
 
-        public void updateContentValues(ContentValues values) {
-            values.put(LauncherSettings.Favorites.SCREEN, screenId);
-            values.put(LauncherSettings.Favorites.CELLX, cellX);
-            values.put(LauncherSettings.Favorites.CELLY, cellY);
-            values.put(LauncherSettings.Favorites.SPANX, spanX);
-            values.put(LauncherSettings.Favorites.SPANY, spanY);
-        }
-
         /**
          * This id is not used in the DB is only used while doing the migration and it identifies
          * an entry on each workspace. For example two calculator icons would have the same
@@ -16,6 +16,7 @@
 
 package com.android.launcher3.model;
 
+import static com.android.launcher3.logging.StatsLogManager.LauncherLatencyEvent.LAUNCHER_LATENCY_STARTUP_WORKSPACE_LOADER_ASYNC;
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_HAS_SHORTCUT_PERMISSION;
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_QUIET_MODE_CHANGE_PERMISSION;
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_QUIET_MODE_ENABLED;
@@ -24,6 +25,7 @@ import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_LO
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SAFEMODE;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
 import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
 import static com.android.launcher3.util.PackageManagerHelper.isSystemApp;
 
@@ -43,6 +45,9 @@ import android.content.pm.ShortcutInfo;
 import android.graphics.Point;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
 import android.os.Trace;
 import android.os.UserHandle;
 import android.os.UserManager;
@@ -73,6 +78,7 @@ import com.android.launcher3.icons.LauncherActivityCachingLogic;
 import com.android.launcher3.icons.ShortcutCachingLogic;
 import com.android.launcher3.icons.cache.IconCacheUpdateHandler;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.logging.StatsLogManager;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.FolderInfo;
 import com.android.launcher3.model.data.IconRequestInfo;
@@ -120,6 +126,9 @@ public class LoaderTask implements Runnable {
 
     private static final boolean DEBUG = true;
 
+    // Delay before the all apps snapshot is written, to coalesce consecutive updates
+    private static final long MODEL_SNAPSHOT_WRITE_DELAY_MS = 1000;
+
     protected final LauncherAppState mApp;
     private final AllAppsList mBgAllAppsList;
     protected final BgDataModel mBgDataModel;
@@ -146,6 +155,12 @@ public class LoaderTask implements Runnable {
     private boolean mItemsDeleted = false;
     private String mDbName;
 
+    // Whether icons outside of the first screen and hotseat are loaded after the first bind
+    private boolean mDeferOffscreenIcons = false;
+    // High-res icon requests deferred until the first screen has been bound
+    private final List<IconRequestInfo<WorkspaceItemInfo>> mDeferredIconRequests =
+            new ArrayList<>();
+
     public LoaderTask(LauncherAppState app, AllAppsList bgAllAppsList, BgDataModel dataModel,
                       ModelDelegate modelDelegate, LoaderResults results) {
         mApp = app;
@@ -200,14 +215,17 @@ public class LoaderTask implements Runnable {
         }
 
         Object traceToken = TraceHelper.INSTANCE.beginSection(TAG);
+        long loadStartTime = SystemClock.uptimeMillis();
         TimingLogger logger = new TimingLogger(TAG, "run");
         LoaderMemoryLogger memoryLogger = new LoaderMemoryLogger();
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             Trace.beginSection("LoadWorkspace");
             try {
+                mDeferOffscreenIcons = true;
                 loadWorkspace(allShortcuts, memoryLogger);
             } finally {
+                mDeferOffscreenIcons = false;
                 Trace.endSection();
             }
             logASplit(logger, "loadWorkspace");
@@ -225,6 +243,20 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
             mResults.bindWorkspace(true /* incrementBindId */);
             logASplit(logger, "bindWorkspace");
+            StatsLogManager.newInstance(mApp.getContext()).latencyLogger()
+                    .withLatency(SystemClock.uptimeMillis() - loadStartTime)
+                    .log(LAUNCHER_LATENCY_STARTUP_WORKSPACE_LOADER_ASYNC);
+
+            if (FeatureFlags.ENABLE_MODEL_SNAPSHOT.get()) {
+                verifyNotStopped();
+                bindAllAppsFromSnapshot(memoryLogger);
+                logASplit(logger, "bindAllAppsFromSnapshot");
+            }
+
+            // The first screen is bound, load the remaining icons while it is being drawn
+            verifyNotStopped();
+            loadDeferredWorkspaceIcons(memoryLogger);
+            logASplit(logger, "loadDeferredWorkspaceIcons");
 
             mModelDelegate.workspaceLoadComplete();
             // Notify the installer packages of packages with active installs on the first screen.
@@ -250,9 +282,13 @@ public class LoaderTask implements Runnable {
             mResults.bindAllApps();
             logASplit(logger, "bindAllApps");
 
+            updateModelSnapshot(mApp.getContext(), mBgAllAppsList);
+            logASplit(logger, "updateModelSnapshot");
+
             verifyNotStopped();
             IconCacheUpdateHandler updateHandler = mIconCache.getUpdateHandler();
             setIgnorePackages(updateHandler);
+            setPriorityComponents(updateHandler);
             updateHandler.updateIcons(allActivityList,
                     LauncherActivityCachingLogic.newInstance(mApp.getContext()),
                     mApp.getModel()::onPackageIconsUpdated);
@@ -325,6 +361,141 @@ public class LoaderTask implements Runnable {
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
+    /**
+     * Splits {@param iconRequestInfos} so that only the icons of the pages bound first and the
+     * hotseat, including the items in their folders, are loaded in high-res before the workspace
+     * is bound. The other items get their low-res icon for now, and their high-res icon is loaded
+     * by {@link #loadDeferredWorkspaceIcons}.
+     *
+     * @return the requests to load before binding
+     */
+    private List<IconRequestInfo<WorkspaceItemInfo>> deferOffscreenIconRequests(
+            List<IconRequestInfo<WorkspaceItemInfo>> iconRequestInfos,
+            @Nullable LoaderMemoryLogger logger) {
+        // Screen set is never empty
+        IntArray orderedScreenIds = mBgDataModel.collectWorkspaceScreens();
+        IntSet pagesToBind = mResults.getPagesToBindSynchronously(orderedScreenIds);
+        if (pagesToBind.isEmpty()) {
+            pagesToBind = IntSet.wrap(orderedScreenIds.get(0));
+        }
+        List<IconRequestInfo<WorkspaceItemInfo>> firstScreenRequests = new ArrayList<>();
+        for (IconRequestInfo<WorkspaceItemInfo> request : iconRequestInfos) {
+            // Items without a target component do not use the icon cache
+            if (request.useLowResIcon || isOnPagesToBind(request.itemInfo, pagesToBind)
+                    || request.itemInfo.getTargetComponent() == null) {
+                firstScreenRequests.add(request);
+            } else {
+                firstScreenRequests.add(request.withLowResIcon(true));
+                mDeferredIconRequests.add(request);
+            }
+        }
+        if (logger != null) {
+            logger.addLog(Log.DEBUG, TAG, "Loading " + firstScreenRequests.size()
+                    + " workspace icons before bind, deferring "
+                    + mDeferredIconRequests.size() + " high-res icons");
+        }
+        return firstScreenRequests;
+    }
+
+    /**
+     * Returns whether {@param info} is in the hotseat or on one of {@param pagesToBind}, either
+     * directly or inside a folder.
+     */
+    private boolean isOnPagesToBind(ItemInfo info, IntSet pagesToBind) {
+        if (info.container >= 0) {
+            FolderInfo folder = mBgDataModel.folders.get(info.container);
+            if (folder == null) {
+                return false;
+            }
+            info = folder;
+        }
+        return info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT
+                || (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                && pagesToBind.contains(info.screenId));
+    }
+
+    /**
+     * Loads the high-res icons deferred by {@link #deferOffscreenIconRequests} in bulk and binds
+     * the updated items.
+     */
+    private void loadDeferredWorkspaceIcons(LoaderMemoryLogger logger) {
+        if (mDeferredIconRequests.isEmpty()) {
+            return;
+        }
+        Object traceToken = TraceHelper.INSTANCE.beginSection("LoadDeferredWorkspaceIcons");
+        ArrayList<WorkspaceItemInfo> updated = new ArrayList<>();
+        try {
+            mIconCache.getTitlesAndIconsInBulk(mDeferredIconRequests);
+            for (IconRequestInfo<WorkspaceItemInfo> iconRequestInfo : mDeferredIconRequests) {
+                WorkspaceItemInfo wai = iconRequestInfo.itemInfo;
+                if (mIconCache.isDefaultIcon(wai.bitmap, wai.user)) {
+                    iconRequestInfo.loadWorkspaceIcon(mApp.getContext());
+                }
+                updated.add(wai);
+            }
+            logger.addLog(Log.DEBUG, TAG,
+                    "Loaded " + mDeferredIconRequests.size() + " deferred workspace icons");
+        } finally {
+            mDeferredIconRequests.clear();
+            TraceHelper.INSTANCE.endSection(traceToken);
+        }
+        mResults.bindWorkspaceItemsChanged(updated);
+    }
+
+    /**
+     * Binds the all apps list saved by the last load, with low-res icons from the icon cache,
+     * until the actual list is loaded and bound.
+     */
+    private void bindAllAppsFromSnapshot(LoaderMemoryLogger logger) {
+        Context context = mApp.getContext();
+        ModelSnapshot.Snapshot snapshot = new ModelSnapshot(context)
+                .read(context, mApp.getInvariantDeviceProfile().dbFile);
+        if (snapshot == null || snapshot.apps.isEmpty()) {
+            return;
+        }
+        Object traceToken = TraceHelper.INSTANCE.beginSection("BindAllAppsFromSnapshot");
+        try {
+            List<IconRequestInfo<AppInfo>> iconRequestInfos = new ArrayList<>();
+            for (AppInfo app : snapshot.apps) {
+                iconRequestInfos.add(new IconRequestInfo<>(
+                        app, /* launcherActivityInfo= */ null, /* useLowResIcon= */ true));
+            }
+            mIconCache.getTitlesAndIconsInBulk(iconRequestInfos);
+            mResults.bindAllApps(snapshot.apps.toArray(AppInfo.EMPTY_ARRAY), snapshot.flags);
+            logger.addLog(Log.DEBUG, TAG,
+                    "Bound " + snapshot.apps.size() + " apps from the model snapshot");
+        } finally {
+            TraceHelper.INSTANCE.endSection(traceToken);
+        }
+    }
+
+    /**
+     * Saves the all apps list for the next cold start, or deletes the saved list when model
+     * snapshots are disabled. Must be called on the model thread. The list is serialized right
+     * away, but only written on {@code UI_HELPER_EXECUTOR} once it has not changed for
+     * {@link #MODEL_SNAPSHOT_WRITE_DELAY_MS}, so a burst of updates is written once.
+     */
+    static void updateModelSnapshot(Context context, AllAppsList allAppsList) {
+        ModelSnapshot snapshot = new ModelSnapshot(context);
+        Runnable update;
+        if (FeatureFlags.ENABLE_MODEL_SNAPSHOT.get()) {
+            byte[] payload = snapshot.encode(context,
+                    InvariantDeviceProfile.INSTANCE.get(context).dbFile,
+                    allAppsList.getFlags(), allAppsList.copyData());
+            if (payload == null) {
+                return;
+            }
+            update = () -> snapshot.write(payload);
+        } else {
+            update = snapshot::delete;
+        }
+        Handler handler = UI_HELPER_EXECUTOR.getHandler();
+        handler.removeCallbacksAndMessages(ModelSnapshot.class);
+        Message msg = Message.obtain(handler, update);
+        msg.obj = ModelSnapshot.class;
+        handler.sendMessageDelayed(msg, MODEL_SNAPSHOT_WRITE_DELAY_MS);
+    }
+
     public synchronized void stopLocked() {
         mStopped = true;
         this.notify();
@@ -841,6 +1012,10 @@ public class LoaderTask implements Runnable {
                     }
                 }
                 if (FeatureFlags.ENABLE_BULK_WORKSPACE_ICON_LOADING.get()) {
+                    mDeferredIconRequests.clear();
+                    if (mDeferOffscreenIcons) {
+                        iconRequestInfos = deferOffscreenIconRequests(iconRequestInfos, logger);
+                    }
                     Trace.beginSection("LoadWorkspaceIconsInBulk");
                     try {
                         mIconCache.getTitlesAndIconsInBulk(iconRequestInfos);
@@ -922,6 +1097,19 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    private void setPriorityComponents(IconCacheUpdateHandler updateHandler) {
+        // Render icons on the workspace first when many icons need to be updated.
+        HashSet<ComponentKey> components = new HashSet<>();
+        synchronized (mBgDataModel) {
+            for (ItemInfo info : mBgDataModel.itemsIdMap) {
+                if (info instanceof WorkspaceItemInfo && info.getTargetComponent() != null) {
+                    components.add(new ComponentKey(info.getTargetComponent(), info.user));
+                }
+            }
+        }
+        updateHandler.setPriorityComponents(components);
+    }
+
     private void sanitizeData() {
         Context context = mApp.getContext();
         ContentResolver contentResolver = context.getContentResolver();
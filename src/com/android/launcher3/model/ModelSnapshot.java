@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_ALL_APPS;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.UserHandle;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.pm.UserCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the all apps list, written after the model is loaded so that the
+ * next cold start can bind all apps before {@code LoaderTask} has queried the package manager.
+ *
+ * The snapshot only stores what is needed to find the entries in the icon cache: the component,
+ * the user, the title and section name, and the runtime flags. Any snapshot which cannot be
+ * verified is ignored, in which case the regular load is used.
+ * This class is not thread safe, the caller should ensure proper threading
+ */
+public class ModelSnapshot {
+
+    private static final String TAG = "ModelSnapshot";
+
+    private static final String FILE_NAME = "model_snapshot.bin";
+    private static final int MAGIC = 0x4C4D5331; // LMS1
+    private static final int VERSION = 1;
+    private static final int MAX_PAYLOAD_BYTES = 4 * 1024 * 1024;
+
+    private final AtomicFile mFile;
+
+    public ModelSnapshot(Context context) {
+        this(new AtomicFile(context.getFileStreamPath(FILE_NAME)));
+    }
+
+    ModelSnapshot(AtomicFile file) {
+        mFile = file;
+    }
+
+    /**
+     * Writes a snapshot of {@param apps} for the grid stored in {@param dbName}
+     */
+    @WorkerThread
+    public void write(Context context, String dbName, int flags, AppInfo[] apps) {
+        byte[] payload = encode(context, dbName, flags, apps);
+        if (payload != null) {
+            write(payload);
+        }
+    }
+
+    /**
+     * Serializes a snapshot of {@param apps} for the grid stored in {@param dbName}, to be passed
+     * to {@link #write(byte[])}. This only reads the apps, so it can be done on the thread owning
+     * them while the write happens elsewhere.
+     */
+    @Nullable
+    public byte[] encode(Context context, String dbName, int flags, AppInfo[] apps) {
+        UserCache userCache = UserCache.INSTANCE.get(context);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeUTF(String.valueOf(dbName));
+            out.writeInt(flags);
+            out.writeInt(apps.length);
+            for (AppInfo app : apps) {
+                out.writeUTF(app.componentName.flattenToShortString());
+                out.writeLong(userCache.getSerialNumberForUser(app.user));
+                out.writeUTF(app.title == null ? "" : app.title.toString());
+                out.writeUTF(app.sectionName == null ? "" : app.sectionName);
+                out.writeInt(app.runtimeStatusFlags);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to create model snapshot", e);
+            return null;
+        }
+        return payload.toByteArray();
+    }
+
+    /**
+     * Persists a snapshot serialized by {@link #encode}
+     */
+    @WorkerThread
+    public void write(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        FileOutputStream fos;
+        try {
+            fos = mFile.startWrite();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to persist model snapshot", e);
+            return;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(crc.getValue());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            mFile.failWrite(fos);
+            Log.e(TAG, "Unable to persist model snapshot", e);
+            return;
+        }
+        mFile.finishWrite(fos);
+    }
+
+    /**
+     * Reads the apps from the snapshot, or returns null if there is no usable snapshot for the
+     * grid stored in {@param dbName}
+     */
+    @WorkerThread
+    @Nullable
+    public Snapshot read(Context context, String dbName) {
+        return read(dbName, UserCache.INSTANCE.get(context)::getUserForSerialNumber);
+    }
+
+    /**
+     * Reads the apps from the snapshot
+     * @param userFn method to provide user handle for a given user serial
+     */
+    @WorkerThread
+    @Nullable
+    public Snapshot read(String dbName, LongFunction<UserHandle> userFn) {
+        byte[] bytes;
+        try (FileInputStream fis = mFile.openRead()) {
+            DataInputStream in = new DataInputStream(fis);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.d(TAG, "Ignoring snapshot with a different version");
+                return null;
+            }
+            long checksum = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+                Log.w(TAG, "Ignoring snapshot with invalid length " + length);
+                return null;
+            }
+            bytes = new byte[length];
+            in.readFully(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (crc.getValue() != checksum) {
+                Log.w(TAG, "Ignoring corrupted snapshot");
+                return null;
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to read model snapshot", e);
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (!String.valueOf(dbName).equals(in.readUTF())) {
+                // The grid changed since the snapshot was written
+                return null;
+            }
+            int flags = in.readInt();
+            int count = in.readInt();
+            List<AppInfo> apps = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ComponentName cn = ComponentName.unflattenFromString(in.readUTF());
+                UserHandle user = userFn.apply(in.readLong());
+                String title = in.readUTF();
+                String sectionName = in.readUTF();
+                int runtimeStatusFlags = in.readInt();
+                if (cn == null || user == null) {
+                    continue;
+                }
+                AppInfo app = new AppInfo(cn, title, user, AppInfo.makeLaunchIntent(cn));
+                app.container = CONTAINER_ALL_APPS;
+                app.sectionName = sectionName;
+                app.runtimeStatusFlags = runtimeStatusFlags;
+                apps.add(app);
+            }
+            return new Snapshot(flags, apps);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to parse model snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the snapshot, if any
+     */
+    @WorkerThread
+    public void delete() {
+        mFile.delete();
+    }
+
+    /**
+     * Apps and all apps flags read from a snapshot
+     */
+    public static class Snapshot {
+
+        public final int flags;
+        @NonNull
+        public final List<AppInfo> apps;
+
+        Snapshot(int flags, @NonNull List<AppInfo> apps) {
+            this.flags = flags;
+            this.apps = apps;
+        }
+    }
+}
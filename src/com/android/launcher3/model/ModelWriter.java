@@ -55,6 +55,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -84,6 +85,10 @@ public class ModelWriter {
     private boolean mPreparingToUndo;
     private final CellPosMapper mCellPosMapper;
 
+    // Updates which are not written yet, more updates can be added until the batch runs
+    private final Object mBatchLock = new Object();
+    private UpdateBatch mPendingBatch;
+
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
                        boolean hasVerticalHotseat, boolean verifyChanges, CellPosMapper cellPosMapper,
                        @Nullable Callbacks owner) {
@@ -174,13 +179,14 @@ public class ModelWriter {
         updateItemInfoProps(item, container, screenId, cellX, cellY);
         notifyItemModified(item);
 
-        enqueueDeleteRunnable(new UpdateItemRunnable(item, () ->
+        enqueueUpdate(item, true /* canUndo */, () ->
                 new ContentWriter(mContext)
                         .put(Favorites.CONTAINER, item.container)
                         .put(Favorites.CELLX, item.cellX)
                         .put(Favorites.CELLY, item.cellY)
                         .put(Favorites.RANK, item.rank)
-                        .put(Favorites.SCREEN, item.screenId)));
+                        .put(Favorites.SCREEN, item.screenId)
+                        .getValues(mContext));
     }
 
     /**
@@ -188,7 +194,6 @@ public class ModelWriter {
      * cellX, cellY have already been updated on the ItemInfos.
      */
     public void moveItemsInDatabase(final ArrayList<ItemInfo> items, int container, int screen) {
-        ArrayList<ContentValues> contentValues = new ArrayList<>();
         int count = items.size();
         notifyOtherCallbacks(c -> c.bindItemsModified(items));
 
@@ -203,9 +208,8 @@ public class ModelWriter {
             values.put(Favorites.RANK, item.rank);
             values.put(Favorites.SCREEN, item.screenId);
 
-            contentValues.add(values);
+            enqueueUpdate(item, true /* canUndo */, () -> values);
         }
-        enqueueDeleteRunnable(new UpdateItemsRunnable(items, contentValues));
     }
 
     /**
@@ -218,7 +222,7 @@ public class ModelWriter {
         item.spanY = spanY;
         notifyItemModified(item);
 
-        MODEL_EXECUTOR.execute(new UpdateItemRunnable(item, () ->
+        enqueueUpdate(item, false /* canUndo */, () ->
                 new ContentWriter(mContext)
                         .put(Favorites.CONTAINER, item.container)
                         .put(Favorites.CELLX, item.cellX)
@@ -226,7 +230,8 @@ public class ModelWriter {
                         .put(Favorites.RANK, item.rank)
                         .put(Favorites.SPANX, item.spanX)
                         .put(Favorites.SPANY, item.spanY)
-                        .put(Favorites.SCREEN, item.screenId)));
+                        .put(Favorites.SCREEN, item.screenId)
+                        .getValues(mContext));
     }
 
     /**
@@ -234,11 +239,11 @@ public class ModelWriter {
      */
     public void updateItemInDatabase(ItemInfo item) {
         notifyItemModified(item);
-        MODEL_EXECUTOR.execute(new UpdateItemRunnable(item, () -> {
+        enqueueUpdate(item, false /* canUndo */, () -> {
             ContentWriter writer = new ContentWriter(mContext);
             item.onAddToDatabase(writer);
-            return writer;
-        }));
+            return writer.getValues(mContext);
+        });
     }
 
     private void notifyItemModified(ItemInfo item) {
@@ -259,7 +264,7 @@ public class ModelWriter {
 
         ModelVerifier verifier = new ModelVerifier();
         final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-        MODEL_EXECUTOR.execute(() -> {
+        executeOnModelThread(() -> {
             // Write the item on background thread, as some properties might have been updated in
             // the background.
             final ContentWriter writer = new ContentWriter(mContext);
@@ -379,18 +384,57 @@ public class ModelWriter {
         if (mPreparingToUndo) {
             mDeleteRunnables.add(r);
         } else {
-            MODEL_EXECUTOR.execute(r);
+            executeOnModelThread(r);
         }
     }
 
     public void commitDelete() {
         mPreparingToUndo = false;
         for (Runnable runnable : mDeleteRunnables) {
-            MODEL_EXECUTOR.execute(runnable);
+            executeOnModelThread(runnable);
         }
         mDeleteRunnables.clear();
     }
 
+    /**
+     * Adds an update of {@param item} to the pending batch, or to the delete operations if they
+     * can be undone and {@param canUndo} is set. The values are read when the batch is written,
+     * so repeated updates of an item in the same batch are written once.
+     */
+    private void enqueueUpdate(ItemInfo item, boolean canUndo, Supplier<ContentValues> values) {
+        if (canUndo && mPreparingToUndo) {
+            UpdateBatch batch = new UpdateBatch();
+            batch.add(item, values);
+            mDeleteRunnables.add(batch);
+            return;
+        }
+        UpdateBatch batch;
+        boolean isNewBatch = false;
+        synchronized (mBatchLock) {
+            if (mPendingBatch == null) {
+                mPendingBatch = new UpdateBatch();
+                isNewBatch = true;
+            }
+            batch = mPendingBatch;
+            batch.add(item, values);
+        }
+        if (isNewBatch) {
+            // Updates made before the model thread gets to the batch are written with it
+            MODEL_EXECUTOR.execute(batch);
+        }
+    }
+
+    /**
+     * Runs {@param r} on the model thread after the pending updates, updates made after this call
+     * are written in a new batch to keep them ordered after {@param r}.
+     */
+    private void executeOnModelThread(Runnable r) {
+        synchronized (mBatchLock) {
+            mPendingBatch = null;
+        }
+        MODEL_EXECUTOR.execute(r);
+    }
+
     /**
      * Aborts a previous delete operation pending commit
      */
@@ -416,68 +460,72 @@ public class ModelWriter {
         });
     }
 
-    private class UpdateItemRunnable extends UpdateItemBaseRunnable {
-        private final ItemInfo mItem;
-        private final Supplier<ContentWriter> mWriter;
-        private final int mItemId;
-
-        UpdateItemRunnable(ItemInfo item, Supplier<ContentWriter> writer) {
-            mItem = item;
-            mWriter = writer;
-            mItemId = item.id;
+    /**
+     * Item updates written to the database in a single transaction
+     */
+    private class UpdateBatch implements Runnable {
+
+        // Keyed by the item id at the time of the update
+        private final LinkedHashMap<Integer, PendingUpdate> mUpdates = new LinkedHashMap<>();
+
+        void add(ItemInfo item, Supplier<ContentValues> values) {
+            PendingUpdate update = mUpdates.get(item.id);
+            if (update == null) {
+                update = new PendingUpdate(item);
+                mUpdates.put(update.itemId, update);
+            } else {
+                update.item = item;
+                update.stackTrace = new Throwable().getStackTrace();
+            }
+            update.values.add(values);
         }
 
         @Override
         public void run() {
-            Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.get().getValues(mContext),
-                    null, null);
-            updateItemArrays(mItem, mItemId);
-        }
-    }
-
-    private class UpdateItemsRunnable extends UpdateItemBaseRunnable {
-        private final ArrayList<ContentValues> mValues;
-        private final ArrayList<ItemInfo> mItems;
-
-        UpdateItemsRunnable(ArrayList<ItemInfo> items, ArrayList<ContentValues> values) {
-            mValues = values;
-            mItems = items;
-        }
+            synchronized (mBatchLock) {
+                if (mPendingBatch == this) {
+                    mPendingBatch = null;
+                }
+            }
 
-        @Override
-        public void run() {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-            int count = mItems.size();
-            for (int i = 0; i < count; i++) {
-                ItemInfo item = mItems.get(i);
-                final int itemId = item.id;
-                final Uri uri = Favorites.getContentUri(itemId);
-                ContentValues values = mValues.get(i);
-
-                ops.add(ContentProviderOperation.newUpdate(uri).withValues(values).build());
-                updateItemArrays(item, itemId);
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>(mUpdates.size());
+            for (PendingUpdate update : mUpdates.values()) {
+                ContentValues values = new ContentValues();
+                for (Supplier<ContentValues> supplier : update.values) {
+                    values.putAll(supplier.get());
+                }
+                ops.add(ContentProviderOperation.newUpdate(Favorites.getContentUri(update.itemId))
+                        .withValues(values).build());
             }
             try {
                 mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.e(TAG, "Error updating items in database", e);
+            }
+            for (PendingUpdate update : mUpdates.values()) {
+                update.updateItemArrays();
             }
         }
     }
 
-    private abstract class UpdateItemBaseRunnable implements Runnable {
-        private final StackTraceElement[] mStackTrace;
-        private final ModelVerifier mVerifier = new ModelVerifier();
-
-        UpdateItemBaseRunnable() {
-            mStackTrace = new Throwable().getStackTrace();
+    private class PendingUpdate {
+        final int itemId;
+        final ArrayList<Supplier<ContentValues>> values = new ArrayList<>(1);
+        // Verifies against the model bound when the item was first updated in the batch
+        final ModelVerifier verifier = new ModelVerifier();
+        ItemInfo item;
+        StackTraceElement[] stackTrace;
+
+        PendingUpdate(ItemInfo item) {
+            this.item = item;
+            itemId = item.id;
+            stackTrace = new Throwable().getStackTrace();
         }
 
-        protected void updateItemArrays(ItemInfo item, int itemId) {
+        void updateItemArrays() {
             // Lock on mBgLock *after* the db operation
             synchronized (mBgDataModel) {
-                checkItemInfoLocked(itemId, item, mStackTrace);
+                checkItemInfoLocked(itemId, item, stackTrace);
 
                 if (item.container != Favorites.CONTAINER_DESKTOP &&
                         item.container != Favorites.CONTAINER_HOTSEAT) {
@@ -513,7 +561,7 @@ public class ModelWriter {
                 } else {
                     mBgDataModel.workspaceItems.remove(modelItem);
                 }
-                mVerifier.verifyModel();
+                verifier.verifyModel();
             }
         }
     }
@@ -77,6 +77,8 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
 
     private static final boolean DEBUG = false;
     private static final String TAG = "PackageUpdatedTask";
+    private static final FileLog.LogEvent LOG_REMOVING_ICON =
+            FileLog.registerEvent(TAG, "Removing app icon %s");
 
     public static final int OP_NONE = 0;
     public static final int OP_ADD = 1;
@@ -165,7 +167,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                 break;
             case OP_REMOVE: {
                 for (int i = 0; i < N; i++) {
-                    FileLog.d(TAG, "Removing app icon" + packages[i]);
+                    FileLog.d(LOG_REMOVING_ICON, packages[i]);
                     iconCache.removeIconsForPkg(packages[i], mUser);
                     NeoPrefs prefs = Utilities.getOmegaPrefs(context);
                     if (packages[i].equals(prefs.getProfileIconPack().getValue())) {
@@ -80,6 +80,14 @@ public class IconRequestInfo<T extends ItemInfoWithIcon> {
         this.useLowResIcon = useLowResIcon;
     }
 
+    /**
+     * Returns a copy of this request which loads the icon in the given resolution.
+     */
+    public IconRequestInfo<T> withLowResIcon(boolean useLowResIcon) {
+        return new IconRequestInfo<>(itemInfo, launcherActivityInfo, packageName, resourceName,
+                iconBlob, useLowResIcon);
+    }
+
     /**
      * Loads this request's item info's title. This method should only be used on IconRequestInfos
      * for WorkspaceItemInfos.
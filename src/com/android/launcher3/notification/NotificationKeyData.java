@@ -27,6 +27,7 @@ import com.android.launcher3.Utilities;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * The key data associated with the notification, used to determine what to include
@@ -56,6 +57,62 @@ public class NotificationKeyData {
                         Notification.EXTRA_PEOPLE_LIST)));
     }
 
+    /**
+     * Returns the key data of {@param sbn}, which should have the same key. This instance is
+     * reused with the new count if its other data did not change, otherwise a new one is created.
+     */
+    public NotificationKeyData updateFromNotification(StatusBarNotification sbn) {
+        Notification notif = sbn.getNotification();
+        ArrayList<Person> people =
+                notif.extras.getParcelableArrayList(Notification.EXTRA_PEOPLE_LIST);
+        if (!Objects.equals(shortcutId, notif.getShortcutId()) || !hasSamePersonKeys(people)) {
+            return new NotificationKeyData(sbn.getKey(), notif.getShortcutId(), notif.number,
+                    extractPersonKeyOnly(people));
+        }
+        count = Math.max(1, notif.number);
+        return this;
+    }
+
+    /**
+     * Returns whether the keys of {@param people} are the same as
+     * {@link #personKeysFromNotification}, in any order, without allocating.
+     */
+    private boolean hasSamePersonKeys(@Nullable ArrayList<Person> people) {
+        int size = people == null ? 0 : people.size();
+        int keyCount = 0;
+        for (int i = 0; i < size; i++) {
+            String key = people.get(i).getKey();
+            if (key == null) {
+                continue;
+            }
+            keyCount++;
+            if (countOf(key, people) != countOf(key, personKeysFromNotification)) {
+                return false;
+            }
+        }
+        return keyCount == personKeysFromNotification.length;
+    }
+
+    private static int countOf(String key, ArrayList<Person> people) {
+        int count = 0;
+        for (int i = people.size() - 1; i >= 0; i--) {
+            if (key.equals(people.get(i).getKey())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countOf(String key, String[] keys) {
+        int count = 0;
+        for (String k : keys) {
+            if (key.equals(k)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     public static List<String> extractKeysOnly(
             @NonNull List<NotificationKeyData> notificationKeys) {
         List<String> keysOnly = new ArrayList<>(notificationKeys.size());
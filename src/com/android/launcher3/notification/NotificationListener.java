@@ -48,7 +48,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * A {@link NotificationListenerService} that sends updates to its
@@ -169,11 +168,15 @@ public class NotificationListener extends NotificationListenerService {
                 return true;
             }
             case MSG_NOTIFICATION_FULL_REFRESH:
-                List<StatusBarNotification> activeNotifications = null;
+                List<StatusBarNotification> activeNotifications;
                 if (sIsConnected) {
-                    activeNotifications = Arrays.stream(getActiveNotificationsSafely(null))
-                            .filter(this::notificationIsValidForUI)
-                            .collect(Collectors.toList());
+                    StatusBarNotification[] notifications = getActiveNotificationsSafely(null);
+                    activeNotifications = new ArrayList<>(notifications.length);
+                    for (StatusBarNotification sbn : notifications) {
+                        if (notificationIsValidForUI(sbn)) {
+                            activeNotifications.add(sbn);
+                        }
+                    }
                 } else {
                     activeNotifications = new ArrayList<>();
                 }
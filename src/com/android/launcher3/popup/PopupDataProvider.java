@@ -19,6 +19,7 @@ package com.android.launcher3.popup;
 import android.content.ComponentName;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
+import android.view.Choreographer;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -38,9 +39,12 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -53,7 +57,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     private static final boolean LOGD = false;
     private static final String TAG = "PopupDataProvider";
 
-    private final Consumer<Predicate<PackageUserKey>> mNotificationDotsChangeListener;
+    private final Consumer<Set<PackageUserKey>> mNotificationDotsChangeListener;
 
     /**
      * Maps launcher activity components to a count of how many shortcuts they have.
@@ -64,6 +68,10 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
      */
     private Map<PackageUserKey, DotInfo> mPackageUserToDotInfos = new HashMap<>();
 
+    // Reused by full refreshes
+    private final PackageUserKey mTmpPackageUserKey = new PackageUserKey(null, null);
+    private final HashMap<PackageUserKey, DotInfo> mTmpUpdatedDots = new HashMap<>();
+
     /** All installed widgets. */
     private List<WidgetsListBaseEntry> mAllWidgets = List.of();
     /** Widgets that can be recommended to the users. */
@@ -71,13 +79,44 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     private PopupDataChangeListener mChangeListener = PopupDataChangeListener.INSTANCE;
 
-    public PopupDataProvider(Consumer<Predicate<PackageUserKey>> notificationDotsChangeListener) {
+    /**
+     * Packages whose dots changed since the last dispatch. Notifications can be posted many times
+     * per frame, so dot updates are collected and dispatched once on the next frame.
+     */
+    private final Set<PackageUserKey> mPendingDotUpdates = new HashSet<>();
+    private final Choreographer.FrameCallback mDispatchDotUpdates = this::dispatchDotUpdates;
+    private boolean mDotUpdateScheduled = false;
+
+    public PopupDataProvider(Consumer<Set<PackageUserKey>> notificationDotsChangeListener) {
         mNotificationDotsChangeListener = notificationDotsChangeListener;
     }
 
-    private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
+    private void updateNotificationDots(PackageUserKey updatedDot) {
+        mPendingDotUpdates.add(updatedDot);
+        scheduleDotUpdates();
+    }
+
+    private void updateNotificationDots(Set<PackageUserKey> updatedDots) {
+        mPendingDotUpdates.addAll(updatedDots);
+        scheduleDotUpdates();
+    }
+
+    private void scheduleDotUpdates() {
+        if (!mDotUpdateScheduled) {
+            mDotUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mDispatchDotUpdates);
+        }
+    }
+
+    private void dispatchDotUpdates(long frameTimeNanos) {
+        mDotUpdateScheduled = false;
+        if (mPendingDotUpdates.isEmpty()) {
+            return;
+        }
+        Set<PackageUserKey> updatedDots = new HashSet<>(mPendingDotUpdates);
+        mPendingDotUpdates.clear();
         mNotificationDotsChangeListener.accept(updatedDots);
-        mChangeListener.onNotificationDotsUpdated(updatedDots);
+        mChangeListener.onNotificationDotsUpdated(updatedDots::contains);
     }
 
     @Override
@@ -89,7 +128,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             mPackageUserToDotInfos.put(postedPackageUserKey, dotInfo);
         }
         if (dotInfo.addOrUpdateNotificationKey(notificationKey)) {
-            updateNotificationDots(postedPackageUserKey::equals);
+            updateNotificationDots(postedPackageUserKey);
         }
     }
 
@@ -101,7 +140,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (oldDotInfo.getNotificationKeys().size() == 0) {
                 mPackageUserToDotInfos.remove(removedPackageUserKey);
             }
-            updateNotificationDots(removedPackageUserKey::equals);
+            updateNotificationDots(removedPackageUserKey);
             trimNotifications(mPackageUserToDotInfos);
         }
     }
@@ -109,38 +148,50 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     @Override
     public void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications) {
         if (activeNotifications == null) return;
-        // This will contain the PackageUserKeys which have updated dots.
-        HashMap<PackageUserKey, DotInfo> updatedDots = new HashMap<>(mPackageUserToDotInfos);
-        mPackageUserToDotInfos.clear();
-        for (StatusBarNotification notification : activeNotifications) {
-            PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
-            DotInfo dotInfo = mPackageUserToDotInfos.get(packageUserKey);
+        // Update the existing dots in place, only allocating for new packages and notifications
+        for (int i = 0; i < activeNotifications.size(); i++) {
+            StatusBarNotification notification = activeNotifications.get(i);
+            mTmpPackageUserKey.updateFromNotification(notification);
+            DotInfo dotInfo = mPackageUserToDotInfos.get(mTmpPackageUserKey);
             if (dotInfo == null) {
                 dotInfo = new DotInfo();
-                mPackageUserToDotInfos.put(packageUserKey, dotInfo);
+                mPackageUserToDotInfos.put(PackageUserKey.fromNotification(notification), dotInfo);
             }
-            dotInfo.addOrUpdateNotificationKey(NotificationKeyData.fromNotification(notification));
+            if (!dotInfo.isRefreshing()) {
+                dotInfo.startRefresh();
+            }
+            NotificationKeyData keyData = dotInfo.findNotificationKey(notification.getKey());
+            if (keyData == null) {
+                keyData = NotificationKeyData.fromNotification(notification);
+            } else {
+                keyData = keyData.updateFromNotification(notification);
+            }
+            dotInfo.addRefreshedNotificationKey(keyData);
         }
 
-        // Add and remove from updatedDots so it contains the PackageUserKeys of updated dots.
-        for (PackageUserKey packageUserKey : mPackageUserToDotInfos.keySet()) {
-            DotInfo prevDot = updatedDots.get(packageUserKey);
-            DotInfo newDot = mPackageUserToDotInfos.get(packageUserKey);
-            if (prevDot == null
-                    || prevDot.getNotificationCount() != newDot.getNotificationCount()) {
-                updatedDots.put(packageUserKey, newDot);
-            } else {
-                // No need to update the dot if it already existed (no visual change).
-                // Note that if the dot was removed entirely, we wouldn't reach this point because
-                // this loop only includes active notifications added above.
-                updatedDots.remove(packageUserKey);
+        // Collect the PackageUserKeys of updated dots, dots without active notifications are
+        // emptied and removed.
+        mTmpUpdatedDots.clear();
+        Iterator<Map.Entry<PackageUserKey, DotInfo>> iterator =
+                mPackageUserToDotInfos.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<PackageUserKey, DotInfo> entry = iterator.next();
+            DotInfo dotInfo = entry.getValue();
+            if (!dotInfo.isRefreshing()) {
+                dotInfo.startRefresh();
+            }
+            if (dotInfo.finishRefresh()) {
+                mTmpUpdatedDots.put(entry.getKey(), dotInfo);
+            }
+            if (dotInfo.getNotificationKeys().isEmpty()) {
+                iterator.remove();
             }
         }
 
-        if (!updatedDots.isEmpty()) {
-            updateNotificationDots(updatedDots::containsKey);
+        if (!mTmpUpdatedDots.isEmpty()) {
+            updateNotificationDots(mTmpUpdatedDots.keySet());
         }
-        trimNotifications(updatedDots);
+        trimNotifications(mTmpUpdatedDots);
     }
 
     private void trimNotifications(Map<PackageUserKey, DotInfo> updatedDots) {
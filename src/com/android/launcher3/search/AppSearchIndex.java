@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import androidx.annotation.NonNull;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Search index over app titles, kept alongside {@link com.android.launcher3.model.AllAppsList}.
+ *
+ * Word break offsets and the lower case title are computed once per title instead of on every
+ * keystroke, a single {@link StringMatcher} is reused across queries, and a query extending the
+ * previous one only rescans the previous matches.
+ *
+ * This class is not thread safe and is expected to be used on the model thread only.
+ */
+public class AppSearchIndex {
+
+    private final IdentityHashMap<AppInfo, Entry> mEntries = new IdentityHashMap<>();
+    private final StringMatcher mMatcher = StringMatcher.getInstance();
+
+    private String mLastQuery;
+    private boolean mLastQueryFuzzy;
+    private ArrayList<AppInfo> mLastMatches;
+    private int mLastAppsGeneration;
+
+    /**
+     * Indexes or re-indexes the title of the provided app.
+     */
+    public void onAppUpdated(@NonNull AppInfo info) {
+        mEntries.put(info, new Entry(info.title));
+        invalidateLastResult();
+    }
+
+    /**
+     * Removes the provided app from the index.
+     */
+    public void onAppRemoved(@NonNull AppInfo info) {
+        mEntries.remove(info);
+        invalidateLastResult();
+    }
+
+    /**
+     * Removes all the apps from the index.
+     */
+    public void clear() {
+        mEntries.clear();
+        invalidateLastResult();
+    }
+
+    /**
+     * Returns all the apps in {@code apps} whose title matches {@code query}, in order. Apps
+     * which are not indexed yet, or whose title changed without {@link #onAppUpdated}, are
+     * indexed on the fly the next time they are scanned.
+     *
+     * @param appsGeneration a number which changes whenever {@code apps} or their titles change,
+     *                       see {@link com.android.launcher3.model.AllAppsList#getGeneration}
+     */
+    public ArrayList<AppInfo> search(@NonNull List<AppInfo> apps, int appsGeneration,
+            @NonNull String query) {
+        final String queryLower = query.toLowerCase();
+        final boolean fuzzy = StringMatcherUtility.requestSimpleFuzzySearch(queryLower);
+
+        // Every title matching a longer query also matches its prefix, so only the previous
+        // matches need to be checked again.
+        List<AppInfo> candidates = apps;
+        if (mLastMatches != null && mLastQueryFuzzy == fuzzy
+                && queryLower.startsWith(mLastQuery) && mLastAppsGeneration == appsGeneration) {
+            candidates = mLastMatches;
+        }
+
+        ArrayList<AppInfo> matches = new ArrayList<>();
+        int total = candidates.size();
+        for (int i = 0; i < total; i++) {
+            AppInfo info = candidates.get(i);
+            if (getEntry(info).matches(queryLower, fuzzy, mMatcher)) {
+                matches.add(info);
+            }
+        }
+
+        mLastQuery = queryLower;
+        mLastQueryFuzzy = fuzzy;
+        mLastMatches = matches;
+        mLastAppsGeneration = appsGeneration;
+        return matches;
+    }
+
+    private Entry getEntry(AppInfo info) {
+        Entry entry = mEntries.get(info);
+        if (entry == null || entry.title != info.title) {
+            entry = new Entry(info.title);
+            mEntries.put(info, entry);
+        }
+        return entry;
+    }
+
+    private void invalidateLastResult() {
+        mLastQuery = null;
+        mLastMatches = null;
+    }
+
+    private static class Entry {
+
+        final CharSequence title;
+        final String target;
+        final String targetLower;
+        final int[] breakOffsets;
+
+        Entry(CharSequence title) {
+            this.title = title;
+            target = title == null ? "" : title.toString();
+            targetLower = target.toLowerCase();
+            breakOffsets = StringMatcherUtility.getBreakOffsets(target);
+        }
+
+        boolean matches(String queryLower, boolean fuzzy, StringMatcher matcher) {
+            if (fuzzy) {
+                return target.length() >= queryLower.length() && targetLower.contains(queryLower);
+            }
+            return StringMatcherUtility.matches(queryLower, target, breakOffsets, matcher);
+        }
+    }
+}
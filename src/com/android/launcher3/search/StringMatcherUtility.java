@@ -17,6 +17,7 @@
 package com.android.launcher3.search;
 
 import java.text.Collator;
+import java.util.Arrays;
 
 /**
  * Utilities for matching query string to target string.
@@ -58,6 +59,60 @@ public class StringMatcherUtility {
         return false;
     }
 
+    /**
+     * Returns the offsets in {@code target} at which a word/phrase starts, in increasing order.
+     * The result can be cached and passed to {@link #matches(String, String, int[], StringMatcher)}
+     * to avoid recomputing character types for every query.
+     */
+    public static int[] getBreakOffsets(String target) {
+        int targetLength = target.length();
+        if (targetLength == 0) {
+            return new int[0];
+        }
+        int[] offsets = new int[targetLength];
+        int count = 0;
+
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(target.codePointAt(0));
+        for (int i = 0; i < targetLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (targetLength - 1)
+                    ? Character.getType(target.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (isBreak(thisType, lastType, nextType)) {
+                offsets[count++] = i;
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Same as {@link #matches(String, String, StringMatcher)} but uses the precomputed
+     * {@code breakOffsets} of {@code target}, see {@link #getBreakOffsets(String)}. Callers are
+     * responsible for the simple fuzzy search used for Chinese queries.
+     */
+    public static boolean matches(String query, String target, int[] breakOffsets,
+            StringMatcher matcher) {
+        int queryLength = query.length();
+        int targetLength = target.length();
+
+        if (targetLength < queryLength || queryLength <= 0) {
+            return false;
+        }
+
+        int end = targetLength - queryLength;
+        for (int offset : breakOffsets) {
+            if (offset > end) {
+                break;
+            }
+            if (matcher.matches(query, target.substring(offset, offset + queryLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns true if the current point should be a break point. Following cases
      * are considered as break points:
@@ -147,7 +202,7 @@ public class StringMatcherUtility {
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
@@ -130,7 +130,8 @@ public class SecondaryDisplayLauncher extends BaseDraggingActivity
 
         mDragController.addDragListener(this);
         mPopupDataProvider = new PopupDataProvider(
-                mAppsView.getAppsStore()::updateNotificationDots);
+                updatedDots -> mAppsView.getAppsStore().updateNotificationDots(
+                        updatedDots::contains));
 
         mModel.addCallbacksAndLoad(this);
     }
@@ -60,6 +60,7 @@ import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.config.FlagTogglerPrefUi;
+import com.android.launcher3.logging.LocalMetrics;
 import com.android.launcher3.secondarydisplay.SecondaryDisplayLauncher;
 import com.android.launcher3.uioverrides.plugins.PluginManagerWrapper;
 import com.android.launcher3.util.OnboardingPrefs;
@@ -108,6 +109,7 @@ public class DeveloperOptionsFragment extends PreferenceFragmentCompat {
         loadPluginPrefs();
         maybeAddSandboxCategory();
         addOnboardingPrefsCatergory();
+        addMetricsCategory();
 
         if (getActivity() != null) {
             getActivity().setTitle("Developer Options");
@@ -400,6 +402,39 @@ public class DeveloperOptionsFragment extends PreferenceFragmentCompat {
         }
     }
 
+    private void addMetricsCategory() {
+        PreferenceCategory metricsCategory = newCategory("Performance Metrics");
+        metricsCategory.setSummary("Recorded on this device since launcher started.");
+        LocalMetrics metrics = LocalMetrics.INSTANCE;
+
+        Preference latencyPref = new Preference(getContext());
+        latencyPref.setTitle("Latencies (ms)");
+        metricsCategory.addPreference(latencyPref);
+        Preference countPref = new Preference(getContext());
+        countPref.setTitle("Event counts");
+        metricsCategory.addPreference(countPref);
+        Runnable updateSummaries = () -> {
+            List<String> latencies = metrics.getLatencySummaries();
+            latencyPref.setSummary(latencies.isEmpty()
+                    ? "No latency recorded" : String.join("\n", latencies));
+            List<String> counts = metrics.getCountSummaries();
+            countPref.setSummary(counts.isEmpty()
+                    ? "No event recorded" : String.join("\n", counts));
+        };
+        updateSummaries.run();
+
+        Preference resetPref = new Preference(getContext());
+        resetPref.setTitle("Reset metrics");
+        resetPref.setSummary("Tap to clear the recorded latencies and counts");
+        resetPref.setOnPreferenceClickListener(preference -> {
+            metrics.reset();
+            updateSummaries.run();
+            Toast.makeText(getContext(), "Reset metrics", Toast.LENGTH_SHORT).show();
+            return true;
+        });
+        metricsCategory.addPreference(resetPref);
+    }
+
     private String toName(String action) {
         String str = action.replace("com.android.systemui.action.PLUGIN_", "")
                 .replace("com.android.launcher3.action.PLUGIN_", "");
@@ -106,7 +106,8 @@ public class ItemClickHandler {
         } else if (tag instanceof AppInfo) {
             startAppShortcutOrInfoActivity(v, (AppInfo) tag, launcher);
             MODEL_EXECUTOR.execute(() -> {
-                if (Utilities.getOmegaPrefs(launcher).getDrawerSortMode().getValue() == Config.SORT_MOST_USED) {
+                int sortMode = Utilities.getOmegaPrefs(launcher).getDrawerSortMode().getValue();
+                if (sortMode == Config.SORT_MOST_USED || sortMode == Config.SORT_FREQUENTLY_USED) {
                     Utilities.getOmegaPrefs(launcher).reloadApps();
                 }
             });
@@ -4,8 +4,13 @@ import android.graphics.Rect;
 
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Searches over many candidate positions first pack each row into a bitmask, so that a span can
+ * be checked for all the columns of a row with a few bitwise operations.
  */
 public class GridOccupancy extends AbsGridOccupancy {
 
@@ -14,10 +19,14 @@ public class GridOccupancy extends AbsGridOccupancy {
 
     public final boolean[][] cells;
 
+    // Reused by searches, rows are packed on demand since cells can be written directly
+    private final long[] mRowMasks;
+
     public GridOccupancy(int countX, int countY) {
         mCountX = countX;
         mCountY = countY;
         cells = new boolean[countX][countY];
+        mRowMasks = new long[countY];
     }
 
     /**
@@ -30,14 +39,111 @@ public class GridOccupancy extends AbsGridOccupancy {
      * @return true if a vacant cell was found
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
-        return super.findVacantCell(vacantOut, cells, mCountX, mCountY, spanX, spanY);
+        return super.findVacantCell(vacantOut, cells, mCountX, mCountY, spanX, spanY,
+                mRowMasks);
+    }
+
+    /**
+     * Find the first vacant cell in row order, starting at {@param startX} in row
+     * {@param startY} and at the first column in the following rows.
+     *
+     * @param vacantOut Holds the x and y coordinate of the vacant cell
+     * @return true if a vacant cell was found
+     */
+    public boolean findVacantCell(int[] vacantOut, int startX, int startY, int spanX, int spanY) {
+        if (!canUseRowMasks(mCountX)) {
+            for (int y = Math.max(startY, 0); y < mCountY; y++) {
+                for (int x = y == startY ? Math.max(startX, 0) : 0; x < mCountX; x++) {
+                    if (isRegionVacant(x, y, spanX, spanY)) {
+                        vacantOut[0] = x;
+                        vacantOut[1] = y;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        packRows(cells, mCountX, mCountY, mRowMasks);
+        for (int y = Math.max(startY, 0); y < mCountY; y++) {
+            long origins = getVacantOrigins(mRowMasks, mCountX, mCountY, y, spanX, spanY);
+            if (y == startY && startX > 0) {
+                origins = startX >= Long.SIZE ? 0 : origins & (-1L << startX);
+            }
+            if (origins != 0) {
+                vacantOut[0] = Long.numberOfTrailingZeros(origins);
+                vacantOut[1] = y;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills {@param out} with, for each row, the bitmask of the columns at which a region of
+     * {@param spanX} by {@param spanY} cells is vacant, the lowest bit being the first column.
+     *
+     * @param out array of at least one entry per row
+     * @return false if the grid has too many columns for its rows to be packed in a long
+     */
+    public boolean getVacantOrigins(int spanX, int spanY, long[] out) {
+        if (!canUseRowMasks(mCountX)) {
+            return false;
+        }
+        packRows(cells, mCountX, mCountY, mRowMasks);
+        for (int y = 0; y < mCountY; y++) {
+            out[y] = getVacantOrigins(mRowMasks, mCountX, mCountY, y, spanX, spanY);
+        }
+        return true;
+    }
+
+    static boolean canUseRowMasks(int countX) {
+        return countX <= Long.SIZE;
+    }
+
+    /**
+     * Packs every row of {@param cells} into {@param out}, with bit x set for occupied column x
+     */
+    static void packRows(boolean[][] cells, int countX, int countY, long[] out) {
+        for (int y = 0; y < countY; y++) {
+            out[y] = 0;
+        }
+        for (int x = 0; x < countX; x++) {
+            boolean[] column = cells[x];
+            long bit = 1L << x;
+            for (int y = 0; y < countY; y++) {
+                if (column[y]) {
+                    out[y] |= bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bitmask of the columns of row {@param y} at which a region of {@param spanX}
+     * by {@param spanY} cells is vacant, given the rows packed by {@link #packRows}.
+     */
+    static long getVacantOrigins(long[] rows, int countX, int countY, int y, int spanX,
+            int spanY) {
+        if (y < 0 || spanX <= 0 || spanY <= 0 || spanX > countX || y + spanY > countY) {
+            return 0;
+        }
+        long occupied = 0;
+        for (int j = y; j < y + spanY; j++) {
+            occupied |= rows[j];
+        }
+        // A column is blocked if any of the spanX columns starting at it is occupied
+        long blocked = occupied;
+        for (int i = 1; i < spanX; i++) {
+            blocked |= occupied >>> i;
+        }
+        int originCount = countX - spanX + 1;
+        long validOrigins = originCount >= Long.SIZE ? -1L : (1L << originCount) - 1;
+        return ~blocked & validOrigins;
     }
 
     public void copyTo(GridOccupancy dest) {
         for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
-            }
+            System.arraycopy(cells[i], 0, dest.cells[i], 0, mCountY);
         }
     }
 
@@ -48,8 +154,9 @@ public class GridOccupancy extends AbsGridOccupancy {
             return false;
         }
         for (int i = x; i <= x2; i++) {
+            boolean[] column = cells[i];
             for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
+                if (column[j]) {
                     return false;
                 }
             }
@@ -59,9 +166,10 @@ public class GridOccupancy extends AbsGridOccupancy {
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
+        int endY = Math.min(cellY + spanY, mCountY);
         for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+            if (endY > cellY) {
+                Arrays.fill(cells[x], cellY, endY, value);
             }
         }
     }
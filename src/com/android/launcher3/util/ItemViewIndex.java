@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.model.data.FolderInfo;
+import com.android.launcher3.model.data.FolderInfo.FolderListener;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index of the item views bound in the workspace and hotseat, by the package and user of their
+ * item, so that updates for a package do not need to walk every bound view.
+ *
+ * Item views are added and removed by their {@link com.android.launcher3.ShortcutAndWidgetContainer}
+ * while it is attached. Folder icons are also indexed by the items they contain, which is kept up
+ * to date by listening to their {@link FolderInfo}.
+ */
+@UiThread
+public class ItemViewIndex {
+
+    private final HashMap<PackageUserKey, List<View>> mViews = new HashMap<>();
+    private final HashMap<View, PackageUserKey> mViewKeys = new HashMap<>();
+
+    private final HashMap<PackageUserKey, List<FolderIcon>> mFolderIcons = new HashMap<>();
+    private final HashMap<FolderIcon, FolderContentsTracker> mFolderTrackers = new HashMap<>();
+
+    /**
+     * Adds {@param view} to the index, using the item set as its tag
+     */
+    public void add(View view) {
+        if (mViewKeys.containsKey(view) || mFolderTrackers.containsKey(view)) {
+            return;
+        }
+        if (view instanceof FolderIcon && view.getTag() instanceof FolderInfo) {
+            FolderIcon folderIcon = (FolderIcon) view;
+            FolderContentsTracker tracker =
+                    new FolderContentsTracker(folderIcon, (FolderInfo) view.getTag());
+            mFolderTrackers.put(folderIcon, tracker);
+            tracker.start();
+            return;
+        }
+        if (!(view.getTag() instanceof ItemInfo)) {
+            return;
+        }
+        PackageUserKey key = PackageUserKey.fromItemInfo((ItemInfo) view.getTag());
+        if (key != null) {
+            mViewKeys.put(view, key);
+            addToList(mViews, key, view);
+        }
+    }
+
+    /**
+     * Removes {@param view} from the index
+     */
+    public void remove(View view) {
+        PackageUserKey key = mViewKeys.remove(view);
+        if (key != null) {
+            removeFromList(mViews, key, view);
+            return;
+        }
+        FolderContentsTracker tracker = mFolderTrackers.remove(view);
+        if (tracker != null) {
+            tracker.stop();
+        }
+    }
+
+    /**
+     * Returns the item views, outside of folders, for items of {@param key}
+     */
+    @NonNull
+    public List<View> getViews(PackageUserKey key) {
+        List<View> views = mViews.get(key);
+        return views == null ? Collections.emptyList() : new ArrayList<>(views);
+    }
+
+    /**
+     * Returns the folder icons of folders containing items of {@param key}
+     */
+    @NonNull
+    public List<FolderIcon> getFolderIcons(PackageUserKey key) {
+        List<FolderIcon> icons = mFolderIcons.get(key);
+        return icons == null ? Collections.emptyList() : new ArrayList<>(icons);
+    }
+
+    private static <T> void addToList(HashMap<PackageUserKey, List<T>> map,
+            PackageUserKey key, T value) {
+        List<T> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+
+    private static <T> void removeFromList(HashMap<PackageUserKey, List<T>> map,
+            PackageUserKey key, T value) {
+        List<T> list = map.get(key);
+        if (list != null) {
+            list.remove(value);
+            if (list.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Keeps the keys of a folder's contents indexed while its icon is bound
+     */
+    private class FolderContentsTracker implements FolderListener {
+
+        private final FolderIcon mFolderIcon;
+        private final FolderInfo mFolderInfo;
+        private final Set<PackageUserKey> mKeys = new HashSet<>();
+
+        FolderContentsTracker(FolderIcon folderIcon, FolderInfo folderInfo) {
+            mFolderIcon = folderIcon;
+            mFolderInfo = folderInfo;
+        }
+
+        void start() {
+            mFolderInfo.addListener(this);
+            updateKeys();
+        }
+
+        void stop() {
+            mFolderInfo.removeListener(this);
+            for (PackageUserKey key : mKeys) {
+                removeFromList(mFolderIcons, key, mFolderIcon);
+            }
+            mKeys.clear();
+        }
+
+        private void updateKeys() {
+            Set<PackageUserKey> newKeys = new HashSet<>();
+            for (WorkspaceItemInfo item : mFolderInfo.contents) {
+                PackageUserKey key = PackageUserKey.fromItemInfo(item);
+                if (key != null) {
+                    newKeys.add(key);
+                }
+            }
+            for (PackageUserKey key : mKeys) {
+                if (!newKeys.contains(key)) {
+                    removeFromList(mFolderIcons, key, mFolderIcon);
+                }
+            }
+            for (PackageUserKey key : newKeys) {
+                if (!mKeys.contains(key)) {
+                    addToList(mFolderIcons, key, mFolderIcon);
+                }
+            }
+            mKeys.clear();
+            mKeys.addAll(newKeys);
+        }
+
+        @Override
+        public void onAdd(WorkspaceItemInfo item, int rank) {
+            // Keys are updated in onItemsChanged
+        }
+
+        @Override
+        public void onRemove(List<WorkspaceItemInfo> item) {
+            // Keys are updated in onItemsChanged
+        }
+
+        @Override
+        public void onItemsChanged(boolean animate) {
+            updateKeys();
+        }
+
+        @Override
+        public void onTitleChanged(CharSequence title) { }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.View.OnAttachStateChangeListener;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver.OnDrawListener;
+
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.view.ViewCaptureData.ExportedData;
+import com.android.launcher3.view.ViewCaptureData.FrameData;
+import com.android.launcher3.view.ViewCaptureData.ViewNode;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the properties of a view hierarchy on every frame into preallocated ring buffers, so
+ * that the last few seconds of UI can be exported as {@link ExportedData} from a bug report.
+ *
+ * Each frame is stored as a pre-order list of nodes in parallel primitive arrays, so a capture
+ * does not allocate. Conversion to protobuf only happens when the data is dumped.
+ */
+public class ViewCapture implements OnDrawListener, OnAttachStateChangeListener {
+
+    /** Number of frames kept in memory */
+    @VisibleForTesting
+    static final int MAX_FRAMES = 256;
+    /** Number of nodes kept in memory, shared by all frames. Must be a power of two. */
+    @VisibleForTesting
+    static final int MAX_NODES = 1 << 14;
+    /** Views beyond this limit are dropped from a frame, to bound the per-frame cost */
+    @VisibleForTesting
+    static final int MAX_NODES_PER_FRAME = 2048;
+
+    private static final int FLAG_WILL_NOT_DRAW = 1 << 0;
+    private static final int FLAG_CLIP_CHILDREN = 1 << 1;
+
+    private final Object mLock = new Object();
+
+    // Node ring, indexed by the absolute node position masked with MAX_NODES - 1
+    private final int[] mClassIndex = new int[MAX_NODES];
+    private final int[] mHashCode = new int[MAX_NODES];
+    private final int[] mId = new int[MAX_NODES];
+    private final int[] mLeft = new int[MAX_NODES];
+    private final int[] mTop = new int[MAX_NODES];
+    private final int[] mWidth = new int[MAX_NODES];
+    private final int[] mHeight = new int[MAX_NODES];
+    private final int[] mScrollX = new int[MAX_NODES];
+    private final int[] mScrollY = new int[MAX_NODES];
+    private final int[] mVisibility = new int[MAX_NODES];
+    private final int[] mFlags = new int[MAX_NODES];
+    private final int[] mChildCount = new int[MAX_NODES];
+    private final float[] mTranslationX = new float[MAX_NODES];
+    private final float[] mTranslationY = new float[MAX_NODES];
+    private final float[] mScaleX = new float[MAX_NODES];
+    private final float[] mScaleY = new float[MAX_NODES];
+    private final float[] mAlpha = new float[MAX_NODES];
+    private final float[] mElevation = new float[MAX_NODES];
+
+    // Frame ring, indexed by the absolute frame number modulo MAX_FRAMES
+    private final long[] mFrameTime = new long[MAX_FRAMES];
+    private final long[] mFrameStart = new long[MAX_FRAMES];
+
+    private final HashMap<Class<?>, Integer> mClassIndexMap = new HashMap<>();
+    private final ArrayList<String> mClassNames = new ArrayList<>();
+
+    private long mNodesWritten;
+    private long mFramesWritten;
+    private int mFrameNodeCount;
+    private boolean mFrameTruncated;
+
+    private long mTotalCaptureNanos;
+    private long mMaxCaptureNanos;
+    private int mTruncatedFrames;
+
+    private View mRoot;
+    private Resources mResources;
+
+    /**
+     * Starts capturing {@param root} and its descendants on every frame
+     */
+    @UiThread
+    public void attachTo(View root) {
+        detach();
+        mRoot = root;
+        mRoot.addOnAttachStateChangeListener(this);
+        if (mRoot.isAttachedToWindow()) {
+            mRoot.getViewTreeObserver().addOnDrawListener(this);
+        }
+    }
+
+    /**
+     * Stops capturing frames. The already captured frames are kept for dumping.
+     */
+    @UiThread
+    public void detach() {
+        if (mRoot != null) {
+            mRoot.removeOnAttachStateChangeListener(this);
+            mRoot.getViewTreeObserver().removeOnDrawListener(this);
+            mRoot = null;
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        v.getViewTreeObserver().addOnDrawListener(this);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        v.getViewTreeObserver().removeOnDrawListener(this);
+    }
+
+    @Override
+    public void onDraw() {
+        if (mRoot != null) {
+            captureFrame(mRoot, SystemClock.uptimeMillis());
+        }
+    }
+
+    @VisibleForTesting
+    void captureFrame(View root, long timestamp) {
+        long start = System.nanoTime();
+        synchronized (mLock) {
+            long frameStart = mNodesWritten;
+            mResources = root.getResources();
+            mFrameNodeCount = 0;
+            mFrameTruncated = false;
+            captureView(root);
+            if (mFrameTruncated) {
+                mTruncatedFrames++;
+            }
+
+            int frame = (int) (mFramesWritten % MAX_FRAMES);
+            mFrameTime[frame] = timestamp;
+            mFrameStart[frame] = frameStart;
+            mFramesWritten++;
+
+            long duration = System.nanoTime() - start;
+            mTotalCaptureNanos += duration;
+            mMaxCaptureNanos = Math.max(mMaxCaptureNanos, duration);
+        }
+    }
+
+    private void captureView(View view) {
+        int i = (int) (mNodesWritten & (MAX_NODES - 1));
+        mNodesWritten++;
+        mFrameNodeCount++;
+
+        mClassIndex[i] = getClassIndex(view.getClass());
+        mHashCode[i] = System.identityHashCode(view);
+        mId[i] = view.getId();
+        mLeft[i] = view.getLeft();
+        mTop[i] = view.getTop();
+        mWidth[i] = view.getWidth();
+        mHeight[i] = view.getHeight();
+        mScrollX[i] = view.getScrollX();
+        mScrollY[i] = view.getScrollY();
+        mVisibility[i] = view.getVisibility();
+        mTranslationX[i] = view.getTranslationX();
+        mTranslationY[i] = view.getTranslationY();
+        mScaleX[i] = view.getScaleX();
+        mScaleY[i] = view.getScaleY();
+        mAlpha[i] = view.getAlpha();
+        mElevation[i] = view.getElevation();
+
+        int flags = view.willNotDraw() ? FLAG_WILL_NOT_DRAW : 0;
+        int childCount = 0;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            if (group.getClipChildren()) {
+                flags |= FLAG_CLIP_CHILDREN;
+            }
+            // Children of a gone view are never drawn, skip them to keep the frame small
+            if (view.getVisibility() != View.GONE) {
+                int count = group.getChildCount();
+                for (; childCount < count; childCount++) {
+                    if (mFrameNodeCount >= MAX_NODES_PER_FRAME) {
+                        mFrameTruncated = true;
+                        break;
+                    }
+                    captureView(group.getChildAt(childCount));
+                }
+            }
+        }
+        mFlags[i] = flags;
+        mChildCount[i] = childCount;
+    }
+
+    private int getClassIndex(Class<?> c) {
+        Integer index = mClassIndexMap.get(c);
+        if (index == null) {
+            index = mClassNames.size();
+            mClassNames.add(c.getName());
+            mClassIndexMap.put(c, index);
+        }
+        return index;
+    }
+
+    /**
+     * Converts all the frames which are still in the ring buffer to a protobuf, oldest first.
+     */
+    @VisibleForTesting
+    ExportedData exportData() {
+        Snapshot snapshot = new Snapshot();
+        synchronized (mLock) {
+            snapshot.copyFrom(this);
+        }
+
+        ExportedData.Builder data = ExportedData.newBuilder().addAllClassname(snapshot.classNames);
+        SparseArray<String> idNames = new SparseArray<>();
+        int[] cursor = new int[1];
+        for (int f = 0; f < snapshot.frameTime.length; f++) {
+            cursor[0] = snapshot.frameStart[f];
+            data.addFrameData(FrameData.newBuilder()
+                    .setTimestamp(snapshot.frameTime[f])
+                    .setNode(buildNode(snapshot, cursor, idNames)));
+        }
+        return data.build();
+    }
+
+    private ViewNode.Builder buildNode(Snapshot s, int[] cursor, SparseArray<String> idNames) {
+        int i = cursor[0]++;
+        ViewNode.Builder node = ViewNode.newBuilder()
+                .setClassnameIndex(s.classIndex[i])
+                .setHashcode(s.hashCode[i])
+                .setId(getIdName(s.id[i], idNames))
+                .setLeft(s.left[i])
+                .setTop(s.top[i])
+                .setWidth(s.width[i])
+                .setHeight(s.height[i])
+                .setScrollX(s.scrollX[i])
+                .setScrollY(s.scrollY[i])
+                .setTranslationX(s.translationX[i])
+                .setTranslationY(s.translationY[i])
+                .setScaleX(s.scaleX[i])
+                .setScaleY(s.scaleY[i])
+                .setAlpha(s.alpha[i])
+                .setWillNotDraw((s.flags[i] & FLAG_WILL_NOT_DRAW) != 0)
+                .setClipChildren((s.flags[i] & FLAG_CLIP_CHILDREN) != 0)
+                .setVisibility(s.visibility[i])
+                .setElevation(s.elevation[i]);
+        for (int c = s.childCount[i]; c > 0; c--) {
+            node.addChildren(buildNode(s, cursor, idNames));
+        }
+        return node;
+    }
+
+    private String getIdName(int id, SparseArray<String> idNames) {
+        if (id == View.NO_ID) {
+            return "NO_ID";
+        }
+        String name = idNames.get(id);
+        if (name == null) {
+            try {
+                name = mResources.getResourceEntryName(id);
+            } catch (Resources.NotFoundException e) {
+                name = "id/0x" + Integer.toHexString(id);
+            }
+            idNames.put(id, name);
+        }
+        return name;
+    }
+
+    /**
+     * Prints the capture cost and, if {@param includeData} is set, the captured frames as a
+     * base64 encoded {@link ExportedData}.
+     */
+    public void dump(String prefix, PrintWriter writer, boolean includeData) {
+        long frames, nodes, totalNanos, maxNanos;
+        int truncated;
+        synchronized (mLock) {
+            frames = mFramesWritten;
+            nodes = mNodesWritten;
+            totalNanos = mTotalCaptureNanos;
+            maxNanos = mMaxCaptureNanos;
+            truncated = mTruncatedFrames;
+        }
+        writer.println(prefix + "ViewCapture:");
+        writer.println(prefix + "\tframes=" + frames + " nodes=" + nodes
+                + " truncatedFrames=" + truncated);
+        writer.println(prefix + "\tavgCaptureUs="
+                + (frames == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / frames))
+                + " maxCaptureUs=" + TimeUnit.NANOSECONDS.toMicros(maxNanos));
+        if (includeData && frames > 0) {
+            writer.println(prefix + "\tdata="
+                    + Base64.encodeToString(exportData().toByteArray(), Base64.NO_WRAP));
+        }
+    }
+
+    /**
+     * Copy of the frames which are still complete in the ring buffer, with the nodes stored
+     * contiguously from index 0.
+     */
+    private static class Snapshot {
+        long[] frameTime;
+        int[] frameStart;
+        ArrayList<String> classNames;
+
+        int[] classIndex, hashCode, id, left, top, width, height, scrollX, scrollY,
+                visibility, flags, childCount;
+        float[] translationX, translationY, scaleX, scaleY, alpha, elevation;
+
+        void copyFrom(ViewCapture vc) {
+            classNames = new ArrayList<>(vc.mClassNames);
+
+            // Frames whose first node has been overwritten by newer frames are dropped
+            long oldestNode = Math.max(0, vc.mNodesWritten - MAX_NODES);
+            long firstFrame = Math.max(0, vc.mFramesWritten - MAX_FRAMES);
+            while (firstFrame < vc.mFramesWritten
+                    && vc.mFrameStart[(int) (firstFrame % MAX_FRAMES)] < oldestNode) {
+                firstFrame++;
+            }
+            int frameCount = (int) (vc.mFramesWritten - firstFrame);
+            long nodeStart = frameCount == 0
+                    ? vc.mNodesWritten : vc.mFrameStart[(int) (firstFrame % MAX_FRAMES)];
+            int nodeCount = (int) (vc.mNodesWritten - nodeStart);
+
+            frameTime = new long[frameCount];
+            frameStart = new int[frameCount];
+            for (int f = 0; f < frameCount; f++) {
+                int frame = (int) ((firstFrame + f) % MAX_FRAMES);
+                frameTime[f] = vc.mFrameTime[frame];
+                frameStart[f] = (int) (vc.mFrameStart[frame] - nodeStart);
+            }
+
+            int offset = (int) (nodeStart & (MAX_NODES - 1));
+            classIndex = copy(vc.mClassIndex, offset, nodeCount);
+            hashCode = copy(vc.mHashCode, offset, nodeCount);
+            id = copy(vc.mId, offset, nodeCount);
+            left = copy(vc.mLeft, offset, nodeCount);
+            top = copy(vc.mTop, offset, nodeCount);
+            width = copy(vc.mWidth, offset, nodeCount);
+            height = copy(vc.mHeight, offset, nodeCount);
+            scrollX = copy(vc.mScrollX, offset, nodeCount);
+            scrollY = copy(vc.mScrollY, offset, nodeCount);
+            visibility = copy(vc.mVisibility, offset, nodeCount);
+            flags = copy(vc.mFlags, offset, nodeCount);
+            childCount = copy(vc.mChildCount, offset, nodeCount);
+            translationX = copy(vc.mTranslationX, offset, nodeCount);
+            translationY = copy(vc.mTranslationY, offset, nodeCount);
+            scaleX = copy(vc.mScaleX, offset, nodeCount);
+            scaleY = copy(vc.mScaleY, offset, nodeCount);
+            alpha = copy(vc.mAlpha, offset, nodeCount);
+            elevation = copy(vc.mElevation, offset, nodeCount);
+        }
+
+        private static int[] copy(int[] src, int offset, int count) {
+            int[] dest = new int[count];
+            int first = Math.min(count, MAX_NODES - offset);
+            System.arraycopy(src, offset, dest, 0, first);
+            System.arraycopy(src, 0, dest, first, count - first);
+            return dest;
+        }
+
+        private static float[] copy(float[] src, int offset, int count) {
+            float[] dest = new float[count];
+            int first = Math.min(count, MAX_NODES - offset);
+            System.arraycopy(src, offset, dest, 0, first);
+            System.arraycopy(src, 0, dest, first, count - first);
+            return dest;
+        }
+    }
+}
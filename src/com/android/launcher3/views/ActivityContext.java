@@ -70,6 +70,7 @@ import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.util.ActivityOptionsWrapper;
+import com.android.launcher3.util.ItemViewIndex;
 import com.android.launcher3.util.OnboardingPrefs;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.Preconditions;
@@ -200,6 +201,14 @@ public interface ActivityContext {
         return null;
     }
 
+    /**
+     * Returns the index of the item views bound in this context, if it keeps one.
+     */
+    @Nullable
+    default ItemViewIndex getItemViewIndex() {
+        return null;
+    }
+
     /**
      * Returns the FolderIcon with the given item id, if it exists.
      */
@@ -27,8 +27,6 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
-import android.os.Handler;
 import android.util.Log;
 import android.util.Size;
 
@@ -70,8 +68,8 @@ public class DatabaseWidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread.
+     * Loads the widget preview through {@link WidgetPreviewCache}, generating it on
+     * {@link Executors#UI_HELPER_EXECUTOR} if needed. Must be called on UI thread.
      *
      * @return a request id which can be used to cancel the request.
      */
@@ -80,13 +78,14 @@ public class DatabaseWidgetPreviewLoader {
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
             @NonNull Consumer<Bitmap> callback) {
-        Handler handler = Executors.UI_HELPER_EXECUTOR.getHandler();
-        HandlerRunnable<Bitmap> request = new HandlerRunnable<>(handler,
+        WidgetPreviewCache.PreviewKey key = new WidgetPreviewCache.PreviewKey(
+                item.componentName, item.user, previewSize.getWidth(), previewSize.getHeight());
+        // Only previews drawn from the app's preview image are independent of the device
+        // profile and can be kept across restarts
+        boolean persist = item.widgetInfo != null && item.widgetInfo.previewImage != 0;
+        return WidgetPreviewCache.INSTANCE.get(mContext).getPreview(key, persist,
                 () -> generatePreview(item, previewSize.getWidth(), previewSize.getHeight()),
-                MAIN_EXECUTOR,
                 callback);
-        Utilities.postAsyncCallback(handler, request);
-        return request;
     }
 
     /**
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.icons.cache.HandlerRunnable;
+import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.MainThreadInitializedObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Process wide cache of widget previews.
+ *
+ * Previews are kept in a bounded in-memory LRU keyed by provider, user and size, and previews
+ * rendered from a preview image are also stored on disk, keyed by package version as well, so
+ * that they survive process restarts. Both are invalidated when the package changes. Requests
+ * for a preview which is already being generated share the pending request.
+ */
+public class WidgetPreviewCache extends LauncherApps.Callback {
+
+    private static final String TAG = "WidgetPreviewCache";
+
+    public static final MainThreadInitializedObject<WidgetPreviewCache> INSTANCE =
+            new MainThreadInitializedObject<>(WidgetPreviewCache::new);
+
+    private static final String DIR_NAME = "widget_previews";
+    private static final long MAX_DISK_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_MEMORY_BYTES = (int) Math.min(
+            Runtime.getRuntime().maxMemory() / 16, 32 * 1024 * 1024);
+
+    private final Context mContext;
+    private final File mDiskDir;
+
+    // Only accessed on the main thread
+    private final LruCache<PreviewKey, Bitmap> mMemoryCache =
+            new LruCache<PreviewKey, Bitmap>(MAX_MEMORY_BYTES) {
+                @Override
+                protected int sizeOf(PreviewKey key, Bitmap value) {
+                    // Hardware bitmaps do not report their allocation
+                    return value.getWidth() * value.getHeight() * 4;
+                }
+            };
+    private final HashMap<PreviewKey, PendingPreview> mPendingPreviews = new HashMap<>();
+
+    private WidgetPreviewCache(Context context) {
+        mContext = context;
+        mDiskDir = new File(context.getCacheDir(), DIR_NAME);
+        context.getSystemService(LauncherApps.class)
+                .registerCallback(this, MAIN_EXECUTOR.getHandler());
+    }
+
+    /**
+     * Returns the preview for {@param key}, from memory or disk when possible, otherwise from
+     * {@param generator} which is called on {@link UI_HELPER_EXECUTOR}. The callback is always
+     * called asynchronously on the main thread.
+     *
+     * @param persist whether the generated preview can be stored on disk
+     * @return a request which can be used to cancel the callback
+     */
+    @UiThread
+    @NonNull
+    public HandlerRunnable<Bitmap> getPreview(@NonNull PreviewKey key, boolean persist,
+            @NonNull Supplier<Bitmap> generator, @NonNull Consumer<Bitmap> callback) {
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            Handler mainHandler = MAIN_EXECUTOR.getHandler();
+            HandlerRunnable<Bitmap> request = new HandlerRunnable<>(
+                    mainHandler, () -> cached, MAIN_EXECUTOR, callback);
+            mainHandler.post(request);
+            return request;
+        }
+
+        Handler workerHandler = UI_HELPER_EXECUTOR.getHandler();
+        PendingPreview pending = mPendingPreviews.get(key);
+        if (pending == null) {
+            PendingPreview newPending = new PendingPreview();
+            newPending.task = new HandlerRunnable<>(workerHandler,
+                    () -> {
+                        newPending.started = true;
+                        return loadOrGenerate(key, persist, generator);
+                    },
+                    MAIN_EXECUTOR,
+                    bitmap -> onPreviewLoaded(key, newPending, bitmap));
+            mPendingPreviews.put(key, newPending);
+            Utilities.postAsyncCallback(workerHandler, newPending.task);
+            pending = newPending;
+        }
+
+        // Each caller gets its own request delivering the shared result, so that it can be
+        // canceled independently
+        final PendingPreview shared = pending;
+        HandlerRunnable<Bitmap>[] requestOut = new HandlerRunnable[1];
+        requestOut[0] = new HandlerRunnable<>(workerHandler,
+                () -> shared.result, MAIN_EXECUTOR, callback,
+                () -> onRequestEnded(key, shared, requestOut[0]));
+        shared.requests.add(requestOut[0]);
+        return requestOut[0];
+    }
+
+    @UiThread
+    private void onPreviewLoaded(PreviewKey key, PendingPreview pending, Bitmap bitmap) {
+        if (mPendingPreviews.get(key) == pending) {
+            mPendingPreviews.remove(key);
+        }
+        pending.done = true;
+        pending.result = bitmap;
+        if (bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        for (HandlerRunnable<Bitmap> request : new ArrayList<>(pending.requests)) {
+            request.run();
+        }
+        pending.requests.clear();
+    }
+
+    @UiThread
+    private void onRequestEnded(PreviewKey key, PendingPreview pending,
+            HandlerRunnable<Bitmap> request) {
+        pending.requests.remove(request);
+        if (pending.done || pending.started || !pending.requests.isEmpty()) {
+            // A preview which is already being generated is still added to the cache
+            return;
+        }
+        // Nobody is waiting for this preview anymore
+        pending.task.cancel();
+        if (mPendingPreviews.get(key) == pending) {
+            mPendingPreviews.remove(key);
+        }
+    }
+
+    @WorkerThread
+    @Nullable
+    private Bitmap loadOrGenerate(PreviewKey key, boolean persist, Supplier<Bitmap> generator) {
+        File file = persist ? getDiskFile(key) : null;
+        if (file != null && file.exists()) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+            if (bitmap != null) {
+                file.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = generator.get();
+        if (file != null && bitmap != null) {
+            writeToDisk(file, bitmap);
+        }
+        return bitmap;
+    }
+
+    @WorkerThread
+    private void writeToDisk(File file, Bitmap bitmap) {
+        if (!mDiskDir.exists() && !mDiskDir.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(mDiskDir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store widget preview", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+        trimDiskCache();
+    }
+
+    /**
+     * Deletes the least recently used previews until the disk cache fits in its budget.
+     */
+    @WorkerThread
+    private void trimDiskCache() {
+        File[] files = mDiskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > MAX_DISK_BYTES; i++) {
+            total -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Returns the file for {@param key} for the installed version of its package, or null if
+     * the package is not installed.
+     */
+    @WorkerThread
+    @Nullable
+    private File getDiskFile(PreviewKey key) {
+        String packageName = key.componentKey.componentName.getPackageName();
+        PackageInfo info;
+        try {
+            info = mContext.getPackageManager().getPackageInfo(packageName,
+                    PackageManager.MATCH_UNINSTALLED_PACKAGES);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+        return new File(mDiskDir, getFilePrefix(packageName, key.componentKey.user)
+                + Uri.encode(key.componentKey.componentName.getClassName())
+                + "_" + key.width + "x" + key.height
+                + "_" + info.getLongVersionCode() + "_" + info.lastUpdateTime + ".png");
+    }
+
+    private String getFilePrefix(String packageName, UserHandle user) {
+        return packageName + "_"
+                + UserCache.INSTANCE.get(mContext).getSerialNumberForUser(user) + "_";
+    }
+
+    @UiThread
+    private void invalidatePackage(String packageName, UserHandle user) {
+        for (PreviewKey key : mMemoryCache.snapshot().keySet()) {
+            ComponentKey componentKey = key.componentKey;
+            if (componentKey.componentName.getPackageName().equals(packageName)
+                    && componentKey.user.equals(user)) {
+                mMemoryCache.remove(key);
+            }
+        }
+        String prefix = getFilePrefix(packageName, user);
+        UI_HELPER_EXECUTOR.execute(() -> {
+            File[] files = mDiskDir.listFiles((dir, name) -> name.startsWith(prefix));
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onPackageRemoved(String packageName, UserHandle user) {
+        invalidatePackage(packageName, user);
+    }
+
+    @Override
+    public void onPackageAdded(String packageName, UserHandle user) {
+        invalidatePackage(packageName, user);
+    }
+
+    @Override
+    public void onPackageChanged(String packageName, UserHandle user) {
+        invalidatePackage(packageName, user);
+    }
+
+    @Override
+    public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) {
+        if (replacing) {
+            for (String packageName : packageNames) {
+                invalidatePackage(packageName, user);
+            }
+        }
+    }
+
+    @Override
+    public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) { }
+
+    /**
+     * Key identifying a preview in the cache.
+     */
+    public static final class PreviewKey {
+
+        @NonNull
+        final ComponentKey componentKey;
+        final int width;
+        final int height;
+
+        public PreviewKey(@NonNull ComponentName componentName, @NonNull UserHandle user,
+                int width, int height) {
+            componentKey = new ComponentKey(componentName, user);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PreviewKey)) return false;
+            PreviewKey other = (PreviewKey) o;
+            return width == other.width && height == other.height
+                    && componentKey.equals(other.componentKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * componentKey.hashCode() + width) + height;
+        }
+    }
+
+    private static class PendingPreview {
+        HandlerRunnable<Bitmap> task;
+        final ArrayList<HandlerRunnable<Bitmap>> requests = new ArrayList<>();
+        volatile boolean started;
+        boolean done;
+        Bitmap result;
+    }
+}
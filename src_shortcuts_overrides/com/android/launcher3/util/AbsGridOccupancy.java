@@ -28,10 +28,24 @@ public abstract class AbsGridOccupancy {
      * @param vacantOut Holds the x and y coordinate of the vacant cell
      * @param spanX     Horizontal cell span.
      * @param spanY     Vertical cell span.
+     * @param rows      Buffer of at least countY entries, reused for the packed rows.
      * @return true if a vacant cell was found
      */
     protected boolean findVacantCell(int[] vacantOut, boolean[][] cells, int countX, int countY,
-                                     int spanX, int spanY) {
+                                     int spanX, int spanY, long[] rows) {
+        if (GridOccupancy.canUseRowMasks(countX)) {
+            GridOccupancy.packRows(cells, countX, countY, rows);
+            for (int y = 0; (y + spanY) <= countY; y++) {
+                long origins = GridOccupancy.getVacantOrigins(
+                        rows, countX, countY, y, spanX, spanY);
+                if (origins != 0) {
+                    vacantOut[0] = Long.numberOfTrailingZeros(origins);
+                    vacantOut[1] = y;
+                    return true;
+                }
+            }
+            return false;
+        }
         for (int y = 0; (y + spanY) <= countY; y++) {
             for (int x = 0; (x + spanX) <= countX; x++) {
                 boolean available = !cells[x][y];
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3
+
+import android.graphics.Rect
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.android.launcher3.util.WindowBounds
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Tests for the profiles cached by [DeviceProfile], along with a measurement of how long building
+ * a profile takes.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4::class)
+class DeviceProfileCacheTest : DeviceProfileBaseTest() {
+
+    @Test
+    fun multi_window_profile_is_reused_for_same_bounds() {
+        initializeVarsForPhone()
+        val dp = newDP()
+
+        val first = dp.getMultiWindowProfile(context, splitBounds(1200))
+        val second = dp.getMultiWindowProfile(context, splitBounds(1200))
+        val other = dp.getMultiWindowProfile(context, splitBounds(800))
+
+        assertThat(second).isSameInstanceAs(first)
+        assertThat(other).isNotSameInstanceAs(first)
+        assertThat(first.isMultiWindowMode).isTrue()
+        assertThat(first.heightPx).isEqualTo(1200)
+        assertThat(other.heightPx).isEqualTo(800)
+    }
+
+    @Test
+    fun multi_window_profile_is_rebuilt_for_new_rotation() {
+        initializeVarsForPhone()
+        val dp = newDP()
+
+        val first = dp.getMultiWindowProfile(context, splitBounds(1200, rotationHint = 0))
+        val rotated = dp.getMultiWindowProfile(context, splitBounds(1200, rotationHint = 2))
+
+        assertThat(rotated).isNotSameInstanceAs(first)
+        assertThat(dp.getMultiWindowProfile(context, splitBounds(1200, rotationHint = 2)))
+            .isSameInstanceAs(rotated)
+    }
+
+    @Test
+    fun measure_profile_build_time() {
+        initializeVarsForPhone()
+        // Warm up the class loading and resource caches
+        newDP()
+
+        val start = SystemClock.elapsedRealtimeNanos()
+        repeat(ITERATIONS) { newDP() }
+        val buildNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS
+
+        val dp = newDP()
+        dp.getMultiWindowProfile(context, splitBounds(1200))
+        val lookupStart = SystemClock.elapsedRealtimeNanos()
+        repeat(ITERATIONS) { dp.getMultiWindowProfile(context, splitBounds(1200)) }
+        val lookupNanos = (SystemClock.elapsedRealtimeNanos() - lookupStart) / ITERATIONS
+
+        Log.d(TAG, "DeviceProfile build=${buildNanos}ns, cached lookup=${lookupNanos}ns")
+        assertThat(lookupNanos).isLessThan(buildNanos)
+    }
+
+    private fun splitBounds(height: Int, rotationHint: Int = 0) =
+        WindowBounds(Rect(0, 0, 1080, height), Rect(0, 118, 0, 0), rotationHint)
+
+    companion object {
+        private const val TAG = "DeviceProfileCacheTest"
+        private const val ITERATIONS = 50
+    }
+}
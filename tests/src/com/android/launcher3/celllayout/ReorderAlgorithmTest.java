@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.celllayout;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.CellLayout;
+import com.android.launcher3.util.ActivityContextWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * Tests for the solution cache of {@link ReorderAlgorithm}, and a benchmark of reorders over
+ * generated layouts which does not need a running launcher.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ReorderAlgorithmTest {
+
+    private static final String TAG = "ReorderAlgorithmTest";
+
+    private static final int BENCHMARK_LAYOUTS = 20;
+    private static final int BENCHMARK_PASSES = 3;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = new ActivityContextWrapper(getInstrumentation().getTargetContext());
+    }
+
+    @Test
+    public void testSolutionIsReusedForSameTarget() throws Exception {
+        MAIN_EXECUTOR.submit(() -> {
+            CellLayout layout = createLayout(new Random(1));
+            int[] center = new int[2];
+            regionToCenterPoint(layout, 1, 1, 2, 2, center);
+
+            CellLayout.ItemConfiguration first =
+                    layout.calculateReorder(center[0], center[1], 1, 1, 2, 2, null);
+            CellLayout.ItemConfiguration second =
+                    layout.calculateReorder(center[0], center[1], 1, 1, 2, 2, null);
+            assertNotNull(first);
+            assertSame(first, second);
+        }).get();
+    }
+
+    @Test
+    public void testSolutionIsRecomputedWhenLayoutChanges() throws Exception {
+        MAIN_EXECUTOR.submit(() -> {
+            CellLayout layout = new CellLayout(mContext);
+            int[] center = new int[2];
+            regionToCenterPoint(layout, 0, 0, 1, 1, center);
+
+            CellLayout.ItemConfiguration first =
+                    layout.calculateReorder(center[0], center[1], 1, 1, 1, 1, null);
+            addItem(layout, 0, 0, 1, 1);
+            CellLayout.ItemConfiguration second =
+                    layout.calculateReorder(center[0], center[1], 1, 1, 1, 1, null);
+            assertNotNull(second);
+            assertNotSame(first, second);
+        }).get();
+    }
+
+    @Test
+    public void benchmarkReorderOverGeneratedLayouts() throws Exception {
+        long[] nanos = MAIN_EXECUTOR.submit(() -> {
+            Random random = new Random(3);
+            long uncached = 0;
+            long cached = 0;
+            int[] center = new int[2];
+            for (int i = 0; i < BENCHMARK_LAYOUTS; i++) {
+                CellLayout layout = createLayout(random);
+                ReorderAlgorithm algorithm = layout.getReorderAlgorithm();
+                for (int pass = 0; pass < BENCHMARK_PASSES; pass++) {
+                    // Sweep a 2x2 widget over every cell, as if dragged back and forth
+                    long start = System.nanoTime();
+                    for (int y = 0; y < layout.getCountY() - 1; y++) {
+                        for (int x = 0; x < layout.getCountX() - 1; x++) {
+                            regionToCenterPoint(layout, x, y, 2, 2, center);
+                            if (pass == 0) {
+                                algorithm.invalidateSolutions();
+                            }
+                            layout.calculateReorder(center[0], center[1], 1, 1, 2, 2, null);
+                        }
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (pass == 0) {
+                        uncached += elapsed;
+                    } else {
+                        cached += elapsed;
+                    }
+                }
+            }
+            return new long[] {uncached, cached / (BENCHMARK_PASSES - 1)};
+        }).get();
+
+        Log.d(TAG, BENCHMARK_LAYOUTS + " layouts: solving=" + nanos[0] / BENCHMARK_LAYOUTS
+                + "ns/sweep, cached=" + nanos[1] / BENCHMARK_LAYOUTS + "ns/sweep");
+    }
+
+    /**
+     * Creates a layout filled with a random mix of icons and 2x2 widgets
+     */
+    private CellLayout createLayout(Random random) {
+        CellLayout layout = new CellLayout(mContext);
+        for (int y = 0; y < layout.getCountY(); y++) {
+            for (int x = 0; x < layout.getCountX(); x++) {
+                if (random.nextInt(4) == 0) {
+                    continue;
+                }
+                boolean widget = random.nextInt(5) == 0;
+                int span = widget ? 2 : 1;
+                if (layout.isRegionVacant(x, y, span, span)) {
+                    addItem(layout, x, y, span, span);
+                } else if (layout.isRegionVacant(x, y, 1, 1)) {
+                    addItem(layout, x, y, 1, 1);
+                }
+            }
+        }
+        return layout;
+    }
+
+    private static void regionToCenterPoint(CellLayout layout, int cellX, int cellY, int spanX,
+            int spanY, int[] result) {
+        Rect rect = new Rect();
+        layout.cellToRect(cellX, cellY, spanX, spanY, rect);
+        result[0] = rect.centerX();
+        result[1] = rect.centerY();
+    }
+
+    private void addItem(CellLayout layout, int cellX, int cellY, int spanX, int spanY) {
+        layout.addViewToCellLayout(new View(mContext), -1, View.generateViewId(),
+                new CellLayoutLayoutParams(cellX, cellY, spanX, spanY), true);
+    }
+}
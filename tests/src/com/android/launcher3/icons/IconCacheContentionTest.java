@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.icons.cache.CachingLogic;
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for concurrent access to {@link IconCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class IconCacheContentionTest {
+
+    private static final String TAG = "IconCacheContentionTest";
+
+    private static final int COMPONENT_COUNT = 200;
+    private static final int WRITER_COUNT = 3;
+    private static final int READ_ROUNDS = 20;
+
+    private IconCache mIconCache;
+    private UserHandle mUser;
+    private long mUserSerial;
+
+    private final CachingLogic<ComponentName> mLogic = new CachingLogic<ComponentName>() {
+        @NonNull
+        @Override
+        public ComponentName getComponent(@NonNull ComponentName cn) {
+            return cn;
+        }
+
+        @NonNull
+        @Override
+        public UserHandle getUser(@NonNull ComponentName cn) {
+            return mUser;
+        }
+
+        @NonNull
+        @Override
+        public CharSequence getLabel(@NonNull ComponentName cn) {
+            return cn.getClassName();
+        }
+
+        @NonNull
+        @Override
+        public BitmapInfo loadIcon(@NonNull Context context, @NonNull ComponentName cn) {
+            return BitmapInfo.of(Bitmap.createBitmap(1, 1, Config.ARGB_8888), Color.RED);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mIconCache = new IconCache(context, InvariantDeviceProfile.INSTANCE.get(context),
+                null /* in-memory db */, new IconProvider(context));
+        mUser = Process.myUserHandle();
+        mUserSerial = context.getSystemService(UserManager.class).getSerialNumberForUser(mUser);
+    }
+
+    @After
+    public void tearDown() {
+        mIconCache.close();
+    }
+
+    @Test
+    public void testConcurrentWritesAreAllVisible() throws Exception {
+        runWriters(WRITER_COUNT, new AtomicBoolean(false), 1);
+
+        MODEL_EXECUTOR.submit(() -> {
+            for (int i = 0; i < COMPONENT_COUNT; i++) {
+                AppInfo info = newAppInfo(i);
+                mIconCache.getTitleAndIcon(info, () -> null, false, false);
+                assertEquals(getComponent(i).getClassName(), info.title);
+                assertFalse(info.bitmap.isNullOrLowRes());
+            }
+        }).get();
+    }
+
+    @Test
+    public void testLookupDoesNotWaitForRendering() throws Exception {
+        runWriters(1, new AtomicBoolean(false), 1);
+
+        // A writer replacing the entry is stuck rendering its icon
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingLogic<ComponentName> blockingLogic = new CachingLogic<ComponentName>() {
+            @NonNull
+            @Override
+            public ComponentName getComponent(@NonNull ComponentName cn) {
+                return mLogic.getComponent(cn);
+            }
+
+            @NonNull
+            @Override
+            public UserHandle getUser(@NonNull ComponentName cn) {
+                return mLogic.getUser(cn);
+            }
+
+            @NonNull
+            @Override
+            public CharSequence getLabel(@NonNull ComponentName cn) {
+                return mLogic.getLabel(cn);
+            }
+
+            @NonNull
+            @Override
+            public BitmapInfo loadIcon(@NonNull Context context, @NonNull ComponentName cn) {
+                rendering.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return mLogic.loadIcon(context, cn);
+            }
+        };
+        Thread writer = new Thread(() -> mIconCache.addIconToDBAndMemCache(getComponent(0),
+                blockingLogic, new PackageInfo(), mUserSerial, true));
+        writer.start();
+        try {
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+            // The cached entry is still returned on the worker thread meanwhile
+            AppInfo info = newAppInfo(0);
+            MODEL_EXECUTOR.submit(
+                    () -> mIconCache.getTitleAndIcon(info, () -> null, false, false))
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(getComponent(0).getClassName(), info.title);
+            assertFalse(info.bitmap.isNullOrLowRes());
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+    }
+
+    @Test
+    public void benchmarkReadsWithConcurrentWriters() throws Exception {
+        // Populate the cache so that reads hit memory
+        runWriters(1, new AtomicBoolean(false), 1);
+
+        int reads = COMPONENT_COUNT * READ_ROUNDS;
+        long idleNanos = timeReads() / reads;
+
+        AtomicBoolean stop = new AtomicBoolean(false);
+        Thread writers = new Thread(() -> runWriters(WRITER_COUNT, stop, Integer.MAX_VALUE));
+        writers.start();
+        long contendedNanos;
+        long defaultIconNanos;
+        try {
+            contendedNanos = timeReads() / reads;
+
+            // Default icon lookups happen on the UI thread, and always see the same icon
+            BitmapInfo defaultIcon = mIconCache.getDefaultIcon(mUser);
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                assertSame(defaultIcon.icon, mIconCache.getDefaultIcon(mUser).icon);
+            }
+            defaultIconNanos = (System.nanoTime() - start) / reads;
+        } finally {
+            stop.set(true);
+            writers.join();
+        }
+
+        Log.d(TAG, reads + " reads: idle=" + idleNanos + "ns/read, with " + WRITER_COUNT
+                + " writers=" + contendedNanos + "ns/read, default icon=" + defaultIconNanos
+                + "ns/read");
+    }
+
+    /**
+     * Reads every component {@link #READ_ROUNDS} times on the model thread, checking that each
+     * read sees a complete entry.
+     */
+    private long timeReads() throws Exception {
+        return MODEL_EXECUTOR.submit(() -> {
+            ArrayList<AppInfo> infos = new ArrayList<>();
+            for (int i = 0; i < COMPONENT_COUNT; i++) {
+                infos.add(newAppInfo(i));
+            }
+            long start = System.nanoTime();
+            for (int round = 0; round < READ_ROUNDS; round++) {
+                for (AppInfo info : infos) {
+                    mIconCache.getTitleAndIcon(info, () -> null, false, false);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            for (int i = 0; i < COMPONENT_COUNT; i++) {
+                assertEquals(getComponent(i).getClassName(), infos.get(i).title);
+                assertFalse(infos.get(i).bitmap.isNullOrLowRes());
+            }
+            return nanos;
+        }).get();
+    }
+
+    /**
+     * Runs {@param writerCount} threads, each writing every component {@param rounds} times or
+     * until {@param stop} is set.
+     */
+    private void runWriters(int writerCount, AtomicBoolean stop, int rounds) {
+        CountDownLatch done = new CountDownLatch(writerCount);
+        for (int w = 0; w < writerCount; w++) {
+            new Thread(() -> {
+                for (int round = 0; round < rounds && !stop.get(); round++) {
+                    for (int i = 0; i < COMPONENT_COUNT; i++) {
+                        mIconCache.addIconToDBAndMemCache(getComponent(i), mLogic,
+                                new PackageInfo(), mUserSerial, true);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private AppInfo newAppInfo(int index) {
+        AppInfo info = new AppInfo();
+        info.componentName = getComponent(index);
+        info.user = mUser;
+        return info;
+    }
+
+    private static ComponentName getComponent(int index) {
+        return new ComponentName("com.example.app" + (index % 20), "Activity" + index);
+    }
+}
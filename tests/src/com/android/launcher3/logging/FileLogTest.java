@@ -1,6 +1,7 @@
 package com.android.launcher3.logging;
 
 import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -12,6 +13,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -42,6 +47,7 @@ public class FileLogTest {
         // Clear existing logs
         for (int i = 0; i < FileLog.LOG_DAYS; i++) {
             new File(mTempDir, "log-" + i).delete();
+            new File(mTempDir, "blog-" + i).delete();
         }
         mTempDir.delete();
     }
@@ -93,4 +99,76 @@ public class FileLogTest {
         // Old logs have been truncated
         assertFalse(writer.toString().contains("hoolalala"));
     }
+
+    @Test
+    public void testStructuredLog() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        FileLog.LogEvent event = FileLog.registerEvent("Testing", "moved %s to %d");
+        FileLog.log(event, "hoolalala", 42);
+        StringWriter writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+        assertTrue(writer.toString().contains("Testing moved hoolalala to 42"));
+
+        Calendar threeDaysAgo = Calendar.getInstance();
+        threeDaysAgo.add(Calendar.HOUR, -72);
+        for (int i = 0; i < FileLog.LOG_DAYS; i++) {
+            new File(mTempDir, "blog-" + i).setLastModified(threeDaysAgo.getTimeInMillis());
+        }
+
+        FileLog.log(event, "abracadabra", 7);
+        writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+        assertTrue(writer.toString().contains("Testing moved abracadabra to 7"));
+        // Old logs have been truncated
+        assertFalse(writer.toString().contains("hoolalala"));
+    }
+
+    @Test
+    public void testStructuredLogKeepsOrderAcrossBatches() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        FileLog.LogEvent event = FileLog.registerEvent("Testing", "entry %d");
+        int count = FileLog.EventBuffer.CAPACITY / 4;
+        for (int i = 0; i < count; i++) {
+            FileLog.log(event, i);
+        }
+        StringWriter writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+
+        String out = writer.toString();
+        int lastIndex = -1;
+        for (int i = 0; i < count; i++) {
+            int index = out.indexOf("Testing entry " + i + "\n");
+            assertTrue(index > lastIndex);
+            lastIndex = index;
+        }
+    }
+
+    @Test
+    public void testDecodeStopsAtTruncatedRecord() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeShort(0);
+        out.writeUTF("Testing");
+        out.writeUTF("value %d");
+        out.writeByte(2);
+        out.writeLong(System.currentTimeMillis());
+        out.writeShort(0);
+        out.writeByte(1);
+        out.writeLong(5);
+        // Partially written record
+        out.writeByte(2);
+        out.writeLong(System.currentTimeMillis());
+
+        StringWriter writer = new StringWriter();
+        FileLog.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                new PrintWriter(writer, true));
+        String[] lines = writer.toString().trim().split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].endsWith("Testing value 5"));
+    }
 }
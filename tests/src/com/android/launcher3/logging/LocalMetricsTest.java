@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.logging;
+
+import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.IGNORE;
+import static com.android.launcher3.logging.StatsLogManager.LauncherEvent.LAUNCHER_ALLAPPS_ENTRY;
+import static com.android.launcher3.logging.StatsLogManager.LauncherLatencyEvent.LAUNCHER_LATENCY_APP_LAUNCH;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.logging.LocalMetrics.LatencyHistogram;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link LocalMetrics}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LocalMetricsTest {
+
+    private LocalMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new LocalMetrics();
+    }
+
+    @Test
+    public void testEventsAreCounted() {
+        mMetrics.countEvent(LAUNCHER_ALLAPPS_ENTRY);
+        mMetrics.countEvent(LAUNCHER_ALLAPPS_ENTRY);
+        mMetrics.countEvent(IGNORE);
+
+        assertEquals(2, mMetrics.getEventCount(LAUNCHER_ALLAPPS_ENTRY));
+        assertEquals(0, mMetrics.getEventCount(IGNORE));
+        assertEquals(1, mMetrics.getCountSummaries().size());
+
+        mMetrics.reset();
+        assertEquals(0, mMetrics.getEventCount(LAUNCHER_ALLAPPS_ENTRY));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        assertNull(mMetrics.getLatency(LAUNCHER_LATENCY_APP_LAUNCH));
+        for (int i = 1; i <= 100; i++) {
+            mMetrics.recordLatency(LAUNCHER_LATENCY_APP_LAUNCH, i * 10);
+        }
+
+        LatencyHistogram histogram = mMetrics.getLatency(LAUNCHER_LATENCY_APP_LAUNCH);
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(505, histogram.getMean());
+        assertWithinBucket(500, histogram.getPercentile(50));
+        assertWithinBucket(900, histogram.getPercentile(90));
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testBucketsCoverAllValues() {
+        int previous = -1;
+        for (long value = 0; value < (1 << 22); value = value * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.getBucket(value);
+            assertTrue(bucket >= previous && bucket < LatencyHistogram.BUCKET_COUNT);
+            if (bucket < LatencyHistogram.BUCKET_COUNT - 1) {
+                assertTrue(value <= LatencyHistogram.getBucketUpperBound(bucket));
+            }
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 9 / 8);
+    }
+}
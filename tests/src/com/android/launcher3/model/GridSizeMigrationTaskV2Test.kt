@@ -494,6 +494,62 @@ class GridSizeMigrationTaskV2Test {
         disableNewMigrationLogic()
     }
 
+    @Test
+    fun planMigrationWithoutDatabase() {
+        val hotseatItems = listOf(dbEntry(1, APP_ICON, 0, 0, 0))
+        val hotseatDiff = mutableListOf(dbEntry(2, APP_ICON, 2, 0, 0), dbEntry(3, APP_ICON, 3, 0, 0))
+        val workspaceItems = mapOf(0 to listOf(dbEntry(4, APP_ICON, 0, 0, 0)))
+        val workspaceDiff = mutableListOf(
+            dbEntry(5, APP_ICON, 0, 3, 3),
+            dbEntry(6, APP_ICON, 0, 1, 2),
+            dbEntry(7, APP_ICON, 0, 2, 2, 3, 3)
+        )
+
+        val plan = GridSizeMigrationTaskV2.planMigration(
+            "",
+            hotseatItems,
+            hotseatDiff,
+            workspaceItems,
+            0,
+            workspaceDiff,
+            4,
+            3,
+            3,
+            false,
+            false
+        )
+
+        // Hotseat items fill the free positions, then workspace items follow the reading order
+        assertThat(plan.mPlacements.map { it.id }).containsExactly(2, 3, 6, 5, 7).inOrder()
+        assertThat(plan.mPlacements.map { Point(it.screenId, it.cellX) }.subList(0, 2))
+            .containsExactly(Point(1, 1), Point(2, 2)).inOrder()
+        val workspace = plan.mPlacements.subList(2, 5)
+        assertThat(workspace.map { Triple(it.screenId, it.cellX, it.cellY) })
+            .containsExactly(Triple(0, 1, 0), Triple(0, 2, 0), Triple(1, 0, 0)).inOrder()
+        assertThat(hotseatDiff).isEmpty()
+        assertThat(workspaceDiff).isEmpty()
+    }
+
+    private fun dbEntry(
+        id: Int,
+        type: Int,
+        screen: Int,
+        x: Int,
+        y: Int,
+        spanX: Int = 1,
+        spanY: Int = 1
+    ) = GridSizeMigrationTaskV2.DbEntry().apply {
+        this.id = id
+        itemType = type
+        screenId = screen
+        cellX = x
+        cellY = y
+        this.spanX = spanX
+        this.spanY = spanY
+        minSpanX = spanX
+        minSpanY = spanY
+    }
+
     private fun enableNewMigrationLogic(srcGridSize: String) {
         context.getSharedPreferences(FeatureFlags.FLAGS_PREF_NAME, Context.MODE_PRIVATE)
             .edit()
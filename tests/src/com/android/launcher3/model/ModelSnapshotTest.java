@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.AtomicFile;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.function.LongFunction;
+
+/**
+ * Tests for {@link ModelSnapshot}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ModelSnapshotTest {
+
+    private static final String DB_NAME = "launcher_4_by_4.db";
+
+    private Context mContext;
+    private File mFile;
+    private ModelSnapshot mSnapshot;
+    private final LongFunction<UserHandle> mUserFn = serial -> Process.myUserHandle();
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mFile = new File(mContext.getCacheDir(), "model_snapshot_test.bin");
+        mSnapshot = new ModelSnapshot(new AtomicFile(mFile));
+    }
+
+    @After
+    public void tearDown() {
+        mSnapshot.delete();
+    }
+
+    @Test
+    public void testReadReturnsWrittenApps() {
+        mSnapshot.write(mContext, DB_NAME, 3, new AppInfo[] {newApp("A", "a"), newApp("B", "b")});
+
+        ModelSnapshot.Snapshot snapshot = mSnapshot.read(DB_NAME, mUserFn);
+        assertNotNull(snapshot);
+        assertEquals(3, snapshot.flags);
+        assertEquals(2, snapshot.apps.size());
+        AppInfo app = snapshot.apps.get(1);
+        assertEquals(new ComponentName("com.example", "com.example.b"), app.componentName);
+        assertEquals("B", app.title.toString());
+        assertEquals("B", app.sectionName);
+        assertEquals(Process.myUserHandle(), app.user);
+    }
+
+    @Test
+    public void testEncodedSnapshotIsReadAfterAppsChange() {
+        AppInfo app = newApp("A", "a");
+        byte[] payload = mSnapshot.encode(mContext, DB_NAME, 0, new AppInfo[] {app});
+        // The payload is written later, changes made in between must not leak into it
+        app.title = "Changed";
+        mSnapshot.write(payload);
+
+        ModelSnapshot.Snapshot snapshot = mSnapshot.read(DB_NAME, mUserFn);
+        assertNotNull(snapshot);
+        assertEquals("A", snapshot.apps.get(0).title.toString());
+    }
+
+    @Test
+    public void testSnapshotForOtherGridIsIgnored() {
+        mSnapshot.write(mContext, DB_NAME, 0, new AppInfo[] {newApp("A", "a")});
+
+        assertNull(mSnapshot.read("launcher_5_by_5.db", mUserFn));
+    }
+
+    @Test
+    public void testCorruptedSnapshotIsIgnored() throws Exception {
+        mSnapshot.write(mContext, DB_NAME, 0, new AppInfo[] {newApp("A", "a")});
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        assertNull(mSnapshot.read(DB_NAME, mUserFn));
+    }
+
+    @Test
+    public void testMissingSnapshotIsIgnored() {
+        assertNull(mSnapshot.read(DB_NAME, mUserFn));
+    }
+
+    private static AppInfo newApp(String title, String name) {
+        ComponentName cn = new ComponentName("com.example", "com.example." + name);
+        AppInfo app = new AppInfo(cn, title, Process.myUserHandle(), AppInfo.makeLaunchIntent(cn));
+        app.sectionName = title;
+        return app;
+    }
+}
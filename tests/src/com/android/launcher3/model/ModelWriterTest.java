@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.celllayout.CellPosMapper;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.util.LauncherModelHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link ModelWriter}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ModelWriterTest {
+
+    private LauncherModelHelper mModelHelper;
+    private ModelWriter mWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        mModelHelper = new LauncherModelHelper();
+        mModelHelper.addItem(ITEM_TYPE_APPLICATION, 0, CONTAINER_DESKTOP, 0, 0);
+        mModelHelper.addItem(ITEM_TYPE_APPLICATION, 0, CONTAINER_DESKTOP, 1, 0);
+        mModelHelper.loadModelSync();
+        mWriter = mModelHelper.getModel().getWriter(false, false, CellPosMapper.DEFAULT, null);
+    }
+
+    @After
+    public void tearDown() {
+        mModelHelper.destroy();
+    }
+
+    @Test
+    public void testRepeatedMovesWriteLastPosition() throws Exception {
+        ItemInfo item = getItems().get(0);
+
+        for (int x = 0; x < 4; x++) {
+            mWriter.moveItemInDatabase(item, CONTAINER_DESKTOP, 1, x, 2);
+        }
+        waitForModelThread();
+
+        assertPosition(item.id, 1, 3, 2);
+    }
+
+    @Test
+    public void testMovesOfSeveralItemsAreWritten() throws Exception {
+        ArrayList<ItemInfo> items = getItems();
+        items.get(0).cellY = 3;
+        items.get(1).cellY = 2;
+
+        mWriter.moveItemsInDatabase(items, CONTAINER_DESKTOP, 2);
+        mWriter.modifyItemInDatabase(items.get(1), CONTAINER_DESKTOP, 2, 3, 3, 1, 1);
+        waitForModelThread();
+
+        assertPosition(items.get(0).id, 2, 0, 3);
+        assertPosition(items.get(1).id, 2, 3, 3);
+    }
+
+    @Test
+    public void testUpdatesAfterDeleteAreWrittenInOrder() throws Exception {
+        ArrayList<ItemInfo> items = getItems();
+
+        mWriter.moveItemInDatabase(items.get(0), CONTAINER_DESKTOP, 0, 2, 2);
+        mWriter.deleteItemsFromDatabase(Arrays.asList(items.get(0)), "test");
+        mWriter.moveItemInDatabase(items.get(1), CONTAINER_DESKTOP, 0, 3, 3);
+        waitForModelThread();
+
+        assertEquals(0, queryCount(items.get(0).id));
+        assertPosition(items.get(1).id, 0, 3, 3);
+    }
+
+    private ArrayList<ItemInfo> getItems() throws Exception {
+        return mModelHelper.executeSimpleTask(model -> {
+            ArrayList<ItemInfo> items = new ArrayList<>(model.workspaceItems);
+            items.sort((a, b) -> Integer.compare(a.cellX, b.cellX));
+            return items;
+        });
+    }
+
+    private void waitForModelThread() throws Exception {
+        MODEL_EXECUTOR.submit(() -> { }).get();
+    }
+
+    private int queryCount(int id) {
+        try (Cursor c = mModelHelper.sandboxContext.getContentResolver().query(
+                Favorites.getContentUri(id), null, null, null, null)) {
+            return c.getCount();
+        }
+    }
+
+    private void assertPosition(int id, int screen, int x, int y) {
+        try (Cursor c = mModelHelper.sandboxContext.getContentResolver().query(
+                Favorites.getContentUri(id),
+                new String[] {Favorites.SCREEN, Favorites.CELLX, Favorites.CELLY},
+                null, null, null)) {
+            assertTrue(c.moveToFirst());
+            assertEquals(screen, c.getInt(0));
+            assertEquals(x, c.getInt(1));
+            assertEquals(y, c.getInt(2));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.notification;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.app.Notification;
+import android.app.Person;
+import android.content.Context;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link NotificationKeyData}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class NotificationKeyDataTest {
+
+    private final Context mContext = getInstrumentation().getTargetContext();
+
+    @Test
+    public void testUpdateWithSameDataReusesInstance() {
+        NotificationKeyData keyData =
+                NotificationKeyData.fromNotification(newNotification("shortcut", "p1", 1));
+
+        NotificationKeyData updated =
+                keyData.updateFromNotification(newNotification("shortcut", "p1", 4));
+        assertSame(keyData, updated);
+        assertEquals(4, updated.count);
+    }
+
+    @Test
+    public void testUpdateWithNewShortcutAndPeopleRefreshesAllFields() {
+        NotificationKeyData keyData =
+                NotificationKeyData.fromNotification(newNotification("shortcut", "p1", 1));
+
+        NotificationKeyData updated =
+                keyData.updateFromNotification(newNotification("other", "p2", 2));
+        assertNotSame(keyData, updated);
+        assertEquals(keyData.notificationKey, updated.notificationKey);
+        assertEquals("other", updated.shortcutId);
+        assertArrayEquals(new String[] {"p2"}, updated.personKeysFromNotification);
+        assertEquals(2, updated.count);
+    }
+
+    @Test
+    public void testUpdateWithNewPeopleRefreshesPersonKeys() {
+        NotificationKeyData keyData =
+                NotificationKeyData.fromNotification(newNotification("shortcut", "p1", 1));
+
+        NotificationKeyData updated =
+                keyData.updateFromNotification(newNotification("shortcut", "p2", 1));
+        assertNotSame(keyData, updated);
+        assertArrayEquals(new String[] {"p2"}, updated.personKeysFromNotification);
+    }
+
+    private StatusBarNotification newNotification(String shortcutId, String personKey,
+            int number) {
+        Notification notification = new Notification.Builder(mContext, "channel")
+                .setShortcutId(shortcutId)
+                .addPerson(new Person.Builder().setKey(personKey).setName(personKey).build())
+                .setNumber(number)
+                .build();
+        String packageName = mContext.getPackageName();
+        return new StatusBarNotification(packageName, packageName, 1, null /* tag */,
+                Process.myUid(), 0 /* initialPid */, notification, Process.myUserHandle(),
+                null /* overrideGroupKey */, 0 /* postTime */);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.popup;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.dot.DotInfo;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the notification dots of {@link PopupDataProvider}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PopupDataProviderTest {
+
+    private static final String PACKAGE_A = "com.example.a";
+    private static final String PACKAGE_B = "com.example.b";
+    private static final String PACKAGE_C = "com.example.c";
+
+    private PopupDataProvider mProvider;
+    private final Map<String, Integer> mUpdatedCounts = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        mProvider = new PopupDataProvider(keys -> { });
+        mProvider.setChangeListener(new PopupDataProvider.PopupDataChangeListener() {
+            @Override
+            public void trimNotifications(Map<PackageUserKey, DotInfo> updatedDots) {
+                mUpdatedCounts.clear();
+                updatedDots.forEach((key, dot) ->
+                        mUpdatedCounts.put(key.mPackageName, dot.getNotificationCount()));
+            }
+        });
+    }
+
+    @Test
+    public void testFullRefreshOnlyReportsChangedPackages() throws Exception {
+        refresh(newNotification(PACKAGE_A, 1, 0), newNotification(PACKAGE_A, 2, 0),
+                newNotification(PACKAGE_B, 1, 0));
+        assertEquals(Map.of(PACKAGE_A, 2, PACKAGE_B, 1), mUpdatedCounts);
+
+        refresh(newNotification(PACKAGE_A, 1, 0), newNotification(PACKAGE_A, 2, 0),
+                newNotification(PACKAGE_B, 1, 0));
+        assertTrue(mUpdatedCounts.isEmpty());
+
+        refresh(newNotification(PACKAGE_A, 2, 0), newNotification(PACKAGE_C, 1, 0));
+        assertEquals(Map.of(PACKAGE_A, 1, PACKAGE_B, 0, PACKAGE_C, 1), mUpdatedCounts);
+    }
+
+    @Test
+    public void testFullRefreshReportsCountChanges() throws Exception {
+        refresh(newNotification(PACKAGE_A, 1, 0));
+        refresh(newNotification(PACKAGE_A, 1, 5));
+        assertEquals(Map.of(PACKAGE_A, 5), mUpdatedCounts);
+    }
+
+    @Test
+    public void testRepeatedFullRefreshOfManyNotifications() throws Exception {
+        StatusBarNotification[] notifications = new StatusBarNotification[500];
+        for (int i = 0; i < notifications.length; i++) {
+            notifications[i] = newNotification("com.example.p" + (i % 50), i, 0);
+        }
+        refresh(notifications);
+        assertEquals(50, mUpdatedCounts.size());
+
+        for (int i = 0; i < 10; i++) {
+            refresh(notifications);
+            assertTrue(mUpdatedCounts.isEmpty());
+        }
+    }
+
+    private void refresh(StatusBarNotification... notifications) throws Exception {
+        List<StatusBarNotification> list = Arrays.asList(notifications);
+        MAIN_EXECUTOR.submit(() -> mProvider.onNotificationFullRefresh(list)).get();
+    }
+
+    private static StatusBarNotification newNotification(String packageName, int id, int number) {
+        Notification notification = new Notification();
+        notification.number = number;
+        return new StatusBarNotification(packageName, packageName, id, null /* tag */,
+                Process.myUid(), 0 /* initialPid */, notification, Process.myUserHandle(),
+                null /* overrideGroupKey */, 0 /* postTime */);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link AppSearchIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppSearchIndexTest {
+
+    private static final String TAG = "AppSearchIndexTest";
+
+    private static final String[] WORDS = {"white", "Cow", "cats&dogs", "2048", "Maps", "mail",
+            "Play", "Store", "photo", "Éditeur", "calc", "我的", "camera", "Clock", "music"};
+    private static final String[] QUERIES = {"c", "co", "cow", "w", "wh", "dog", "m", "ma", "map",
+            "2", "20", "edi", "我", "我的", "p", "ph", "x"};
+
+    @Test
+    public void testMatchesSameAppsAsLinearScan() {
+        List<AppInfo> apps = createApps(200, new Random(42));
+        AppSearchIndex index = new AppSearchIndex();
+        StringMatcher matcher = StringMatcher.getInstance();
+
+        for (String query : QUERIES) {
+            assertEquals(query, linearSearch(apps, query, matcher), index.search(apps, 0, query));
+        }
+    }
+
+    @Test
+    public void testTitleChangeIsReindexed() {
+        List<AppInfo> apps = createApps(20, new Random(7));
+        AppSearchIndex index = new AppSearchIndex();
+        assertTrue(index.search(apps, 0, "zebra").isEmpty());
+
+        apps.get(3).title = "Zebra browser";
+        index.onAppUpdated(apps.get(3));
+        assertEquals(1, index.search(apps, 0, "zebra").size());
+
+        // Titles changed without notifying the index are picked up by the next full scan
+        apps.get(5).title = "zebra notes";
+        assertEquals(2, index.search(apps, 1, "zeb").size());
+    }
+
+    @Test
+    public void testTitleChangeInvalidatesPreviousResult() {
+        List<AppInfo> apps = createApps(20, new Random(11));
+        AppSearchIndex index = new AppSearchIndex();
+        assertTrue(index.search(apps, 0, "z").isEmpty());
+
+        // A longer query must not be narrowed to the previous matches once the apps changed
+        apps.get(2).title = "Zebra browser";
+        assertEquals(1, index.search(apps, 1, "ze").size());
+    }
+
+    @Test
+    public void testRemovedAppInvalidatesPreviousResult() {
+        List<AppInfo> apps = createApps(50, new Random(3));
+        AppSearchIndex index = new AppSearchIndex();
+
+        AppInfo removed = index.search(apps, 0, "c").get(0);
+        apps.remove(removed);
+        index.onAppRemoved(removed);
+        assertEquals(linearSearch(apps, "co", StringMatcher.getInstance()),
+                index.search(apps, 0, "co"));
+    }
+
+    @Test
+    public void benchmarkIndexAgainstLinearScan() {
+        StringMatcher matcher = StringMatcher.getInstance();
+        for (int appCount : new int[]{100, 500, 2000}) {
+            List<AppInfo> apps = createApps(appCount, new Random(appCount));
+            AppSearchIndex index = new AppSearchIndex();
+            // Build the index outside of the measured keystrokes, as AllAppsList does.
+            index.search(apps, 0, "a");
+
+            long linearNanos = 0;
+            long indexNanos = 0;
+            for (int round = 0; round < 10; round++) {
+                for (String word : WORDS) {
+                    String typed = word.toLowerCase();
+                    for (int i = 1; i <= typed.length(); i++) {
+                        String query = typed.substring(0, i);
+
+                        long start = System.nanoTime();
+                        linearSearch(apps, query, StringMatcher.getInstance());
+                        linearNanos += System.nanoTime() - start;
+
+                        start = System.nanoTime();
+                        index.search(apps, 0, query);
+                        indexNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+            Log.d(TAG, appCount + " apps: linear=" + linearNanos / 1000 + "us, index="
+                    + indexNanos / 1000 + "us");
+            assertEquals(linearSearch(apps, "ca", matcher), index.search(apps, 0, "ca"));
+        }
+    }
+
+    private static ArrayList<AppInfo> linearSearch(
+            List<AppInfo> apps, String query, StringMatcher matcher) {
+        String queryLower = query.toLowerCase();
+        ArrayList<AppInfo> result = new ArrayList<>();
+        for (AppInfo info : apps) {
+            if (StringMatcherUtility.matches(queryLower, info.title.toString(), matcher)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    private static List<AppInfo> createApps(int count, Random random) {
+        List<AppInfo> apps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AppInfo info = new AppInfo();
+            info.title = WORDS[random.nextInt(WORDS.length)] + " "
+                    + WORDS[random.nextInt(WORDS.length)];
+            apps.add(info);
+        }
+        return apps;
+    }
+}
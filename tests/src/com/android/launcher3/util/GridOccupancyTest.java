@@ -4,12 +4,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import android.util.Log;
+
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 /**
  * Unit tests for {@link GridOccupancy}
  */
@@ -17,6 +21,12 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public class GridOccupancyTest {
 
+    private static final String TAG = "GridOccupancyTest";
+
+    private static final int BENCHMARK_SCREENS = 20;
+    private static final int BENCHMARK_ITEMS = 200;
+    private static final int BENCHMARK_ROUNDS = 50;
+
     @Test
     public void testFindVacantCell() {
         GridOccupancy grid = initGrid(4,
@@ -55,6 +65,154 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testFindVacantCellFromStart() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+
+        int[] vacant = new int[2];
+        assertTrue(grid.findVacantCell(vacant, 4, 1, 1, 1));
+        assertEquals(vacant[0], 4);
+        assertEquals(vacant[1], 1);
+
+        // Following rows are searched from the first column
+        assertTrue(grid.findVacantCell(vacant, 3, 1, 2, 2));
+        assertEquals(vacant[0], 2);
+        assertEquals(vacant[1], 2);
+
+        assertFalse(grid.findVacantCell(vacant, 3, 2, 3, 2));
+    }
+
+    @Test
+    public void testGetVacantOrigins() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+
+        long[] origins = new long[4];
+        assertTrue(grid.getVacantOrigins(2, 2, origins));
+        assertEquals(0b0000, origins[0]);
+        assertEquals(0b0001, origins[1]);
+        assertEquals(0b1100, origins[2]);
+        assertEquals(0, origins[3]);
+    }
+
+    @Test
+    public void testMatchesRegionScan() {
+        Random random = new Random(42);
+        int[] vacant = new int[2];
+        for (int round = 0; round < 200; round++) {
+            GridOccupancy grid = randomGrid(random, 2 + random.nextInt(8), 2 + random.nextInt(8));
+            int countX = grid.cells.length;
+            int countY = grid.cells[0].length;
+            int spanX = 1 + random.nextInt(3);
+            int spanY = 1 + random.nextInt(3);
+
+            int[] expected = scanForVacantCell(grid, spanX, spanY);
+            boolean found = grid.findVacantCell(vacant, spanX, spanY);
+            assertEquals(expected != null, found);
+            if (found) {
+                assertEquals(expected[0], vacant[0]);
+                assertEquals(expected[1], vacant[1]);
+            }
+
+            long[] origins = new long[countY];
+            assertTrue(grid.getVacantOrigins(spanX, spanY, origins));
+            for (int y = 0; y < countY; y++) {
+                for (int x = 0; x < countX; x++) {
+                    assertEquals(grid.isRegionVacant(x, y, spanX, spanY),
+                            (origins[y] & (1L << x)) != 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkAutoPlacement() {
+        // Places new install icons across partially filled screens, like WorkspaceItemSpaceFinder
+        Random random = new Random(7);
+        GridOccupancy[] initial = new GridOccupancy[BENCHMARK_SCREENS];
+        for (int i = 0; i < BENCHMARK_SCREENS; i++) {
+            initial[i] = randomGrid(random, 5, 5);
+        }
+
+        long scanNanos = 0;
+        long gridNanos = 0;
+        int[] vacant = new int[2];
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            GridOccupancy[] screens = copyOf(initial);
+            long start = System.nanoTime();
+            for (int item = 0; item < BENCHMARK_ITEMS; item++) {
+                for (GridOccupancy screen : screens) {
+                    int[] xy = scanForVacantCell(screen, 1, 1);
+                    if (xy != null) {
+                        screen.markCells(xy[0], xy[1], 1, 1, true);
+                        break;
+                    }
+                }
+            }
+            scanNanos += System.nanoTime() - start;
+
+            screens = copyOf(initial);
+            start = System.nanoTime();
+            for (int item = 0; item < BENCHMARK_ITEMS; item++) {
+                for (GridOccupancy screen : screens) {
+                    if (screen.findVacantCell(vacant, 1, 1)) {
+                        screen.markCells(vacant[0], vacant[1], 1, 1, true);
+                        break;
+                    }
+                }
+            }
+            gridNanos += System.nanoTime() - start;
+        }
+
+        Log.d(TAG, BENCHMARK_ITEMS + " items on " + BENCHMARK_SCREENS + " screens: region scan="
+                + scanNanos / BENCHMARK_ROUNDS + "ns, row masks="
+                + gridNanos / BENCHMARK_ROUNDS + "ns");
+    }
+
+    /**
+     * Reference search checking every candidate region cell by cell
+     */
+    private static int[] scanForVacantCell(GridOccupancy grid, int spanX, int spanY) {
+        int countX = grid.cells.length;
+        int countY = grid.cells[0].length;
+        for (int y = 0; y + spanY <= countY; y++) {
+            for (int x = 0; x + spanX <= countX; x++) {
+                if (grid.isRegionVacant(x, y, spanX, spanY)) {
+                    return new int[] {x, y};
+                }
+            }
+        }
+        return null;
+    }
+
+    private static GridOccupancy randomGrid(Random random, int countX, int countY) {
+        GridOccupancy grid = new GridOccupancy(countX, countY);
+        for (int x = 0; x < countX; x++) {
+            for (int y = 0; y < countY; y++) {
+                grid.cells[x][y] = random.nextInt(3) == 0;
+            }
+        }
+        return grid;
+    }
+
+    private static GridOccupancy[] copyOf(GridOccupancy[] grids) {
+        GridOccupancy[] copy = new GridOccupancy[grids.length];
+        for (int i = 0; i < grids.length; i++) {
+            copy[i] = new GridOccupancy(grids[i].cells.length, grids[i].cells[0].length);
+            grids[i].copyTo(copy[i]);
+        }
+        return copy;
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
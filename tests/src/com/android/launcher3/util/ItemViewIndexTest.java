@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Process;
+import android.view.View;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+/**
+ * Tests for {@link ItemViewIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ItemViewIndexTest {
+
+    private final Context mContext =
+            InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private final ItemViewIndex mIndex = new ItemViewIndex();
+
+    @Test
+    public void testViewsAreIndexedByPackage() {
+        View a1 = newItemView("com.example.a", "A1");
+        View a2 = newItemView("com.example.a", "A2");
+        View b = newItemView("com.example.b", "B");
+        mIndex.add(a1);
+        mIndex.add(a2);
+        mIndex.add(b);
+
+        assertEquals(2, mIndex.getViews(key("com.example.a")).size());
+        assertEquals(Collections.singletonList(b), mIndex.getViews(key("com.example.b")));
+        assertTrue(mIndex.getViews(key("com.example.c")).isEmpty());
+    }
+
+    @Test
+    public void testRemovedViewIsNotReturned() {
+        View a = newItemView("com.example.a", "A");
+        mIndex.add(a);
+        mIndex.remove(a);
+
+        assertTrue(mIndex.getViews(key("com.example.a")).isEmpty());
+    }
+
+    @Test
+    public void testViewAddedTwiceIsIndexedOnce() {
+        View a = newItemView("com.example.a", "A");
+        mIndex.add(a);
+        mIndex.add(a);
+
+        assertEquals(1, mIndex.getViews(key("com.example.a")).size());
+    }
+
+    @Test
+    public void testViewWithoutItemIsIgnored() {
+        mIndex.add(new View(mContext));
+        mIndex.remove(new View(mContext));
+    }
+
+    private View newItemView(String packageName, String className) {
+        WorkspaceItemInfo info = new WorkspaceItemInfo();
+        info.intent = new Intent(Intent.ACTION_MAIN)
+                .setComponent(new ComponentName(packageName, packageName + "." + className));
+        info.user = Process.myUserHandle();
+        View view = new View(mContext);
+        view.setTag(info);
+        return view;
+    }
+
+    private static PackageUserKey key(String packageName) {
+        return new PackageUserKey(packageName, Process.myUserHandle());
+    }
+}
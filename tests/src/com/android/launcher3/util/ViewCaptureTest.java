@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.view.ViewCaptureData.ExportedData;
+import com.android.launcher3.view.ViewCaptureData.FrameData;
+import com.android.launcher3.view.ViewCaptureData.ViewNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link ViewCapture}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ViewCaptureTest {
+
+    private Context mContext;
+    private ViewCapture mViewCapture;
+
+    @Before
+    public void setUp() {
+        mContext = getInstrumentation().getTargetContext();
+        mViewCapture = new ViewCapture();
+    }
+
+    @Test
+    public void testCapturedHierarchyIsExported() {
+        FrameLayout root = new FrameLayout(mContext);
+        TextView child = new TextView(mContext);
+        child.setTranslationX(12);
+        child.setAlpha(0.5f);
+        root.addView(child);
+        root.addView(new View(mContext));
+
+        mViewCapture.captureFrame(root, 100);
+        child.setTranslationX(24);
+        mViewCapture.captureFrame(root, 200);
+
+        ExportedData data = mViewCapture.exportData();
+        assertEquals(2, data.getFrameDataCount());
+        assertEquals(100, data.getFrameData(0).getTimestamp());
+        assertEquals(200, data.getFrameData(1).getTimestamp());
+
+        ViewNode node = data.getFrameData(0).getNode();
+        assertEquals(FrameLayout.class.getName(),
+                data.getClassname(node.getClassnameIndex()));
+        assertEquals(2, node.getChildrenCount());
+        ViewNode childNode = node.getChildren(0);
+        assertEquals(TextView.class.getName(), data.getClassname(childNode.getClassnameIndex()));
+        assertEquals(12, childNode.getTranslationX(), 0);
+        assertEquals(0.5f, childNode.getAlpha(), 0);
+        assertEquals(24, data.getFrameData(1).getNode().getChildren(0).getTranslationX(), 0);
+        assertEquals(3, data.getClassnameCount());
+    }
+
+    @Test
+    public void testOldFramesAreDroppedWhenRingWraps() {
+        FrameLayout root = new FrameLayout(mContext);
+        for (int i = 0; i < 99; i++) {
+            root.addView(new View(mContext));
+        }
+
+        int frames = ViewCapture.MAX_NODES / 100 + 10;
+        for (int i = 0; i < frames; i++) {
+            mViewCapture.captureFrame(root, i);
+        }
+
+        ExportedData data = mViewCapture.exportData();
+        int expectedCount = Math.min(ViewCapture.MAX_FRAMES, ViewCapture.MAX_NODES / 100);
+        assertEquals(expectedCount, data.getFrameDataCount());
+        for (int i = 0; i < expectedCount; i++) {
+            FrameData frame = data.getFrameData(i);
+            assertEquals(frames - expectedCount + i, frame.getTimestamp());
+            assertEquals(99, frame.getNode().getChildrenCount());
+        }
+    }
+
+    @Test
+    public void testLargeFramesAreTruncated() {
+        FrameLayout root = new FrameLayout(mContext);
+        FrameLayout group = new FrameLayout(mContext);
+        root.addView(group);
+        for (int i = 0; i < ViewCapture.MAX_NODES_PER_FRAME; i++) {
+            group.addView(new View(mContext));
+        }
+
+        mViewCapture.captureFrame(root, 0);
+
+        ViewNode node = mViewCapture.exportData().getFrameData(0).getNode();
+        assertEquals(1, node.getChildrenCount());
+        assertEquals(ViewCapture.MAX_NODES_PER_FRAME - 2,
+                node.getChildren(0).getChildrenCount());
+        assertFalse(node.getChildren(0).getChildren(0).getWillNotDraw());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link WidgetPreviewCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WidgetPreviewCacheTest {
+
+    private final Context mContext =
+            InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @Test
+    public void testConcurrentRequestsShareGeneration() throws Exception {
+        WidgetPreviewCache.PreviewKey key = newKey("Coalesced");
+        Bitmap preview = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        AtomicInteger generated = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(2);
+        AtomicReference<Bitmap> first = new AtomicReference<>();
+        AtomicReference<Bitmap> second = new AtomicReference<>();
+
+        MAIN_EXECUTOR.execute(() -> {
+            WidgetPreviewCache cache = WidgetPreviewCache.INSTANCE.get(mContext);
+            cache.getPreview(key, false, () -> {
+                generated.incrementAndGet();
+                return preview;
+            }, b -> {
+                first.set(b);
+                delivered.countDown();
+            });
+            cache.getPreview(key, false, () -> {
+                generated.incrementAndGet();
+                return preview;
+            }, b -> {
+                second.set(b);
+                delivered.countDown();
+            });
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, generated.get());
+        assertSame(preview, first.get());
+        assertSame(preview, second.get());
+    }
+
+    @Test
+    public void testLoadedPreviewIsServedFromMemory() throws Exception {
+        WidgetPreviewCache.PreviewKey key = newKey("Memory");
+        Bitmap preview = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        AtomicInteger generated = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            CountDownLatch delivered = new CountDownLatch(1);
+            MAIN_EXECUTOR.execute(() -> WidgetPreviewCache.INSTANCE.get(mContext).getPreview(
+                    key, false, () -> {
+                        generated.incrementAndGet();
+                        return preview;
+                    }, b -> delivered.countDown()));
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, generated.get());
+    }
+
+    @Test
+    public void testCanceledRequestIsNotDelivered() throws Exception {
+        WidgetPreviewCache.PreviewKey key = newKey("Canceled");
+        Bitmap preview = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        AtomicInteger canceledDeliveries = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(1);
+
+        MAIN_EXECUTOR.execute(() -> {
+            WidgetPreviewCache cache = WidgetPreviewCache.INSTANCE.get(mContext);
+            cache.getPreview(key, false, () -> preview,
+                    b -> canceledDeliveries.incrementAndGet()).cancel();
+            cache.getPreview(key, false, () -> preview, b -> delivered.countDown());
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        MAIN_EXECUTOR.submit(() -> { }).get();
+        assertEquals(0, canceledDeliveries.get());
+    }
+
+    @Test
+    public void testPackageChangeIsNotServedFromMemory() throws Exception {
+        WidgetPreviewCache.PreviewKey key = newKey("Changed");
+        Bitmap preview = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        AtomicInteger generated = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            CountDownLatch delivered = new CountDownLatch(1);
+            MAIN_EXECUTOR.execute(() -> {
+                WidgetPreviewCache cache = WidgetPreviewCache.INSTANCE.get(mContext);
+                cache.getPreview(key, false, () -> {
+                    generated.incrementAndGet();
+                    return preview;
+                }, b -> delivered.countDown());
+            });
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            MAIN_EXECUTOR.submit(() -> WidgetPreviewCache.INSTANCE.get(mContext)
+                    .onPackageChanged(mContext.getPackageName(), Process.myUserHandle())).get();
+        }
+        assertEquals(2, generated.get());
+    }
+
+    private WidgetPreviewCache.PreviewKey newKey(String className) {
+        return new WidgetPreviewCache.PreviewKey(
+                new ComponentName(mContext.getPackageName(), className + System.nanoTime()),
+                Process.myUserHandle(), 10, 10);
+    }
+}